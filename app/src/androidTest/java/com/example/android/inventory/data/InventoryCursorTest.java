@@ -0,0 +1,68 @@
+package com.example.android.inventory.data;
+
+import android.database.MatrixCursor;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventory.data.InventoryContract.ItemEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link InventoryCursor}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryCursorTest {
+
+    @Test
+    public void gettersReadProjectedColumnsInAnyOrder() {
+        MatrixCursor rows = new MatrixCursor(new String[]{
+                ItemEntry.COLUMN_QUANTITY, ItemEntry.COLUMN_PRICE, ItemEntry._ID,
+                ItemEntry.COLUMN_TITLE});
+        rows.addRow(new Object[]{3, 10.5, 7L, "Dune"});
+        rows.addRow(new Object[]{0, 0.29, 8L, "Emma"});
+
+        InventoryCursor books = InventoryCursor.wrap(rows);
+        assertSame(books, InventoryCursor.wrap(books));
+
+        assertTrue(books.moveToFirst());
+        assertEquals(7L, books.getId());
+        assertEquals("Dune", books.getTitle());
+        assertEquals(1050L, books.getPriceCents());
+        assertEquals(3, books.getQuantity());
+
+        // 0.29 is not exact as a double; cents are rounded, not truncated
+        assertTrue(books.moveToNext());
+        assertEquals(29L, books.getPriceCents());
+
+        try {
+            books.getAuthor();
+            fail("Author is not in the projection");
+        } catch (IllegalStateException expected) {
+            // Expected
+        }
+        books.close();
+    }
+
+    @Test
+    public void priceCentsAreReadWithoutDoubles() {
+        MatrixCursor rows = new MatrixCursor(new String[]{
+                ItemEntry.COLUMN_PRICE, ItemEntry.COLUMN_PRICE_CENTS});
+        rows.addRow(new Object[]{90071992547409.91, 9007199254740991L});
+
+        InventoryCursor books = InventoryCursor.wrap(rows);
+        assertTrue(books.moveToFirst());
+        assertEquals(9007199254740991L, books.getPriceCents());
+        books.close();
+    }
+
+    @Test
+    public void formatPriceKeepsTwoDecimals() {
+        assertEquals("0.00", InventoryCursor.formatPrice(0));
+        assertEquals("0.05", InventoryCursor.formatPrice(5));
+        assertEquals("10.50", InventoryCursor.formatPrice(1050));
+        assertEquals("-1.25", InventoryCursor.formatPrice(-125));
+    }
+}
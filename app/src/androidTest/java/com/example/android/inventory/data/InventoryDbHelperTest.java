@@ -0,0 +1,474 @@
+package com.example.android.inventory.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.inventory.data.InventoryContract.ItemEntry;
+import com.example.android.inventory.data.InventoryContract.StatsEntry;
+import com.example.android.inventory.data.InventoryContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link InventoryDbHelper} schema creation and migrations.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryDbHelperTest {
+
+    private static final String LOG_TAG = InventoryDbHelperTest.class.getSimpleName();
+
+    private static final String TEST_DB = "inventory_helper_test.db";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase(TEST_DB);
+    }
+
+    @Test
+    public void migrationsAreOrdered() {
+        for (int index = 0; index < InventoryDbHelper.MIGRATIONS.length; index++) {
+            assertEquals(index + 1, InventoryDbHelper.MIGRATIONS[index].fromVersion);
+        }
+        assertEquals(InventoryDbHelper.MIGRATIONS.length + 1, InventoryDbHelper.DB_VERSION);
+    }
+
+    @Test
+    public void upgradeFromFirstVersionMatchesFreshInstall() {
+        // Build a version 1 database by hand, then let the helper upgrade it
+        SQLiteDatabase db = context.openOrCreateDatabase(TEST_DB, Context.MODE_PRIVATE, null);
+        InventoryDbHelper.createBaseSchema(db);
+        db.setVersion(1);
+        db.close();
+
+        CountingDbHelper upgraded = new CountingDbHelper(context, TEST_DB);
+        String upgradedSchema = schemaOf(upgraded.getReadableDatabase());
+        upgraded.close();
+
+        CountingDbHelper fresh = new CountingDbHelper(context, null);
+        String freshSchema = schemaOf(fresh.getReadableDatabase());
+        fresh.close();
+
+        assertEquals(freshSchema, upgradedSchema);
+    }
+
+    @Test
+    public void upgradeStoresEachSupplierOnce() {
+        // Build a version 7 database with the supplier repeated on every book
+        SQLiteDatabase db = context.openOrCreateDatabase(TEST_DB, Context.MODE_PRIVATE, null);
+        InventoryDbHelper.createBaseSchema(db);
+        InventoryDbHelper.migrate(db, 1, 7);
+        db.setVersion(7);
+        String insert = "INSERT INTO " + ItemEntry.TABLE_NAME + " (" + ItemEntry._ID + ", "
+                + ItemEntry.COLUMN_TITLE + ", " + ItemEntry.COLUMN_SUPPLIER_NAME + ", "
+                + ItemEntry.COLUMN_SUPPLIER_EMAIL + ", " + ItemEntry.COLUMN_SUPPLIER_PHONE
+                + ") VALUES (?, ?, ?, ?, ?)";
+        db.execSQL(insert, new Object[]{1, "Dune", "Ace", "info@ace.com", "8005551212"});
+        db.execSQL(insert, new Object[]{2, "Emma", "Ace", "info@ace.com", "8005551212"});
+        db.execSQL(insert, new Object[]{3, "Ulysses", "Ace", "", "8005551212"});
+        db.execSQL(insert, new Object[]{4, "Walden", "Ace", null, "8005551212"});
+        db.execSQL(insert, new Object[]{5, "Beloved", "Knopf", null, "8005551234"});
+        db.execSQL("DELETE FROM " + ItemEntry.TABLE_NAME + " WHERE " + ItemEntry._ID + " = 5");
+        db.close();
+
+        InventoryDbHelper helper = new InventoryDbHelper(context, TEST_DB);
+        db = helper.getWritableDatabase();
+
+        // Books without an email share a supplier, whether it was null or empty
+        assertEquals(2, DatabaseUtils.queryNumEntries(db, SupplierEntry.TABLE_NAME));
+        Cursor cursor = db.rawQuery("SELECT " + ItemEntry._ID + ", " + ItemEntry.COLUMN_TITLE
+                + ", " + ItemEntry.COLUMN_SUPPLIER_NAME + ", " + ItemEntry.COLUMN_SUPPLIER_EMAIL
+                + " FROM " + ItemEntry.TABLE_NAME + " JOIN " + SupplierEntry.TABLE_NAME
+                + " USING (" + ItemEntry.COLUMN_SUPPLIER_ID + ") ORDER BY " + ItemEntry._ID,
+                null);
+        try {
+            assertEquals(4, cursor.getCount());
+            assertTrue(cursor.moveToPosition(1));
+            assertEquals(2, cursor.getLong(0));
+            assertEquals("Emma", cursor.getString(1));
+            assertEquals("Ace", cursor.getString(2));
+            assertEquals("info@ace.com", cursor.getString(3));
+            assertTrue(cursor.moveToPosition(3));
+            assertEquals("Walden", cursor.getString(1));
+            assertEquals("", cursor.getString(3));
+        } finally {
+            cursor.close();
+        }
+        assertEquals(1, searchCount(db, "walden*"));
+
+        // The ID of the deleted book is not handed out again
+        db.execSQL("INSERT INTO " + ItemEntry.TABLE_NAME + " (" + ItemEntry.COLUMN_TITLE + ", "
+                + ItemEntry.COLUMN_SUPPLIER_ID + ") VALUES ('Middlemarch', 1)");
+        assertEquals(6, DatabaseUtils.longForQuery(db, "SELECT MAX(" + ItemEntry._ID
+                + ") FROM " + ItemEntry.TABLE_NAME, null));
+
+        // Books can only refer to a supplier that exists
+        try {
+            db.execSQL("INSERT INTO " + ItemEntry.TABLE_NAME + " (" + ItemEntry.COLUMN_TITLE
+                    + ", " + ItemEntry.COLUMN_SUPPLIER_ID + ") VALUES ('Orphan', 99)");
+            fail("Inserted a book with a missing supplier");
+        } catch (SQLiteConstraintException e) {
+            // Expected
+        }
+        helper.close();
+    }
+
+    @Test
+    public void upgradeStoresPricesInExactCents() {
+        // Build a version 8 database with prices in dollars that doubles can't hold exactly
+        SQLiteDatabase db = context.openOrCreateDatabase(TEST_DB, Context.MODE_PRIVATE, null);
+        InventoryDbHelper.createBaseSchema(db);
+        InventoryDbHelper.migrate(db, 1, 8);
+        db.setVersion(8);
+        insertSupplier(db);
+        String insert = "INSERT INTO " + ItemEntry.TABLE_NAME + " (" + ItemEntry.COLUMN_TITLE
+                + ", " + ItemEntry.COLUMN_PRICE + ", " + ItemEntry.COLUMN_QUANTITY + ", "
+                + ItemEntry.COLUMN_SUPPLIER_ID + ") VALUES (?, ?, ?, 1)";
+        db.execSQL(insert, new Object[]{"Dune", 0.1, 3});
+        db.execSQL(insert, new Object[]{"Emma", 0.2, 3});
+        db.execSQL(insert, new Object[]{"Ulysses", 0.29, 7});
+        db.execSQL(insert, new Object[]{"Walden", 9.99, 0});
+        db.close();
+
+        InventoryDbHelper helper = new InventoryDbHelper(context, TEST_DB);
+        db = helper.getWritableDatabase();
+
+        Cursor cursor = db.rawQuery("SELECT " + ItemEntry.COLUMN_PRICE_CENTS + ", typeof("
+                + ItemEntry.COLUMN_PRICE_CENTS + ") FROM " + ItemEntry.TABLE_NAME
+                + " ORDER BY " + ItemEntry._ID, null);
+        try {
+            long[] expected = {10, 20, 29, 999};
+            assertEquals(expected.length, cursor.getCount());
+            for (long cents : expected) {
+                assertTrue(cursor.moveToNext());
+                assertEquals(cents, cursor.getLong(0));
+                assertEquals("integer", cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // The stock value is summed again from the cents, and kept exact by the triggers
+        String stockValue = "SELECT " + StatsEntry.COLUMN_STOCK_VALUE_CENTS + " FROM "
+                + StatsEntry.TABLE_NAME;
+        assertEquals(293, DatabaseUtils.longForQuery(db, stockValue, null));
+        db.execSQL("UPDATE " + ItemEntry.TABLE_NAME + " SET " + ItemEntry.COLUMN_QUANTITY
+                + " = 1 WHERE " + ItemEntry.COLUMN_TITLE + " = 'Walden'");
+        assertEquals(1292, DatabaseUtils.longForQuery(db, stockValue, null));
+        assertEquals(1, searchCount(db, "walden*"));
+        helper.close();
+    }
+
+    @Test
+    public void reopenKeepsRowsWithoutSchemaWork() {
+        final int rows = 50000;
+
+        CountingDbHelper first = new CountingDbHelper(context, TEST_DB);
+        SQLiteDatabase db = first.getWritableDatabase();
+        assertEquals(1, first.creates);
+
+        insertSupplier(db);
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + ItemEntry.TABLE_NAME + " ("
+                + ItemEntry.COLUMN_TITLE + ", " + ItemEntry.COLUMN_SUPPLIER_ID
+                + ") VALUES (?, 1)");
+        db.beginTransaction();
+        try {
+            for (int index = 0; index < rows; index++) {
+                insert.bindString(1, "Title " + index);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        insert.close();
+        first.close();
+
+        // Opening an up-to-date database only reads the version header: no table is
+        // created, dropped or migrated, whatever the size of the catalog.
+        CountingDbHelper second = new CountingDbHelper(context, TEST_DB);
+        db = second.getReadableDatabase();
+        assertEquals(0, second.creates);
+        assertEquals(0, second.upgrades);
+        assertEquals(rows, DatabaseUtils.queryNumEntries(db, ItemEntry.TABLE_NAME));
+        second.close();
+    }
+
+    @Test
+    public void readersDoNotWaitForWriters() throws Exception {
+        InventoryDbHelper helper = new InventoryDbHelper(context, TEST_DB);
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        assertEquals("wal",
+                DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode", null).toLowerCase());
+
+        // Keep a write transaction open while another thread reads the table
+        final CountDownLatch readDone = new CountDownLatch(1);
+        final AtomicLong rowsSeen = new AtomicLong(-1);
+        insertSupplier(db);
+        db.beginTransactionNonExclusive();
+        try {
+            db.execSQL("INSERT INTO " + ItemEntry.TABLE_NAME + " (" + ItemEntry.COLUMN_TITLE + ", "
+                    + ItemEntry.COLUMN_SUPPLIER_ID + ") VALUES ('Dune', 1)");
+
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    rowsSeen.set(DatabaseUtils.queryNumEntries(db, ItemEntry.TABLE_NAME));
+                    readDone.countDown();
+                }
+            });
+            reader.start();
+
+            // With a rollback journal the reader would wait for the commit below
+            assertTrue(readDone.await(5, TimeUnit.SECONDS));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        // The reader saw the last committed state, without the uncommitted insert
+        assertEquals(0, rowsSeen.get());
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, ItemEntry.TABLE_NAME));
+        helper.close();
+    }
+
+    @Test
+    public void readLatencyStaysLowUnderContinuousWrites() throws Exception {
+        final long holdMillis = 200;
+        final int reads = 50;
+
+        InventoryDbHelper helper = new InventoryDbHelper(context, TEST_DB);
+        final SQLiteDatabase db = helper.getWritableDatabase();
+        insertSupplier(db);
+
+        // Keep write transactions open back to back, each far longer than a read takes
+        final AtomicBoolean done = new AtomicBoolean();
+        final CountDownLatch writing = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    db.beginTransactionNonExclusive();
+                    try {
+                        db.execSQL("INSERT INTO " + ItemEntry.TABLE_NAME + " ("
+                                + ItemEntry.COLUMN_TITLE + ", " + ItemEntry.COLUMN_SUPPLIER_ID
+                                + ") VALUES ('Dune', 1)");
+                        writing.countDown();
+                        SystemClock.sleep(holdMillis);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                }
+            }
+        });
+        writer.start();
+
+        long totalNanos = 0;
+        long slowestNanos = 0;
+        try {
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+            for (int index = 0; index < reads; index++) {
+                long start = System.nanoTime();
+                DatabaseUtils.queryNumEntries(db, ItemEntry.TABLE_NAME);
+                long nanos = System.nanoTime() - start;
+                totalNanos += nanos;
+                slowestNanos = Math.max(slowestNanos, nanos);
+                SystemClock.sleep(holdMillis / 10);
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+
+        long meanMillis = TimeUnit.NANOSECONDS.toMillis(totalNanos / reads);
+        long slowestMillis = TimeUnit.NANOSECONDS.toMillis(slowestNanos);
+        Log.i(LOG_TAG, reads + " reads under " + holdMillis + "ms write transactions: mean "
+                + meanMillis + "ms, slowest " + slowestMillis + "ms");
+
+        // A reader sharing the writer's connection, or locked out by a rollback journal,
+        // would wait for the commit, on average half a transaction
+        assertTrue("Slowest read took " + slowestMillis + "ms", slowestMillis < holdMillis / 2);
+        helper.close();
+    }
+
+    @Test
+    public void filteredQueriesSearchAnIndex() {
+        InventoryDbHelper helper = new InventoryDbHelper(context, null);
+        SQLiteDatabase db = helper.getReadableDatabase();
+
+        String[] wheres = {
+                ItemEntry._ID + " = 1",
+                ItemEntry.COLUMN_TITLE + " = 'Dune'",
+                ItemEntry.COLUMN_TITLE + " >= 'Du' AND " + ItemEntry.COLUMN_TITLE + " < 'Dv'",
+                ItemEntry.COLUMN_AUTHOR + " = 'Frank Herbert'",
+                ItemEntry.COLUMN_SUPPLIER_ID + " = 1",
+                ItemEntry.COLUMN_PRICE_CENTS + " BETWEEN 500 AND 1000",
+                ItemEntry.COLUMN_QUANTITY + " <= 5",
+        };
+        for (String where : wheres) {
+            String plan = queryPlan(db, "SELECT * FROM " + ItemEntry.TABLE_NAME
+                    + " WHERE " + where);
+            assertTrue(where + " -> " + plan, plan.contains("SEARCH"));
+            assertFalse(where + " -> " + plan, plan.contains("SCAN"));
+        }
+
+        // Books of a supplier are found through the supplier's details, then its ID
+        String plan = queryPlan(db, "SELECT * FROM " + ItemEntry.TABLE_NAME + " JOIN "
+                + SupplierEntry.TABLE_NAME + " USING (" + ItemEntry.COLUMN_SUPPLIER_ID
+                + ") WHERE " + ItemEntry.COLUMN_SUPPLIER_NAME + " = 'Scholastic Books'");
+        assertFalse(plan, plan.contains("SCAN"));
+        helper.close();
+    }
+
+    @Test
+    public void sortedListsReadAnIndexInOrder() {
+        InventoryDbHelper helper = new InventoryDbHelper(context, null);
+        SQLiteDatabase db = helper.getReadableDatabase();
+
+        String[] orders = {
+                ItemEntry._ID,
+                ItemEntry.COLUMN_TITLE,
+                ItemEntry.COLUMN_AUTHOR,
+                ItemEntry.COLUMN_SUPPLIER_ID,
+                ItemEntry.COLUMN_PRICE_CENTS,
+                ItemEntry.COLUMN_QUANTITY,
+        };
+        for (String order : orders) {
+            String plan = queryPlan(db, "SELECT * FROM " + ItemEntry.TABLE_NAME
+                    + " ORDER BY " + order);
+            // Listing every row has to visit every row, but it must not sort them again
+            assertFalse(order + " -> " + plan, plan.contains("TEMP B-TREE"));
+            if (plan.contains("SCAN") && !order.equals(ItemEntry._ID)) {
+                assertTrue(order + " -> " + plan, plan.contains("USING INDEX"));
+            }
+        }
+        helper.close();
+    }
+
+    @Test
+    public void searchTableFollowsBooks() {
+        InventoryDbHelper helper = new InventoryDbHelper(context, null);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        insertSupplier(db);
+        db.execSQL("INSERT INTO " + ItemEntry.TABLE_NAME + " (" + ItemEntry._ID + ", "
+                + ItemEntry.COLUMN_TITLE + ", " + ItemEntry.COLUMN_AUTHOR + ", "
+                + ItemEntry.COLUMN_SUPPLIER_ID + ") VALUES (1, 'Dune', 'Frank Herbert', 1)");
+        assertEquals(1, searchCount(db, "dun*"));
+        assertEquals(1, searchCount(db, "herb*"));
+
+        // Quantity changes leave the index alone, title changes move it along
+        db.execSQL("UPDATE " + ItemEntry.TABLE_NAME + " SET " + ItemEntry.COLUMN_QUANTITY
+                + " = 3 WHERE " + ItemEntry._ID + " = 1");
+        assertEquals(1, searchCount(db, "dun*"));
+        db.execSQL("UPDATE " + ItemEntry.TABLE_NAME + " SET " + ItemEntry.COLUMN_TITLE
+                + " = 'Children of Dune' WHERE " + ItemEntry._ID + " = 1");
+        assertEquals(1, searchCount(db, "child* dun*"));
+
+        db.execSQL("DELETE FROM " + ItemEntry.TABLE_NAME);
+        assertEquals(0, searchCount(db, "dun*"));
+        helper.close();
+    }
+
+    /**
+     * Inserts the supplier with ID 1 that books inserted by hand refer to.
+     */
+    private static void insertSupplier(SQLiteDatabase db) {
+        db.execSQL("INSERT INTO " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry.COLUMN_SUPPLIER_ID + ", " + SupplierEntry.COLUMN_NAME + ", "
+                + SupplierEntry.COLUMN_PHONE + ") VALUES (1, 'Ace', '8005551212')");
+    }
+
+    private static long searchCount(SQLiteDatabase db, String match) {
+        return DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM " + ItemEntry.FTS_TABLE_NAME
+                + " WHERE " + ItemEntry.FTS_TABLE_NAME + " MATCH ?", new String[]{match});
+    }
+
+    /**
+     * Returns the EXPLAIN QUERY PLAN details of the given statement, one step per line.
+     */
+    private static String queryPlan(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+
+    /**
+     * Returns the schema of the given database as one comparable string.
+     */
+    private static String schemaOf(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT type, name, sql FROM sqlite_master"
+                + " WHERE name NOT LIKE 'sqlite_%' AND name NOT LIKE 'android_%'"
+                + " ORDER BY type, name", null);
+        StringBuilder schema = new StringBuilder();
+        try {
+            while (cursor.moveToNext()) {
+                schema.append(cursor.getString(0)).append(' ')
+                        .append(cursor.getString(1)).append(' ')
+                        .append(cursor.getString(2)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return schema.toString();
+    }
+
+    /**
+     * {@link InventoryDbHelper} that records how often schema work was done.
+     */
+    private static class CountingDbHelper extends InventoryDbHelper {
+
+        int creates;
+        int upgrades;
+
+        CountingDbHelper(Context context, String name) {
+            super(context, name);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            creates++;
+            super.onCreate(db);
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            upgrades++;
+            super.onUpgrade(db, oldVersion, newVersion);
+        }
+    }
+}
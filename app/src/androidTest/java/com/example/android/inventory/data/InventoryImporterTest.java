@@ -0,0 +1,156 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.ParcelFileDescriptor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+
+import com.example.android.inventory.data.InventoryContract.ItemEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link InventoryImporter}, run against a renamed test database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryImporterTest {
+
+    private Context context;
+
+    private InventoryProvider provider;
+
+    private MockContentResolver resolver;
+
+    @Before
+    public void setUp() {
+        context = new RenamingDelegatingContext(InstrumentationRegistry.getTargetContext(),
+                "test.");
+        context.deleteDatabase(InventoryDbHelper.DB_NAME);
+
+        provider = new InventoryProvider();
+        provider.attachInfo(context, null);
+        resolver = new MockContentResolver();
+        resolver.addProvider(InventoryContract.CONTENT_AUTHORITY, provider);
+    }
+
+    @After
+    public void tearDown() {
+        provider.shutdown();
+        context.deleteDatabase(InventoryDbHelper.DB_NAME);
+    }
+
+    @Test
+    public void importsValidRowsAndReportsRejectedLines() throws Exception {
+        String csv = "title,author,price,quantity,supplier_name,supplier_phone,notes\n"
+                + "Dune,Frank Herbert,9.99,4,Ace,8005551212,\n"
+                + ",Nobody,1.00,1,Ace,8005551212,no title\n"
+                + "\"Eats, Shoots\nand Leaves\",Lynne Truss,12.50,,Gotham,8005551212,\n"
+                + "\n"
+                + "Emma,Jane Austen,-1,3,Penguin,8005551212,\n"
+                + "Ulysses,James Joyce,7.25,lots,Penguin,8005551212,\n"
+                + "Walden,Henry Thoreau,5.00,2,Penguin\n"
+                + "Beloved,Toni Morrison,8.00,6,Vintage,8005551212,\n";
+
+        InventoryImporter.Result result = InventoryImporter.importCsv(resolver, stream(csv), 2);
+
+        assertEquals(3, result.imported);
+        assertEquals(4, result.rejected);
+        assertEquals(3, result.rejections.get(0).line);
+        assertEquals("Book requires a title", result.rejections.get(0).reason);
+        assertEquals(7, result.rejections.get(1).line);
+        assertEquals(8, result.rejections.get(2).line);
+        assertEquals("Invalid quantity - lots", result.rejections.get(2).reason);
+        assertEquals(9, result.rejections.get(3).line);
+
+        Cursor cursor = provider.query(ItemEntry.CONTENT_URI, new String[]{
+                ItemEntry.COLUMN_TITLE, ItemEntry.COLUMN_QUANTITY}, null, null, ItemEntry._ID);
+        try {
+            assertEquals(3, cursor.getCount());
+            cursor.moveToPosition(1);
+            assertEquals("Eats, Shoots\nand Leaves", cursor.getString(0));
+            assertEquals(0, cursor.getInt(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void duplicateIsbnsAreRejectedWithTheirLines() throws Exception {
+        ContentValues dune = InventoryProviderTest.book("Dune");
+        dune.put(ItemEntry.COLUMN_ISBN, "9780441172719");
+        provider.insert(ItemEntry.CONTENT_URI, dune);
+
+        // The first batch holds lines 2, 3 and 5; line 4 is rejected before it is inserted
+        String csv = "title,author,price,quantity,supplier_name,supplier_phone,isbn\n"
+                + "Emma,Jane Austen,4.00,3,Penguin,8005551212,9780141439587\n"
+                + "Dune,Frank Herbert,9.99,4,Ace,8005551212,978-0-441-17271-9\n"
+                + ",Nobody,1.00,1,Ace,8005551212,\n"
+                + "Beloved,Toni Morrison,8.00,6,Vintage,8005551212,\n"
+                + "Emma,Jane Austen,4.00,3,Penguin,8005551212,9780141439587\n";
+
+        InventoryImporter.Result result = InventoryImporter.importCsv(resolver, stream(csv), 3);
+
+        assertEquals(2, result.imported);
+        assertEquals(3, result.rejected);
+        assertEquals(3, result.rejections.get(0).line);
+        assertEquals("Duplicate ISBN - 978-0-441-17271-9", result.rejections.get(0).reason);
+        assertEquals(4, result.rejections.get(1).line);
+        assertEquals(6, result.rejections.get(2).line);
+        assertEquals("Duplicate ISBN - 9780141439587", result.rejections.get(2).reason);
+
+        Cursor cursor = provider.query(ItemEntry.CONTENT_URI, new String[]{
+                ItemEntry.COLUMN_TITLE}, null, null, ItemEntry._ID);
+        try {
+            assertEquals(3, cursor.getCount());
+            cursor.moveToPosition(1);
+            assertEquals("Emma", cursor.getString(0));
+            cursor.moveToNext();
+            assertEquals("Beloved", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void exportedCatalogImportsBack() throws Exception {
+        provider.insert(ItemEntry.CONTENT_URI, InventoryProviderTest.book("Dune"));
+        provider.insert(ItemEntry.CONTENT_URI, InventoryProviderTest.book("Emma, \"Vol. 1\""));
+
+        InputStream export = new ParcelFileDescriptor.AutoCloseInputStream(
+                provider.openFile(ItemEntry.EXPORT_URI, "r"));
+        InventoryImporter.Result result = InventoryImporter.importCsv(resolver, export,
+                InventoryImporter.DEFAULT_BATCH_SIZE);
+
+        assertEquals(2, result.imported);
+        assertEquals(0, result.rejected);
+
+        // The exported IDs were ignored and the copies were added as new books
+        Cursor cursor = provider.query(ItemEntry.CONTENT_URI, new String[]{
+                ItemEntry._ID, ItemEntry.COLUMN_TITLE}, null, null, ItemEntry._ID);
+        try {
+            assertEquals(4, cursor.getCount());
+            cursor.moveToLast();
+            assertEquals(4, cursor.getLong(0));
+            assertEquals("Emma, \"Vol. 1\"", cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static InputStream stream(String csv) {
+        return new ByteArrayInputStream(csv.getBytes(Charset.forName("UTF-8")));
+    }
+}
@@ -0,0 +1,1313 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.RenamingDelegatingContext;
+
+import com.example.android.inventory.data.InventoryContract.DailySalesEntry;
+import com.example.android.inventory.data.InventoryContract.ItemEntry;
+import com.example.android.inventory.data.InventoryContract.LedgerEntry;
+import com.example.android.inventory.data.InventoryContract.StatsEntry;
+import com.example.android.inventory.data.InventoryContract.SupplierEntry;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link InventoryProvider}, run against a renamed test database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryProviderTest {
+
+    private Context context;
+
+    private InventoryProvider provider;
+
+    @Before
+    public void setUp() {
+        context = new RenamingDelegatingContext(InstrumentationRegistry.getTargetContext(),
+                "test.");
+        context.deleteDatabase(InventoryDbHelper.DB_NAME);
+
+        provider = new InventoryProvider();
+        provider.attachInfo(context, null);
+    }
+
+    @After
+    public void tearDown() {
+        provider.shutdown();
+        context.deleteDatabase(InventoryDbHelper.DB_NAME);
+    }
+
+    @Test
+    public void keysetPagesStayOrderedWhileBooksAreInserted() throws Exception {
+        final int books = 500;
+        final int pageSize = 37;
+
+        Set<Long> existingIds = new HashSet<>();
+        for (int index = 0; index < books; index++) {
+            Uri uri = provider.insert(ItemEntry.CONTENT_URI, book("Book " + (index * 7919 % books)));
+            existingIds.add(Long.parseLong(uri.getLastPathSegment()));
+        }
+
+        // Keep inserting books all over the sort order while the pages are read
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(42);
+                while (!done.get()) {
+                    provider.insert(ItemEntry.CONTENT_URI, book("Book " + random.nextInt(books)));
+                }
+            }
+        });
+        writer.start();
+
+        Set<Long> seenIds = new HashSet<>();
+        String lastTitle = null;
+        long lastId = -1;
+        Uri pageUri = ItemEntry.buildPageUri(pageSize);
+        try {
+            while (true) {
+                Cursor cursor = provider.query(pageUri,
+                        new String[]{ItemEntry._ID, ItemEntry.COLUMN_TITLE},
+                        null, null, ItemEntry.COLUMN_TITLE);
+                int count = cursor.getCount();
+                try {
+                    while (cursor.moveToNext()) {
+                        long id = cursor.getLong(0);
+                        String title = cursor.getString(1);
+                        assertTrue("Book " + id + " returned twice", seenIds.add(id));
+                        if (lastTitle != null) {
+                            int compare = title.compareTo(lastTitle);
+                            assertTrue("Pages out of order at book " + id,
+                                    compare > 0 || (compare == 0 && id > lastId));
+                        }
+                        lastTitle = title;
+                        lastId = id;
+                    }
+                } finally {
+                    cursor.close();
+                }
+                if (count < pageSize) {
+                    break;
+                }
+                pageUri = ItemEntry.buildPageUri(pageSize, lastTitle, lastId);
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+
+        // Every book that existed before paging started was returned exactly once
+        assertTrue(seenIds.containsAll(existingIds));
+    }
+
+    @Test
+    public void offsetPagesFollowIdOrder() {
+        for (int index = 0; index < 25; index++) {
+            provider.insert(ItemEntry.CONTENT_URI, book("Book " + index));
+        }
+
+        Cursor cursor = provider.query(ItemEntry.buildPageUri(10, 20), null, null, null, null);
+        try {
+            assertEquals(5, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals("Book 20",
+                    cursor.getString(cursor.getColumnIndex(ItemEntry.COLUMN_TITLE)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void fullPageReadAgainKeepsItsRangeOfIds() {
+        long[] ids = new long[6];
+        for (int index = 0; index < ids.length; index++) {
+            ids[index] = ContentUris.parseId(
+                    provider.insert(ItemEntry.CONTENT_URI, book("Book " + index)));
+        }
+
+        // Lose a book of the first page and add one after every page
+        provider.delete(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, ids[1]), null, null);
+        provider.insert(ItemEntry.CONTENT_URI, book("Book 6"));
+
+        Cursor cursor = provider.query(ItemEntry.buildPageUri(3, null, 0),
+                new String[]{ItemEntry._ID}, ItemEntry._ID + " <= ?",
+                new String[]{String.valueOf(ids[2])}, null);
+        try {
+            assertEquals(2, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(ids[0], cursor.getLong(0));
+            cursor.moveToNext();
+            assertEquals(ids[2], cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void pagesOnlyFollowIndexedColumns() {
+        provider.insert(ItemEntry.CONTENT_URI, book("Dune"));
+
+        // Supplier names are joined in, so no index of books could order a page by them
+        try {
+            provider.query(ItemEntry.buildPageUri(10), null, null, null,
+                    ItemEntry.COLUMN_SUPPLIER_NAME);
+            fail("Paged books by supplier name");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void applyBatchRollsBackEveryOperationOnFailure() throws Exception {
+        Uri uri = provider.insert(ItemEntry.CONTENT_URI, book("Dune"));
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int index = 0; index < 100; index++) {
+            operations.add(ContentProviderOperation.newUpdate(uri)
+                    .withValue(ItemEntry.COLUMN_QUANTITY, index)
+                    .withYieldAllowed(index % 10 == 0)
+                    .build());
+        }
+        // Updating a book that doesn't exist fails the batch
+        operations.add(ContentProviderOperation.newUpdate(
+                ContentUris.withAppendedId(ItemEntry.CONTENT_URI, 12345))
+                .withValue(ItemEntry.COLUMN_QUANTITY, 1)
+                .withExpectedCount(1)
+                .build());
+
+        try {
+            provider.applyBatch(operations);
+            fail("Batch should have failed");
+        } catch (OperationApplicationException expected) {
+            // The whole batch was rolled back
+        }
+        assertEquals(10, quantityOf(uri));
+
+        // Without the failing operation the whole batch applies
+        operations.remove(operations.size() - 1);
+        assertEquals(100, provider.applyBatch(operations).length);
+        assertEquals(99, quantityOf(uri));
+    }
+
+    @Test
+    public void batchesAndSingleWritesRunTogetherWithoutDeadlock() throws Exception {
+        final Uri[] uris = new Uri[10];
+        for (int index = 0; index < uris.length; index++) {
+            uris[index] = provider.insert(ItemEntry.CONTENT_URI, book("Book " + index));
+        }
+
+        // Batches of quantity updates hold the write connection while they run the compiled
+        // statements; single quantity updates, price changes and deletes run the same
+        // statements outside a transaction
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread batches = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int round = 0; round < 200; round++) {
+                        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+                        for (Uri uri : uris) {
+                            operations.add(ContentProviderOperation.newUpdate(uri)
+                                    .withValue(ItemEntry.COLUMN_QUANTITY, round)
+                                    .build());
+                        }
+                        provider.applyBatch(operations);
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        Thread singles = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int round = 0; round < 200; round++) {
+                        ContentValues values = new ContentValues();
+                        values.put(ItemEntry.COLUMN_QUANTITY, round);
+                        provider.update(uris[round % uris.length], values, null, null);
+
+                        Bundle extras = new Bundle();
+                        extras.putLong(InventoryContract.EXTRA_BOOK_ID,
+                                ContentUris.parseId(uris[0]));
+                        extras.putLong(InventoryContract.EXTRA_PRICE_CENTS, round);
+                        provider.call(InventoryContract.METHOD_SET_PRICE, null, extras);
+
+                        Uri extra = provider.insert(ItemEntry.CONTENT_URI, book("Extra"));
+                        provider.delete(extra, null, null);
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        batches.start();
+        singles.start();
+        batches.join(30000);
+        singles.join(30000);
+
+        assertFalse("Batches deadlocked", batches.isAlive());
+        assertFalse("Single writes deadlocked", singles.isAlive());
+        assertNull(failure.get());
+        assertEquals(199, quantityOf(uris[1]));
+    }
+
+    @Test
+    public void applyBatchNotifiesOnceAndOnlyWhatItCommitted() throws Exception {
+        Uri[] uris = new Uri[20];
+        for (int index = 0; index < uris.length; index++) {
+            uris[index] = provider.insert(ItemEntry.CONTENT_URI, book("Book " + index));
+        }
+        Bundle before = settledNotificationStats();
+
+        // A rolled back batch changed nothing, so nobody is notified
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (Uri uri : uris) {
+            operations.add(ContentProviderOperation.newUpdate(uri)
+                    .withValue(ItemEntry.COLUMN_QUANTITY, 1)
+                    .build());
+        }
+        operations.add(ContentProviderOperation.newUpdate(
+                ContentUris.withAppendedId(ItemEntry.CONTENT_URI, 12345))
+                .withValue(ItemEntry.COLUMN_QUANTITY, 1)
+                .withExpectedCount(1)
+                .build());
+        try {
+            provider.applyBatch(operations);
+            fail("Batch should have failed");
+        } catch (OperationApplicationException expected) {
+            // Rolled back
+        }
+        Bundle after = settledNotificationStats();
+        assertEquals(notificationsFired(before), notificationsFired(after));
+        assertEquals(changesRequested(before), changesRequested(after));
+
+        // A committed batch of 20 books is one notification, sent as soon as it commits
+        operations.remove(operations.size() - 1);
+        provider.applyBatch(operations);
+        after = notificationStats();
+        assertEquals(notificationsFired(before) + 1, notificationsFired(after));
+        assertEquals(changesRequested(before) + uris.length, changesRequested(after));
+        assertEquals(after.getLong(InventoryContract.EXTRA_CHANGES_COALESCED)
+                + notificationsFired(after), changesRequested(after));
+    }
+
+    @Test
+    public void windowsNotifyChangedBooksOneByOneUpToTheLimit() throws Exception {
+        int books = InventoryNotifier.DEFAULT_MAX_ROW_NOTIFICATIONS + 1;
+        long[] bookIds = new long[books];
+        int[] amounts = new int[books];
+        for (int index = 0; index < books; index++) {
+            bookIds[index] = ContentUris.parseId(
+                    provider.insert(ItemEntry.CONTENT_URI, book("Book " + index)));
+            amounts[index] = 1;
+        }
+
+        // A few books sold together are notified on their own URIs
+        Bundle before = settledNotificationStats();
+        Bundle extras = new Bundle();
+        extras.putLongArray(InventoryContract.EXTRA_BOOK_IDS, Arrays.copyOf(bookIds, 3));
+        extras.putIntArray(InventoryContract.EXTRA_AMOUNTS, Arrays.copyOf(amounts, 3));
+        provider.call(InventoryContract.METHOD_SELL_BATCH, null, extras);
+        Bundle after = settledNotificationStats();
+        assertEquals(notificationsFired(before) + 3, notificationsFired(after));
+        assertEquals(changesRequested(before) + 3, changesRequested(after));
+
+        // More books than the limit are one notification of the whole catalog
+        before = after;
+        extras.putLongArray(InventoryContract.EXTRA_BOOK_IDS, bookIds);
+        extras.putIntArray(InventoryContract.EXTRA_AMOUNTS, amounts);
+        provider.call(InventoryContract.METHOD_SELL_BATCH, null, extras);
+        after = settledNotificationStats();
+        assertEquals(notificationsFired(before) + 1, notificationsFired(after));
+        assertEquals(changesRequested(before) + books, changesRequested(after));
+    }
+
+    private Bundle notificationStats() {
+        return provider.call(InventoryContract.METHOD_NOTIFICATION_STATS, null, null);
+    }
+
+    /**
+     * Return the notification stats once every pending change was sent
+     */
+    private Bundle settledNotificationStats() throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            Bundle stats = notificationStats();
+            if (changesRequested(stats) == notificationsFired(stats)
+                    + stats.getLong(InventoryContract.EXTRA_CHANGES_COALESCED)) {
+                return stats;
+            }
+            Thread.sleep(10);
+        }
+        fail("Notifications still pending");
+        return null;
+    }
+
+    private static long changesRequested(Bundle stats) {
+        return stats.getLong(InventoryContract.EXTRA_CHANGES_REQUESTED);
+    }
+
+    private static long notificationsFired(Bundle stats) {
+        return stats.getLong(InventoryContract.EXTRA_NOTIFICATIONS_FIRED);
+    }
+
+    @Test
+    public void concurrentWritesShareCompiledStatements() throws Exception {
+        final Uri uri = provider.insert(ItemEntry.CONTENT_URI, book("Dune"));
+        final long bookId = ContentUris.parseId(uri);
+        ContentValues stock = new ContentValues();
+        stock.put(ItemEntry.COLUMN_QUANTITY, 1000);
+        assertEquals(1, provider.update(uri, stock, null, null));
+
+        // Sell from several binder-like threads at once while others insert and delete books
+        Thread[] threads = new Thread[8];
+        for (int index = 0; index < threads.length; index++) {
+            final boolean seller = index % 2 == 0;
+            threads[index] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int count = 0; count < 250; count++) {
+                        if (seller) {
+                            Bundle extras = new Bundle();
+                            extras.putLong(InventoryContract.EXTRA_BOOK_ID, bookId);
+                            provider.call(InventoryContract.METHOD_SELL, null, extras);
+                        } else {
+                            Uri other = provider.insert(ItemEntry.CONTENT_URI, book("Emma"));
+                            provider.delete(other, null, null);
+                        }
+                    }
+                }
+            });
+            threads[index].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, quantityOf(uri));
+        Cursor cursor = provider.query(ItemEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void statsMatchFullRecomputationAfterRandomWrites() {
+        Random random = new Random(7);
+        List<Long> ids = new ArrayList<>();
+        for (int step = 0; step < 2000; step++) {
+            int operation = ids.isEmpty() ? 0 : random.nextInt(7);
+            long id = ids.isEmpty() ? -1 : ids.get(random.nextInt(ids.size()));
+            Uri uri = ContentUris.withAppendedId(ItemEntry.CONTENT_URI, id);
+            ContentValues values = new ContentValues();
+            switch (operation) {
+                case 0:
+                    values = book("Book " + step);
+                    values.put(ItemEntry.COLUMN_PRICE, random.nextInt(5000) / 100.0);
+                    values.put(ItemEntry.COLUMN_QUANTITY, random.nextInt(20));
+                    ids.add(ContentUris.parseId(provider.insert(ItemEntry.CONTENT_URI, values)));
+                    break;
+                case 1:
+                    provider.bulkInsert(ItemEntry.CONTENT_URI,
+                            new ContentValues[]{book("Emma"), book("Ulysses")});
+                    ids.clear();
+                    Cursor cursor = provider.query(ItemEntry.CONTENT_URI,
+                            new String[]{ItemEntry._ID}, null, null, null);
+                    try {
+                        while (cursor.moveToNext()) {
+                            ids.add(cursor.getLong(0));
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                    break;
+                case 2:
+                    values.put(ItemEntry.COLUMN_QUANTITY, random.nextInt(20));
+                    provider.update(uri, values, null, null);
+                    break;
+                case 3:
+                    values.put(ItemEntry.COLUMN_PRICE, random.nextInt(5000) / 100.0);
+                    values.put(ItemEntry.COLUMN_TITLE, "Renamed " + step);
+                    provider.update(uri, values, null, null);
+                    break;
+                case 4:
+                    Bundle extras = new Bundle();
+                    extras.putLong(InventoryContract.EXTRA_BOOK_ID, id);
+                    extras.putInt(InventoryContract.EXTRA_AMOUNT, 1 + random.nextInt(3));
+                    provider.call(InventoryContract.METHOD_SELL, null, extras);
+                    break;
+                case 5:
+                    provider.delete(uri, null, null);
+                    ids.remove(Long.valueOf(id));
+                    break;
+                default:
+                    values.put(ItemEntry.COLUMN_QUANTITY, 0);
+                    provider.update(ItemEntry.CONTENT_URI, values, ItemEntry.COLUMN_QUANTITY
+                            + " < ?", new String[]{"2"});
+                    break;
+            }
+        }
+
+        // Recompute every statistic from a full scan of the books
+        long stockValueCents = 0;
+        int units = 0;
+        int lowStock = 0;
+        Cursor books = provider.query(ItemEntry.CONTENT_URI,
+                new String[]{ItemEntry.COLUMN_PRICE_CENTS, ItemEntry.COLUMN_QUANTITY},
+                null, null, null);
+        int skus = books.getCount();
+        try {
+            while (books.moveToNext()) {
+                int quantity = books.getInt(1);
+                stockValueCents += books.getLong(0) * quantity;
+                units += quantity;
+                if (quantity <= StatsEntry.LOW_STOCK_THRESHOLD) {
+                    lowStock++;
+                }
+            }
+        } finally {
+            books.close();
+        }
+
+        Cursor stats = provider.query(StatsEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertTrue(stats.moveToFirst());
+            // Cents add up exactly, however many writes went by
+            assertEquals(stockValueCents, stats.getLong(
+                    stats.getColumnIndexOrThrow(StatsEntry.COLUMN_STOCK_VALUE_CENTS)));
+            assertEquals(stockValueCents / 100.0, stats.getDouble(
+                    stats.getColumnIndexOrThrow(StatsEntry.COLUMN_STOCK_VALUE)), 0.0);
+            assertEquals(skus, stats.getInt(
+                    stats.getColumnIndexOrThrow(StatsEntry.COLUMN_SKU_COUNT)));
+            assertEquals(units, stats.getInt(
+                    stats.getColumnIndexOrThrow(StatsEntry.COLUMN_TOTAL_UNITS)));
+            assertEquals(lowStock, stats.getInt(
+                    stats.getColumnIndexOrThrow(StatsEntry.COLUMN_LOW_STOCK_COUNT)));
+        } finally {
+            stats.close();
+        }
+    }
+
+    @Test
+    public void singleBookQueriesAreCachedUntilTheBookChanges() {
+        Uri uri = provider.insert(ItemEntry.CONTENT_URI, book("Dune"));
+        long bookId = ContentUris.parseId(uri);
+
+        // The first query reads the database, the next ones are served from the cache
+        assertEquals(10, quantityOf(uri));
+        assertEquals(10, quantityOf(uri));
+        Cursor cursor = provider.query(uri, new String[]{ItemEntry.COLUMN_TITLE,
+                ItemEntry.COLUMN_PRICE}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Dune", cursor.getString(0));
+            assertEquals(9.99, cursor.getDouble(1), 0.0);
+        } finally {
+            cursor.close();
+        }
+        assertCacheStats(2, 1);
+
+        // Every write to the book invalidates it
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_QUANTITY, 5);
+        provider.update(uri, values, null, null);
+        assertEquals(5, quantityOf(uri));
+
+        Bundle extras = new Bundle();
+        extras.putLong(InventoryContract.EXTRA_BOOK_ID, bookId);
+        provider.call(InventoryContract.METHOD_SELL, null, extras);
+        assertEquals(4, quantityOf(uri));
+
+        provider.update(ItemEntry.CONTENT_URI, values, null, null);
+        assertEquals(5, quantityOf(uri));
+        assertCacheStats(2, 4);
+
+        provider.delete(uri, null, null);
+        cursor = provider.query(uri, null, null, null, null);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void stockMethodsWorkWithoutCursors() {
+        Uri uri = provider.insert(ItemEntry.CONTENT_URI, book("Dune"));
+        long bookId = ContentUris.parseId(uri);
+
+        Bundle extras = new Bundle();
+        extras.putLong(InventoryContract.EXTRA_BOOK_ID, bookId);
+        assertEquals(10, provider.call(InventoryContract.METHOD_GET_QUANTITY, null, extras)
+                .getInt(InventoryContract.EXTRA_QUANTITY));
+
+        extras.putInt(InventoryContract.EXTRA_AMOUNT, 5);
+        assertEquals(15, provider.call(InventoryContract.METHOD_RESTOCK, null, extras)
+                .getInt(InventoryContract.EXTRA_QUANTITY));
+        assertEquals(15, quantityOf(uri));
+
+        extras.putDouble(InventoryContract.EXTRA_PRICE, 12.5);
+        assertTrue(provider.call(InventoryContract.METHOD_SET_PRICE, null, extras)
+                .getBoolean(InventoryContract.EXTRA_UPDATED));
+        Cursor cursor = provider.query(uri, new String[]{ItemEntry.COLUMN_PRICE},
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(12.5, cursor.getDouble(0), 0.0);
+        } finally {
+            cursor.close();
+        }
+
+        // A book that doesn't exist is reported, not created
+        extras.putLong(InventoryContract.EXTRA_BOOK_ID, bookId + 1);
+        assertEquals(-1, provider.call(InventoryContract.METHOD_GET_QUANTITY, null, extras)
+                .getInt(InventoryContract.EXTRA_QUANTITY));
+        assertEquals(-1, provider.call(InventoryContract.METHOD_RESTOCK, null, extras)
+                .getInt(InventoryContract.EXTRA_QUANTITY));
+        assertFalse(provider.call(InventoryContract.METHOD_SET_PRICE, null, extras)
+                .getBoolean(InventoryContract.EXTRA_UPDATED));
+    }
+
+    @Test
+    public void pricesAreStoredInExactCents() {
+        // Dollars are rounded as written, not as the nearest double
+        assertEquals(999, ItemEntry.parsePriceCents("9.99"));
+        assertEquals(101, ItemEntry.parsePriceCents(" 1.005 "));
+        assertEquals(29, ItemEntry.priceToCents(0.285));
+        assertEquals(30, ItemEntry.priceToCents(0.1 + 0.2));
+
+        // Prices in dollars, as doubles or text, and in cents all end up as cents
+        ContentValues values = book("Dune");
+        values.put(ItemEntry.COLUMN_PRICE, 0.1);
+        values.put(ItemEntry.COLUMN_QUANTITY, 3);
+        Uri dune = provider.insert(ItemEntry.CONTENT_URI, values);
+        values = book("Emma");
+        values.put(ItemEntry.COLUMN_PRICE, "0.20");
+        values.put(ItemEntry.COLUMN_QUANTITY, 3);
+        Uri emma = provider.insert(ItemEntry.CONTENT_URI, values);
+        values = book("Ulysses");
+        values.remove(ItemEntry.COLUMN_PRICE);
+        values.put(ItemEntry.COLUMN_PRICE_CENTS, 29);
+        values.put(ItemEntry.COLUMN_QUANTITY, 7);
+        provider.bulkInsert(ItemEntry.CONTENT_URI, new ContentValues[]{values});
+
+        Cursor cursor = provider.query(ItemEntry.CONTENT_URI, new String[]{
+                        ItemEntry.COLUMN_PRICE_CENTS, ItemEntry.COLUMN_PRICE}, null, null,
+                ItemEntry.COLUMN_PRICE_CENTS);
+        try {
+            assertEquals(3, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(10, cursor.getLong(0));
+            assertEquals(0.1, cursor.getDouble(1), 0.0);
+            assertTrue(cursor.moveToNext());
+            assertEquals(20, cursor.getLong(0));
+            assertTrue(cursor.moveToNext());
+            assertEquals(29, cursor.getLong(0));
+            assertEquals(0.29, cursor.getDouble(1), 0.0);
+        } finally {
+            cursor.close();
+        }
+
+        // 0.10 * 3 + 0.20 * 3 + 0.29 * 7 is 2.93 to the cent, in SQL and in the statistics
+        cursor = provider.query(ItemEntry.CONTENT_URI, new String[]{"SUM("
+                + ItemEntry.COLUMN_PRICE_CENTS + " * " + ItemEntry.COLUMN_QUANTITY + ")"},
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(293, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+        assertEquals(293, stockValueCents());
+
+        // Updates and the price method write cents too
+        values = new ContentValues();
+        values.put(ItemEntry.COLUMN_PRICE, 0.07);
+        assertEquals(1, provider.update(dune, values, null, null));
+        Bundle extras = new Bundle();
+        extras.putLong(InventoryContract.EXTRA_BOOK_ID, ContentUris.parseId(emma));
+        extras.putLong(InventoryContract.EXTRA_PRICE_CENTS, 1);
+        assertTrue(provider.call(InventoryContract.METHOD_SET_PRICE, null, extras)
+                .getBoolean(InventoryContract.EXTRA_UPDATED));
+        assertEquals(21 + 3 + 203, stockValueCents());
+
+        // A price can't be given twice, or below zero
+        values.put(ItemEntry.COLUMN_PRICE_CENTS, 7);
+        try {
+            provider.update(dune, values, null, null);
+            fail("Updated a book with two prices");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+        values = new ContentValues();
+        values.put(ItemEntry.COLUMN_PRICE_CENTS, -1);
+        try {
+            provider.update(dune, values, null, null);
+            fail("Updated a book with a negative price");
+        } catch (NumberFormatException expected) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void exportStreamsEveryBookAsCsv() throws Exception {
+        final int books = 20000;
+        ContentValues[] values = new ContentValues[books];
+        for (int index = 0; index < books; index++) {
+            values[index] = book("Book " + index);
+        }
+        values[0].put(ItemEntry.COLUMN_TITLE, "Eats, Shoots \"and\" Leaves");
+        values[1].remove(ItemEntry.COLUMN_SUPPLIER_EMAIL);
+        provider.bulkInsert(ItemEntry.CONTENT_URI, values);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ParcelFileDescriptor.AutoCloseInputStream(
+                        provider.openFile(ItemEntry.EXPORT_URI, "r")), "UTF-8"));
+        try {
+            assertEquals("_id,title,author,price,quantity,supplier_name,supplier_email,"
+                    + "supplier_phone,isbn", reader.readLine());
+            assertEquals("1,\"Eats, Shoots \"\"and\"\" Leaves\",Author,9.99,10,"
+                    + "Scholastic Books,info@scholastic.com,8005551212,", reader.readLine());
+            assertEquals("2,Book 1,Author,9.99,10,Scholastic Books,,8005551212,",
+                    reader.readLine());
+            int lines = 2;
+            while (reader.readLine() != null) {
+                lines++;
+            }
+            assertEquals(books, lines);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void exportReadsChunksInBoundedMemoryUnderConcurrentDeletes() throws Exception {
+        final int books = 10000;
+        final int deleted = 2000;
+        char[] padding = new char[200];
+        Arrays.fill(padding, 'x');
+        ContentValues[] values = new ContentValues[books];
+        for (int index = 0; index < books; index++) {
+            values[index] = book("Book " + index + new String(padding));
+        }
+        provider.bulkInsert(ItemEntry.CONTENT_URI, values);
+        values = null;
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long baseline = runtime.totalMemory() - runtime.freeMemory();
+
+        // Delete the first books while the export runs; a delete must never shift the books
+        // after it out of the export, or into it twice
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ParcelFileDescriptor.AutoCloseInputStream(
+                        provider.openFile(ItemEntry.EXPORT_URI, "r")), "UTF-8"));
+        Thread deletes = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (long id = 1; id <= deleted; id++) {
+                    provider.delete(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, id),
+                            null, null);
+                }
+            }
+        });
+        deletes.start();
+
+        long exportedChars = 0;
+        long peak = 0;
+        long lastId = 0;
+        int kept = 0;
+        try {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                exportedChars += line.length();
+                long id = Long.parseLong(line.substring(0, line.indexOf(',')));
+                assertTrue("Book " + id + " exported out of order", id > lastId);
+                lastId = id;
+                if (id > deleted) {
+                    kept++;
+                }
+                if (id % 1000 == 0) {
+                    System.gc();
+                    peak = Math.max(peak, runtime.totalMemory() - runtime.freeMemory());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        deletes.join();
+
+        assertEquals(books - deleted, kept);
+        assertEquals(books, lastId);
+
+        // The export only ever holds one chunk, far less than the whole catalog
+        assertTrue("Export used " + (peak - baseline) + " bytes of heap",
+                peak - baseline < exportedChars * 2 / 4);
+    }
+
+    @Test
+    public void exportStreamsJsonWhenAskedFor() throws Exception {
+        provider.insert(ItemEntry.CONTENT_URI, book("Dune"));
+        provider.insert(ItemEntry.CONTENT_URI, book("Emma"));
+
+        assertArrayEquals(new String[]{ItemEntry.EXPORT_JSON_TYPE},
+                provider.getStreamTypes(ItemEntry.EXPORT_URI, "application/*"));
+
+        AssetFileDescriptor file = provider.openTypedAssetFile(ItemEntry.EXPORT_URI,
+                ItemEntry.EXPORT_JSON_TYPE, null);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                file.createInputStream(), "UTF-8"));
+        StringBuilder json = new StringBuilder();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                json.append(line);
+            }
+        } finally {
+            reader.close();
+        }
+
+        JSONArray array = new JSONArray(json.toString());
+        assertEquals(2, array.length());
+        assertEquals("Emma", array.getJSONObject(1).getString(ItemEntry.COLUMN_TITLE));
+        assertEquals(10, array.getJSONObject(1).getInt(ItemEntry.COLUMN_QUANTITY));
+        assertEquals(9.99, array.getJSONObject(1).getDouble(ItemEntry.COLUMN_PRICE), 0.0);
+    }
+
+    @Test
+    public void scannedIsbnFindsAndSellsBook() {
+        ContentValues values = book("Dune");
+        values.put(ItemEntry.COLUMN_ISBN, "978-0-441-17271-9");
+        long bookId = ContentUris.parseId(provider.insert(ItemEntry.CONTENT_URI, values));
+        provider.insert(ItemEntry.CONTENT_URI, book("Emma"));
+        provider.insert(ItemEntry.CONTENT_URI, book("Ulysses"));
+
+        // Stored and looked up without the hyphens it was typed with
+        Cursor cursor = provider.query(ItemEntry.buildIsbnUri("9780441172719"),
+                new String[]{ItemEntry._ID, ItemEntry.COLUMN_ISBN}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(bookId, cursor.getLong(0));
+            assertEquals("9780441172719", cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+
+        Bundle extras = new Bundle();
+        extras.putString(InventoryContract.EXTRA_ISBN, "978 0441 17271 9");
+        extras.putInt(InventoryContract.EXTRA_AMOUNT, 3);
+        Bundle result = provider.call(InventoryContract.METHOD_SELL, null, extras);
+        assertTrue(result.getBoolean(InventoryContract.EXTRA_SOLD));
+        assertEquals(7, result.getInt(InventoryContract.EXTRA_QUANTITY));
+        assertEquals(bookId, result.getLong(InventoryContract.EXTRA_BOOK_ID));
+
+        extras.putString(InventoryContract.EXTRA_ISBN, "0000000000");
+        result = provider.call(InventoryContract.METHOD_SELL, null, extras);
+        assertFalse(result.getBoolean(InventoryContract.EXTRA_SOLD));
+        assertEquals(-1, result.getInt(InventoryContract.EXTRA_QUANTITY));
+
+        // A second book can't take the same ISBN, but any number of books can have none
+        assertNull(provider.insert(ItemEntry.CONTENT_URI, values));
+        values.put(ItemEntry.COLUMN_ISBN, "");
+        assertNotNull(provider.insert(ItemEntry.CONTENT_URI, values));
+    }
+
+    @Test
+    public void salesAreLedgeredAndCompactedIntoDailySnapshots() {
+        long bookId = ContentUris.parseId(provider.insert(ItemEntry.CONTENT_URI, book("Dune")));
+        sell(bookId, 3);
+        sell(bookId, 3);
+        sell(bookId, 5);
+        restock(bookId, 4);
+
+        // The sale that didn't go through left no entry
+        Cursor cursor = provider.query(LedgerEntry.CONTENT_URI, new String[]{
+                LedgerEntry.COLUMN_BOOK_ID, LedgerEntry.COLUMN_CHANGE}, null, null,
+                LedgerEntry._ID);
+        try {
+            assertEquals(3, cursor.getCount());
+            int[] changes = {-3, -3, 4};
+            for (int change : changes) {
+                assertTrue(cursor.moveToNext());
+                assertEquals(bookId, cursor.getLong(0));
+                assertEquals(change, cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        assertEquals(3, compactLedger());
+        sell(bookId, 1);
+        assertEquals(1, compactLedger());
+        assertEquals(0, compactLedger());
+
+        // Both compactions added up into the one snapshot of today
+        cursor = provider.query(DailySalesEntry.CONTENT_URI, new String[]{
+                DailySalesEntry.COLUMN_BOOK_ID, DailySalesEntry.COLUMN_DAY,
+                DailySalesEntry.COLUMN_UNITS_SOLD, DailySalesEntry.COLUMN_UNITS_RESTOCKED},
+                null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(bookId, cursor.getLong(0));
+            assertEquals(System.currentTimeMillis() / DailySalesEntry.MILLIS_PER_DAY,
+                    cursor.getLong(1));
+            assertEquals(7, cursor.getInt(2));
+            assertEquals(4, cursor.getInt(3));
+        } finally {
+            cursor.close();
+        }
+        cursor = provider.query(LedgerEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void everyQuantityChangeIsLedgeredOnce() throws Exception {
+        Uri uri = provider.insert(ItemEntry.CONTENT_URI, book("Dune"));
+        long bookId = ContentUris.parseId(uri);
+
+        // A quantity typed in the editor, through the compiled update and with other values
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_QUANTITY, 12);
+        provider.update(uri, values, null, null);
+        values.put(ItemEntry.COLUMN_QUANTITY, 9);
+        values.put(ItemEntry.COLUMN_TITLE, "Dune Messiah");
+        provider.update(uri, values, null, null);
+
+        // A shipment in a batch, a sale, and updates that leave the quantity as it is
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newUpdate(uri)
+                .withValue(ItemEntry.COLUMN_QUANTITY, 15)
+                .build());
+        provider.applyBatch(operations);
+        sell(bookId, 2);
+        values.put(ItemEntry.COLUMN_QUANTITY, 13);
+        provider.update(uri, values, null, null);
+        values.clear();
+        values.put(ItemEntry.COLUMN_TITLE, "Children of Dune");
+        provider.update(uri, values, null, null);
+
+        Cursor cursor = provider.query(LedgerEntry.CONTENT_URI, new String[]{
+                LedgerEntry.COLUMN_BOOK_ID, LedgerEntry.COLUMN_CHANGE,
+                LedgerEntry.COLUMN_TIMESTAMP}, null, null, LedgerEntry._ID);
+        try {
+            int[] changes = {2, -3, 6, -2};
+            assertEquals(changes.length, cursor.getCount());
+            for (int change : changes) {
+                assertTrue(cursor.moveToNext());
+                assertEquals(bookId, cursor.getLong(0));
+                assertEquals(change, cursor.getInt(1));
+                assertTrue(Math.abs(System.currentTimeMillis() - cursor.getLong(2)) < 60000);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void versionedUpdatesNeverLoseConcurrentWrites() throws Exception {
+        final long bookId = ContentUris.parseId(
+                provider.insert(ItemEntry.CONTENT_URI, book("Dune")));
+        final int threads = 4;
+        final int increments = 50;
+
+        // Every thread reads, adds one and writes back, retrying whenever it lost the race
+        final List<Throwable> failures = new ArrayList<>();
+        Thread[] writers = new Thread[threads];
+        for (int thread = 0; thread < threads; thread++) {
+            writers[thread] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int done = 0; done < increments; ) {
+                            Cursor cursor = provider.query(
+                                    ContentUris.withAppendedId(ItemEntry.CONTENT_URI, bookId),
+                                    new String[]{ItemEntry.COLUMN_QUANTITY,
+                                            ItemEntry.COLUMN_VERSION}, null, null, null);
+                            int quantity;
+                            long version;
+                            try {
+                                cursor.moveToFirst();
+                                quantity = cursor.getInt(0);
+                                version = cursor.getLong(1);
+                            } finally {
+                                cursor.close();
+                            }
+
+                            ContentValues values = new ContentValues();
+                            values.put(ItemEntry.COLUMN_QUANTITY, quantity + 1);
+                            int result = provider.update(
+                                    ItemEntry.buildVersionedUri(bookId, version), values,
+                                    null, null);
+                            if (result != ItemEntry.UPDATE_CONFLICT) {
+                                assertEquals(1, result);
+                                done++;
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            });
+            writers[thread].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+
+        // No increment was lost, and every write raised the version
+        assertEquals(10 + threads * increments, getQuantity(bookId));
+        Cursor cursor = provider.query(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, bookId),
+                new String[]{ItemEntry.COLUMN_VERSION}, null, null, null);
+        try {
+            cursor.moveToFirst();
+            assertEquals(1 + threads * increments, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+
+        // A sale raises the version too, so an edit based on the old version conflicts,
+        // while a book that doesn't exist still updates nothing
+        sell(bookId, 1);
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_TITLE, "Dune Messiah");
+        assertEquals(ItemEntry.UPDATE_CONFLICT, provider.update(
+                ItemEntry.buildVersionedUri(bookId, 1 + threads * increments), values,
+                null, null));
+        assertEquals(1, provider.update(
+                ItemEntry.buildVersionedUri(bookId, 2 + threads * increments), values,
+                null, null));
+        assertEquals(0, provider.update(ItemEntry.buildVersionedUri(bookId + 1, 1), values,
+                null, null));
+    }
+
+    @Test
+    public void versionedUpdateThatLosesLeavesNoSupplierBehind() {
+        long bookId = ContentUris.parseId(provider.insert(ItemEntry.CONTENT_URI, book("Dune")));
+        sell(bookId, 1);
+        assertEquals(1, countOf(SupplierEntry.CONTENT_URI, null, null));
+
+        // The edit started at version 1 and moves the book to a new supplier
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_SUPPLIER_NAME, "Penguin");
+        assertEquals(ItemEntry.UPDATE_CONFLICT, provider.update(
+                ItemEntry.buildVersionedUri(bookId, 1), values, null, null));
+        assertEquals(1, countOf(SupplierEntry.CONTENT_URI, null, null));
+
+        // At the current version the supplier is added along with the update
+        assertEquals(1, provider.update(ItemEntry.buildVersionedUri(bookId, 2), values,
+                null, null));
+        assertEquals(1, countOf(ItemEntry.CONTENT_URI, ItemEntry.COLUMN_SUPPLIER_NAME + "=?",
+                new String[]{"Penguin"}));
+    }
+
+    @Test
+    public void searchRanksBooksByRelevance() {
+        ContentValues alpha = book("Alpha");
+        alpha.put(ItemEntry.COLUMN_AUTHOR, "Dune Press");
+        ContentValues dune = book("Dune");
+        dune.put(ItemEntry.COLUMN_AUTHOR, "Dune Estate");
+        provider.bulkInsert(ItemEntry.CONTENT_URI, new ContentValues[]{
+                alpha, book("Beyond Dune"), dune, book("Another Dune"), book("Emma")});
+
+        // Hits in the title count more than hits in the author; ties are in title order
+        Uri search = ItemEntry.buildSearchUri("dune");
+        assertEquals(Arrays.asList("Dune", "Another Dune", "Beyond Dune", "Alpha"),
+                titlesOf(provider.query(search, new String[]{ItemEntry.COLUMN_TITLE},
+                        null, null, null)));
+
+        // A sort order replaces the ranking
+        assertEquals(Arrays.asList("Alpha", "Another Dune", "Beyond Dune", "Dune"),
+                titlesOf(provider.query(search, new String[]{ItemEntry.COLUMN_TITLE},
+                        null, null, ItemEntry.COLUMN_TITLE)));
+
+        // The match info the ranking is read from isn't one of the columns
+        Cursor cursor = provider.query(search, null, ItemEntry.COLUMN_AUTHOR + "=?",
+                new String[]{"Author"}, null);
+        try {
+            assertEquals(-1, cursor.getColumnIndex("match_info"));
+            assertEquals(cursor.getColumnNames().length, cursor.getColumnCount());
+            assertTrue(cursor.moveToLast());
+            assertEquals("Beyond Dune", cursor.getString(
+                    cursor.getColumnIndexOrThrow(ItemEntry.COLUMN_TITLE)));
+            assertTrue(cursor.isLast());
+            assertFalse(cursor.moveToNext());
+            assertTrue(cursor.isAfterLast());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static List<String> titlesOf(Cursor cursor) {
+        List<String> titles = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                titles.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return titles;
+    }
+
+    @Test
+    public void booksShareSuppliersAndReadThemJoinedIn() {
+        ContentValues ulysses = book("Ulysses");
+        ulysses.put(ItemEntry.COLUMN_SUPPLIER_NAME, "Penguin");
+        ulysses.remove(ItemEntry.COLUMN_SUPPLIER_EMAIL);
+        provider.bulkInsert(ItemEntry.CONTENT_URI, new ContentValues[]{
+                book("Dune"), book("Emma"), ulysses});
+        Uri dune = ContentUris.withAppendedId(ItemEntry.CONTENT_URI, 1);
+        Uri emma = ContentUris.withAppendedId(ItemEntry.CONTENT_URI, 2);
+        assertEquals(2, countOf(SupplierEntry.CONTENT_URI, null, null));
+
+        // Books read their supplier as if it were stored with them, and can be selected by it
+        String[] projection = {ItemEntry.COLUMN_SUPPLIER_NAME, ItemEntry.COLUMN_SUPPLIER_EMAIL,
+                ItemEntry.COLUMN_SUPPLIER_PHONE, ItemEntry.COLUMN_SUPPLIER_ID};
+        assertEquals(2, countOf(ItemEntry.CONTENT_URI, ItemEntry.COLUMN_SUPPLIER_NAME + "=?",
+                new String[]{"Scholastic Books"}));
+        Cursor cursor = provider.query(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, 3),
+                projection, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Penguin", cursor.getString(0));
+            assertTrue(cursor.isNull(1));
+        } finally {
+            cursor.close();
+        }
+
+        // Changing part of a book's supplier moves only that book to the new supplier
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_SUPPLIER_PHONE, "8005559999");
+        assertEquals(1, provider.update(emma, values, null, null));
+        assertEquals(3, countOf(SupplierEntry.CONTENT_URI, null, null));
+        cursor = provider.query(emma, projection, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Scholastic Books", cursor.getString(0));
+            assertEquals("info@scholastic.com", cursor.getString(1));
+            assertEquals("8005559999", cursor.getString(2));
+        } finally {
+            cursor.close();
+        }
+
+        // Changing the supplier itself changes every book it supplies, cached or not
+        long supplierId;
+        cursor = provider.query(dune, projection, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("8005551212", cursor.getString(2));
+            supplierId = cursor.getLong(3);
+        } finally {
+            cursor.close();
+        }
+        Uri supplier = ContentUris.withAppendedId(SupplierEntry.CONTENT_URI, supplierId);
+        values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_NAME, "Scholastic");
+        assertEquals(1, provider.update(supplier, values, null, null));
+        cursor = provider.query(dune, projection, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Scholastic", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+
+        // The supplier ID only follows the supplier columns
+        values = new ContentValues();
+        values.put(ItemEntry.COLUMN_SUPPLIER_ID, supplierId);
+        try {
+            provider.update(emma, values, null, null);
+            fail("Updated the supplier ID of a book");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        // A supplier can only be deleted once none of its books is left
+        assertEquals(0, provider.delete(supplier, null, null));
+        assertEquals(1, provider.delete(ItemEntry.CONTENT_URI,
+                ItemEntry.COLUMN_SUPPLIER_NAME + "=?", new String[]{"Scholastic"}));
+        assertEquals(1, provider.delete(supplier, null, null));
+        assertEquals(2, countOf(ItemEntry.CONTENT_URI, null, null));
+    }
+
+    @Test
+    public void metricsCountEveryOperationPerUri() {
+        Uri uri = provider.insert(ItemEntry.CONTENT_URI, book("Dune"));
+        long bookId = ContentUris.parseId(uri);
+        assertEquals(1, countOf(uri, null, null));
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_QUANTITY, 5);
+        assertEquals(1, provider.update(uri, values, null, null));
+        Bundle extras = new Bundle();
+        extras.putLong(InventoryContract.EXTRA_BOOK_ID, bookId);
+        provider.call(InventoryContract.METHOD_SELL, null, extras);
+        try {
+            provider.insert(ItemEntry.CONTENT_URI, book(null));
+            fail("Inserted a book without a title");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals(1, provider.delete(uri, null, null));
+
+        extras = new Bundle();
+        extras.putBoolean(InventoryContract.EXTRA_RESET, true);
+        Bundle snapshot = provider.call(InventoryContract.METHOD_METRICS, null, extras);
+        assertMetrics(snapshot, "insert books", 2, 1, 1);
+        assertMetrics(snapshot, "query books/#", 1, 0, 1);
+        assertMetrics(snapshot, "update books/#", 1, 0, 1);
+        assertMetrics(snapshot, "delete books/#", 1, 0, 1);
+        assertMetrics(snapshot, "call books", 1, 0, 1);
+        assertMetrics(snapshot, "transaction books", 1, 0, 0);
+        assertMetrics(snapshot, "transaction books/#", 2, 0, 0);
+        assertNull(snapshot.getBundle("query stats"));
+
+        // The snapshot reset the metrics, so only the call asking for them is left
+        StringWriter dump = new StringWriter();
+        provider.dump(null, new PrintWriter(dump, true), new String[0]);
+        String[] lines = dump.toString().split("\n");
+        assertEquals("Operations:", lines[0]);
+        assertTrue(lines[1], lines[1].startsWith("  call books: count=1 errors=0 rows=0 mean="));
+        assertTrue(lines[2], lines[2].startsWith("Notifier: "));
+        assertTrue(lines[3], lines[3].startsWith("Row cache: "));
+        assertEquals(4, lines.length);
+    }
+
+    private static void assertMetrics(Bundle snapshot, String key, long count, long errors,
+                                      long rows) {
+        Bundle metrics = snapshot.getBundle(key);
+        assertNotNull(key, metrics);
+        assertEquals(key, count, metrics.getLong(InventoryContract.EXTRA_COUNT));
+        assertEquals(key, errors, metrics.getLong(InventoryContract.EXTRA_ERRORS));
+        assertEquals(key, rows, metrics.getLong(InventoryContract.EXTRA_ROWS));
+
+        long[] histogram = metrics.getLongArray(InventoryContract.EXTRA_LATENCY_HISTOGRAM);
+        assertEquals(InventoryContract.METRICS_LATENCY_BUCKETS, histogram.length);
+        long recorded = 0;
+        for (long bucket : histogram) {
+            recorded += bucket;
+        }
+        assertEquals(key, count, recorded);
+    }
+
+    private int countOf(Uri uri, String selection, String[] selectionArgs) {
+        Cursor cursor = provider.query(uri, null, selection, selectionArgs, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int getQuantity(long bookId) {
+        Bundle extras = new Bundle();
+        extras.putLong(InventoryContract.EXTRA_BOOK_ID, bookId);
+        return provider.call(InventoryContract.METHOD_GET_QUANTITY, null, extras)
+                .getInt(InventoryContract.EXTRA_QUANTITY);
+    }
+
+    private void sell(long bookId, int amount) {
+        Bundle extras = new Bundle();
+        extras.putLong(InventoryContract.EXTRA_BOOK_ID, bookId);
+        extras.putInt(InventoryContract.EXTRA_AMOUNT, amount);
+        provider.call(InventoryContract.METHOD_SELL, null, extras);
+    }
+
+    private void restock(long bookId, int amount) {
+        Bundle extras = new Bundle();
+        extras.putLong(InventoryContract.EXTRA_BOOK_ID, bookId);
+        extras.putInt(InventoryContract.EXTRA_AMOUNT, amount);
+        provider.call(InventoryContract.METHOD_RESTOCK, null, extras);
+    }
+
+    private int compactLedger() {
+        Bundle extras = new Bundle();
+        extras.putLong(InventoryContract.EXTRA_BEFORE, System.currentTimeMillis() + 1);
+        return provider.call(InventoryContract.METHOD_COMPACT_LEDGER, null, extras)
+                .getInt(InventoryContract.EXTRA_COMPACTED);
+    }
+
+    private void assertCacheStats(long hits, long misses) {
+        Bundle stats = provider.call(InventoryContract.METHOD_ROW_CACHE_STATS, null, null);
+        assertEquals(hits, stats.getLong(InventoryContract.EXTRA_CACHE_HITS));
+        assertEquals(misses, stats.getLong(InventoryContract.EXTRA_CACHE_MISSES));
+    }
+
+    private int quantityOf(Uri uri) {
+        Cursor cursor = provider.query(uri, new String[]{ItemEntry.COLUMN_QUANTITY},
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long stockValueCents() {
+        Cursor cursor = provider.query(StatsEntry.CONTENT_URI,
+                new String[]{StatsEntry.COLUMN_STOCK_VALUE_CENTS}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns valid values for a new book with the given title.
+     */
+    static ContentValues book(String title) {
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_TITLE, title);
+        values.put(ItemEntry.COLUMN_AUTHOR, "Author");
+        values.put(ItemEntry.COLUMN_PRICE, 9.99);
+        values.put(ItemEntry.COLUMN_QUANTITY, 10);
+        values.put(ItemEntry.COLUMN_SUPPLIER_NAME, "Scholastic Books");
+        values.put(ItemEntry.COLUMN_SUPPLIER_EMAIL, "info@scholastic.com");
+        values.put(ItemEntry.COLUMN_SUPPLIER_PHONE, "8005551212");
+        return values;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+
+import com.example.android.inventory.data.InventoryContract.ItemEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link InventoryUpdater}, run against a renamed test database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryUpdaterTest {
+
+    private Context context;
+
+    private InventoryProvider provider;
+
+    private MockContentResolver resolver;
+
+    private long bookId;
+
+    /** The book as an editor would have loaded it */
+    private ContentValues loaded;
+
+    @Before
+    public void setUp() {
+        context = new RenamingDelegatingContext(InstrumentationRegistry.getTargetContext(),
+                "test.");
+        context.deleteDatabase(InventoryDbHelper.DB_NAME);
+
+        provider = new InventoryProvider();
+        provider.attachInfo(context, null);
+        resolver = new MockContentResolver();
+        resolver.addProvider(InventoryContract.CONTENT_AUTHORITY, provider);
+
+        loaded = InventoryProviderTest.book("Dune");
+        bookId = ContentUris.parseId(provider.insert(ItemEntry.CONTENT_URI, loaded));
+    }
+
+    @After
+    public void tearDown() {
+        provider.shutdown();
+        context.deleteDatabase(InventoryDbHelper.DB_NAME);
+    }
+
+    @Test
+    public void editKeepsSalesMadeWhileItWasOpen() {
+        ContentValues edited = new ContentValues(loaded);
+        edited.put(ItemEntry.COLUMN_TITLE, "Dune Messiah");
+        edited.put(ItemEntry.COLUMN_PRICE, 12.50);
+
+        // Three copies sell while the editor is open
+        InventoryContract.sell(resolver, bookId, 3);
+
+        assertEquals(1, InventoryUpdater.updateBook(resolver, bookId, loaded, edited, 1));
+        Cursor cursor = queryBook();
+        try {
+            assertEquals("Dune Messiah", cursor.getString(0));
+            assertEquals(12.50, cursor.getDouble(1), 0.0);
+            assertEquals(7, cursor.getInt(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void quantityEditsAddToSalesMadeWhileOpen() {
+        ContentValues edited = new ContentValues(loaded);
+        edited.put(ItemEntry.COLUMN_QUANTITY, 20);
+
+        // The editor added a shipment of ten, and a sale came in meanwhile
+        InventoryContract.sell(resolver, bookId, 1);
+
+        assertEquals(1, InventoryUpdater.updateBook(resolver, bookId, loaded, edited, 1));
+        Cursor cursor = queryBook();
+        try {
+            assertEquals(19, cursor.getInt(2));
+        } finally {
+            cursor.close();
+        }
+
+        // Taking away more copies than the sales left is a conflict
+        ContentValues current = new ContentValues(loaded);
+        current.put(ItemEntry.COLUMN_QUANTITY, 19);
+        ContentValues emptied = new ContentValues(current);
+        emptied.put(ItemEntry.COLUMN_QUANTITY, 0);
+        InventoryContract.sell(resolver, bookId, 4);
+        assertEquals(ItemEntry.UPDATE_CONFLICT,
+                InventoryUpdater.updateBook(resolver, bookId, current, emptied, 3));
+        cursor = queryBook();
+        try {
+            assertEquals(15, cursor.getInt(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void overlappingEditsConflict() {
+        ContentValues edited = new ContentValues(loaded);
+        edited.put(ItemEntry.COLUMN_TITLE, "Dune Messiah");
+
+        // Someone else renamed the book differently while the editor was open
+        ContentValues renamed = new ContentValues();
+        renamed.put(ItemEntry.COLUMN_TITLE, "Children of Dune");
+        provider.update(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, bookId), renamed,
+                null, null);
+
+        assertEquals(ItemEntry.UPDATE_CONFLICT,
+                InventoryUpdater.updateBook(resolver, bookId, loaded, edited, 1));
+        Cursor cursor = queryBook();
+        try {
+            assertEquals("Children of Dune", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+
+        // The same change made on both sides is no conflict
+        renamed.put(ItemEntry.COLUMN_TITLE, "Dune Messiah");
+        provider.update(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, bookId), renamed,
+                null, null);
+        assertEquals(1, InventoryUpdater.updateBook(resolver, bookId, loaded, edited, 1));
+
+        // Nor is an edit that changes nothing, but an edit of a deleted book updates nothing
+        assertEquals(1, InventoryUpdater.updateBook(resolver, bookId, loaded, loaded, 1));
+        provider.delete(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, bookId), null, null);
+        assertEquals(0, InventoryUpdater.updateBook(resolver, bookId, loaded, edited, 1));
+    }
+
+    private Cursor queryBook() {
+        Cursor cursor = provider.query(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, bookId),
+                new String[]{ItemEntry.COLUMN_TITLE, ItemEntry.COLUMN_PRICE,
+                        ItemEntry.COLUMN_QUANTITY}, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        return cursor;
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+
+import com.example.android.inventory.data.InventoryContract.ItemEntry;
+import com.example.android.inventory.data.InventoryContract.LedgerEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests for {@link InventoryWriter}: every flow is started from the main thread,
+ * and the provider checks that none of its database work runs there.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InventoryWriterTest {
+
+    private Context context;
+
+    private MainThreadCheckingProvider provider;
+
+    private MockContentResolver resolver;
+
+    @Before
+    public void setUp() {
+        context = new RenamingDelegatingContext(InstrumentationRegistry.getTargetContext(),
+                "test.");
+        context.deleteDatabase(InventoryDbHelper.DB_NAME);
+
+        provider = new MainThreadCheckingProvider();
+        provider.attachInfo(context, null);
+        resolver = new MockContentResolver();
+        resolver.addProvider(InventoryContract.CONTENT_AUTHORITY, provider);
+    }
+
+    @After
+    public void tearDown() {
+        InventoryWriter.setSaleWindowMillis(InventoryWriter.DEFAULT_SALE_WINDOW_MILLIS);
+        provider.shutdown();
+        context.deleteDatabase(InventoryDbHelper.DB_NAME);
+    }
+
+    @Test
+    public void writesNeverTouchSqliteOnMainThread() throws Exception {
+        final CountDownLatch inserted = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(3);
+        final AtomicInteger callbacksOffMainThread = new AtomicInteger();
+        final AtomicReference<Uri> insertedUri = new AtomicReference<>();
+        final AtomicInteger bulkInserted = new AtomicInteger();
+        final AtomicInteger quantityLeft = new AtomicInteger();
+        final AtomicInteger updated = new AtomicInteger();
+        final AtomicInteger deleted = new AtomicInteger();
+
+        // Insert and bulk insert like the editor and catalog screens do
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                InventoryWriter.insert(resolver, ItemEntry.CONTENT_URI,
+                        InventoryProviderTest.book("Dune"), new InventoryWriter.Callback<Uri>() {
+                            @Override
+                            public void onComplete(Uri result) {
+                                checkMainThread(callbacksOffMainThread);
+                                insertedUri.set(result);
+                                inserted.countDown();
+                            }
+                        });
+                InventoryWriter.bulkInsert(resolver, ItemEntry.CONTENT_URI, new ContentValues[]{
+                        InventoryProviderTest.book("Emma"), InventoryProviderTest.book("Ulysses")
+                }, new InventoryWriter.Callback<Integer>() {
+                    @Override
+                    public void onComplete(Integer result) {
+                        checkMainThread(callbacksOffMainThread);
+                        bulkInserted.set(result);
+                        inserted.countDown();
+                    }
+                });
+            }
+        });
+        assertTrue(inserted.await(10, TimeUnit.SECONDS));
+        assertNotNull(insertedUri.get());
+        assertEquals(2, bulkInserted.get());
+        final long bookId = Long.parseLong(insertedUri.get().getLastPathSegment());
+
+        // Then sell, update and delete the inserted book, still in submission order
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                InventoryWriter.sell(resolver, bookId, 1, new InventoryWriter.Callback<Integer>() {
+                    @Override
+                    public void onComplete(Integer result) {
+                        checkMainThread(callbacksOffMainThread);
+                        quantityLeft.set(result);
+                        done.countDown();
+                    }
+                });
+                ContentValues values = new ContentValues();
+                values.put(ItemEntry.COLUMN_QUANTITY, 20);
+                InventoryWriter.update(resolver, insertedUri.get(), values, null, null,
+                        new InventoryWriter.Callback<Integer>() {
+                            @Override
+                            public void onComplete(Integer result) {
+                                checkMainThread(callbacksOffMainThread);
+                                updated.set(result);
+                                done.countDown();
+                            }
+                        });
+                InventoryWriter.delete(resolver, insertedUri.get(), null, null,
+                        new InventoryWriter.Callback<Integer>() {
+                            @Override
+                            public void onComplete(Integer result) {
+                                checkMainThread(callbacksOffMainThread);
+                                deleted.set(result);
+                                done.countDown();
+                            }
+                        });
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(9, quantityLeft.get());
+        assertEquals(1, updated.get());
+        assertEquals(1, deleted.get());
+
+        // The database was only ever touched by the writer thread, and every result came back
+        // on the main thread
+        assertEquals(0, provider.mainThreadCalls.get());
+        assertEquals(0, callbacksOffMainThread.get());
+    }
+
+    @Test
+    public void queuedSalesAreNeverLost() throws Exception {
+        final int books = 5;
+        final int threads = 4;
+        final int salesPerThread = 500;
+        final int stock = 10000;
+
+        final long[] bookIds = new long[books];
+        for (int index = 0; index < books; index++) {
+            ContentValues values = InventoryProviderTest.book("Book " + index);
+            values.put(ItemEntry.COLUMN_QUANTITY, stock);
+            bookIds[index] = Long.parseLong(
+                    provider.insert(ItemEntry.CONTENT_URI, values).getLastPathSegment());
+        }
+
+        // Tap away at every book from several threads, flushing now and then
+        InventoryWriter.setSaleWindowMillis(5);
+        final AtomicIntegerArray queued = new AtomicIntegerArray(books);
+        Thread[] tappers = new Thread[threads];
+        for (int thread = 0; thread < threads; thread++) {
+            final Random random = new Random(thread);
+            tappers[thread] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int sale = 0; sale < salesPerThread; sale++) {
+                        int book = random.nextInt(books);
+                        int amount = 1 + random.nextInt(3);
+                        queued.addAndGet(book, amount);
+                        InventoryWriter.queueSale(resolver, bookIds[book], amount);
+                        if (random.nextInt(100) == 0) {
+                            InventoryWriter.flushSales(null);
+                        }
+                    }
+                }
+            });
+            tappers[thread].start();
+        }
+        for (Thread tapper : tappers) {
+            tapper.join();
+        }
+
+        // A stock count submitted after queued sales lands after them, so it is what stays
+        InventoryWriter.queueSale(resolver, bookIds[0], 2);
+        queued.addAndGet(0, 2);
+        ContentValues values = new ContentValues();
+        values.put(ItemEntry.COLUMN_QUANTITY, 500);
+        InventoryWriter.update(resolver, ContentUris.withAppendedId(ItemEntry.CONTENT_URI,
+                bookIds[0]), values, null, null, null);
+
+        final CountDownLatch flushed = new CountDownLatch(1);
+        InventoryWriter.flushSales(new InventoryWriter.Callback<Integer>() {
+            @Override
+            public void onComplete(Integer result) {
+                flushed.countDown();
+            }
+        });
+        assertTrue(flushed.await(30, TimeUnit.SECONDS));
+
+        int totalQueued = queued.get(0);
+        assertEquals(500, InventoryContract.getQuantity(resolver, bookIds[0]));
+        for (int index = 1; index < books; index++) {
+            assertEquals(stock - queued.get(index),
+                    InventoryContract.getQuantity(resolver, bookIds[index]));
+            totalQueued += queued.get(index);
+        }
+
+        // Every copy is in the ledger, and taps were written in far fewer transactions
+        Cursor cursor = provider.query(LedgerEntry.CONTENT_URI,
+                new String[]{"SUM(" + LedgerEntry.COLUMN_CHANGE + ")"}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(-totalQueued, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+        assertTrue(provider.saleBatches.get() < threads * salesPerThread);
+    }
+
+    private static void checkMainThread(AtomicInteger offMainThread) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            offMainThread.incrementAndGet();
+        }
+    }
+
+    /**
+     * {@link InventoryProvider} that counts calls made on the main thread.
+     */
+    private static class MainThreadCheckingProvider extends InventoryProvider {
+
+        final AtomicInteger mainThreadCalls = new AtomicInteger();
+
+        final AtomicInteger saleBatches = new AtomicInteger();
+
+        private void check() {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                mainThreadCalls.incrementAndGet();
+            }
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder) {
+            check();
+            return super.query(uri, projection, selection, selectionArgs, sortOrder);
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues contentValues) {
+            check();
+            return super.insert(uri, contentValues);
+        }
+
+        @Override
+        public int bulkInsert(Uri uri, ContentValues[] values) {
+            check();
+            return super.bulkInsert(uri, values);
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues contentValues, String selection,
+                          String[] selectionArgs) {
+            check();
+            return super.update(uri, contentValues, selection, selectionArgs);
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            check();
+            return super.delete(uri, selection, selectionArgs);
+        }
+
+        @Override
+        public Bundle call(String method, String arg, Bundle extras) {
+            check();
+            if (InventoryContract.METHOD_SELL_BATCH.equals(method)) {
+                saleBatches.incrementAndGet();
+            }
+            return super.call(method, arg, extras);
+        }
+    }
+}
@@ -1,37 +1,41 @@
 package com.example.android.inventory;
 
-import android.app.LoaderManager;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.CursorLoader;
 import android.content.Intent;
-import android.content.Loader;
-import android.database.Cursor;
 import android.net.Uri;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.TextView;
 
 import com.example.android.inventory.data.InventoryContract.ItemEntry;
+import com.example.android.inventory.data.InventoryWriter;
 
 /**
  * Main activity that lists inventory
  */
-public class CatalogActivity extends AppCompatActivity
-        implements View.OnClickListener, LoaderManager.LoaderCallbacks<Cursor> {
+public class CatalogActivity extends AppCompatActivity implements View.OnClickListener,
+        InventoryAdapter.OnBookClickListener {
 
     private static Context context;
 
     private static final String LOG_TAG = CatalogActivity.class.getSimpleName();
 
-    private static final int BOOK_LOADER = 0;
+    /** Key the number of pages loaded is saved under across configuration changes */
+    private static final String STATE_PAGE_COUNT = "page_count";
 
     // This is the Adapter being used to display the list's data.
-    private InventoryCursorAdapter cursorAdapter;
+    private InventoryAdapter adapter;
+
+    // Loads the books into the adapter a page at a time and keeps the pages on screen current
+    private CatalogPager pager;
+
+    // View shown instead of the list while there are no books
+    private View emptyView;
 
     private static Uri currentBookUri;
 
@@ -50,91 +54,136 @@ public class CatalogActivity extends AppCompatActivity
         TextView btnAdd = findViewById(R.id.btn_add);
         btnAdd.setOnClickListener(this);
 
-        // Get listview from layout
-        ListView bookListView = findViewById(R.id.listview);
+        // Get recyclerview from layout
+        RecyclerView bookRecyclerView = findViewById(R.id.recyclerview);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        bookRecyclerView.setLayoutManager(layoutManager);
+        bookRecyclerView.setHasFixedSize(true);
+
+        // Show empty view while database is empty
+        emptyView = findViewById(R.id.empty_view);
 
-        // Create empty view to show when database is empty
-        View emptyView = findViewById(R.id.empty_view);
-        bookListView.setEmptyView(emptyView);
+        // Initialize adapter and attach to recyclerview; row and sale clicks come back
+        // through onBookClick() and onSaleClick()
+        adapter = new InventoryAdapter(this);
+        adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
 
-        // Initialize adapter and attach to listview
-        cursorAdapter = new InventoryCursorAdapter(this, null);
-        bookListView.setAdapter(cursorAdapter);
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
+        bookRecyclerView.setAdapter(adapter);
 
-        // Setup onClickListener to open EditorActivity
-        // Position is location of item in listview
-        // Id is ID of item clicked on
-        bookListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Tell the pager which books are on screen, so it loads the next page before the user
+        // reaches the end of the loaded books and reads changed pages again once they are seen
+        pager = new CatalogPager(getContentResolver(), adapter);
+        bookRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                    Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
-                    currentBookUri = ContentUris.withAppendedId(ItemEntry.CONTENT_URI, id);
-                    intent.setData(currentBookUri);
-                    startActivity(intent);
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                pager.setVisibleRange(layoutManager.findFirstVisibleItemPosition(),
+                        layoutManager.findLastVisibleItemPosition());
             }
         });
 
-        // Prepare the loader.  Either re-connect with an existing one,
-        // or start a new one.
-        getLoaderManager().initLoader(BOOK_LOADER, null, this);
+        // Load as many pages as were loaded before a configuration change, or the first one
+        pager.start(savedInstanceState == null ? 1
+                : savedInstanceState.getInt(STATE_PAGE_COUNT, 1));
     }
 
-    private void insertDummyData() {
-        ContentValues cv = new ContentValues();
-
-        cv.put(ItemEntry.COLUMN_TITLE, "Harry Potter");
-        cv.put(ItemEntry.COLUMN_AUTHOR, "JK Rowlilng");
-        cv.put(ItemEntry.COLUMN_PRICE, 9.99);
-        cv.put(ItemEntry.COLUMN_QUANTITY, 100);
-        cv.put(ItemEntry.COLUMN_SUPPLIER_NAME, "Scholastic Books");
-        cv.put(ItemEntry.COLUMN_SUPPLIER_EMAIL, "info@scholastic.com");
-        cv.put(ItemEntry.COLUMN_SUPPLIER_PHONE, "8005551212");
-
-        // Insert data into database using ContentProvider class
-        getContentResolver().insert(ItemEntry.CONTENT_URI, cv);
-
-        cv.put(ItemEntry.COLUMN_TITLE, "Chicken Soup for the Soul");
-        cv.put(ItemEntry.COLUMN_AUTHOR, "Jack Canfield, Mark Victor Hansen");
-        cv.put(ItemEntry.COLUMN_PRICE, 5.99);
-        cv.put(ItemEntry.COLUMN_QUANTITY, 10);
-        cv.put(ItemEntry.COLUMN_SUPPLIER_NAME, "Health Communications, Inc");
-        cv.put(ItemEntry.COLUMN_SUPPLIER_EMAIL, "info@healthcomm.com");
-        cv.put(ItemEntry.COLUMN_SUPPLIER_PHONE, "8005551234");
-
-        // Insert data into database using ContentProvider class
-        getContentResolver().insert(ItemEntry.CONTENT_URI, cv);
+    /**
+     * Insert the given number of copies of the demo books in one bulk insert
+     */
+    private void insertDummyData(int copies) {
+        ContentValues[] books = new ContentValues[copies * 2];
+
+        for (int index = 0; index < copies; index++) {
+            ContentValues cv = new ContentValues();
+            cv.put(ItemEntry.COLUMN_TITLE, "Harry Potter");
+            cv.put(ItemEntry.COLUMN_AUTHOR, "JK Rowlilng");
+            cv.put(ItemEntry.COLUMN_PRICE_CENTS, 999);
+            cv.put(ItemEntry.COLUMN_QUANTITY, 100);
+            cv.put(ItemEntry.COLUMN_SUPPLIER_NAME, "Scholastic Books");
+            cv.put(ItemEntry.COLUMN_SUPPLIER_EMAIL, "info@scholastic.com");
+            cv.put(ItemEntry.COLUMN_SUPPLIER_PHONE, "8005551212");
+            books[index * 2] = cv;
+
+            cv = new ContentValues();
+            cv.put(ItemEntry.COLUMN_TITLE, "Chicken Soup for the Soul");
+            cv.put(ItemEntry.COLUMN_AUTHOR, "Jack Canfield, Mark Victor Hansen");
+            cv.put(ItemEntry.COLUMN_PRICE_CENTS, 599);
+            cv.put(ItemEntry.COLUMN_QUANTITY, 10);
+            cv.put(ItemEntry.COLUMN_SUPPLIER_NAME, "Health Communications, Inc");
+            cv.put(ItemEntry.COLUMN_SUPPLIER_EMAIL, "info@healthcomm.com");
+            cv.put(ItemEntry.COLUMN_SUPPLIER_PHONE, "8005551234");
+            books[index * 2 + 1] = cv;
+        }
+
+        // Insert data into database using ContentProvider class; one transaction, one notification,
+        // off the main thread
+        InventoryWriter.bulkInsert(getContentResolver(), ItemEntry.CONTENT_URI, books, null);
+    }
+
+    /**
+     * Show empty view only when there are no books to list
+     */
+    private void updateEmptyView() {
+        emptyView.setVisibility(adapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * Open EditorActivity for the clicked book
+     */
+    @Override
+    public void onBookClick(long bookId) {
+        Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
+        currentBookUri = ContentUris.withAppendedId(ItemEntry.CONTENT_URI, bookId);
+        intent.setData(currentBookUri);
+        startActivity(intent);
+    }
+
+    /**
+     * Queue the sale of one copy of the book; rapid taps on any books are written together
+     * in one transaction, and the provider decrements the stored quantity itself, so no tap
+     * can lose a sale
+     */
+    @Override
+    public void onSaleClick(long bookId) {
+        InventoryWriter.queueSale(getContentResolver(), bookId, 1);
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        // Columns we want back from database
-        String[] projection = {
-                ItemEntry._ID,
-                ItemEntry.COLUMN_TITLE,
-                ItemEntry.COLUMN_PRICE,
-                ItemEntry.COLUMN_QUANTITY
-        };
-
-        // Now create and return a CursorLoader that will take care of
-        // creating a Cursor for the book being displayed.
-        return new CursorLoader(this,       // Parent activity context
-                ItemEntry.CONTENT_URI,      // Provider content URI to query
-                projection,                 // Data we want returned
-                null,                       // No selection
-                null,                       // No selection args
-                null);                      // Default sort order
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(STATE_PAGE_COUNT, pager.getPageCount());
     }
 
+    /**
+     * Stop watching the books and drop page loads still pending, which would otherwise
+     * outlive the activity
+     */
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
-        // Update {@link InventoryCursorAdapter} with this new cursor containing updated item data
-        cursorAdapter.swapCursor(cursor);
+    protected void onDestroy() {
+        pager.release();
+        super.onDestroy();
     }
 
+    /**
+     * Write the queued sales before the app can go to the background
+     */
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        // Callback called when the data needs to be deleted
-        cursorAdapter.swapCursor(null);
+    protected void onStop() {
+        InventoryWriter.flushSales(null);
+        super.onStop();
     }
 
     @Override
@@ -145,9 +194,7 @@ public class CatalogActivity extends AppCompatActivity
                 startActivity(intent);
                 break;
             case R.id.btn_dummy_data:
-                for (int index = 0; index < 5; index++) {
-                    insertDummyData();
-                }
+                insertDummyData(5);
                 break;
         }
     }
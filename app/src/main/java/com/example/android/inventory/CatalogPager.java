@@ -0,0 +1,305 @@
+package com.example.android.inventory;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.example.android.inventory.data.InventoryContract;
+import com.example.android.inventory.data.InventoryContract.ItemEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the catalog into an {@link InventoryAdapter} one page of books at a time, in ID
+ * order, continuing after the last ID of the previous page. Each page covers a fixed range
+ * of IDs once it is full; book IDs are never reused and new books get IDs above every
+ * existing one, so a full page can only lose books, and new books only ever land on the
+ * last page.
+ *
+ * Pages are queried, read and diffed against the books they held on a background thread,
+ * one at a time, so the main thread only splices a page in. A change to a single
+ * book only marks the page holding it as stale, and any other change marks every page
+ * stale; stale pages are read again once they are near the rows on screen, see
+ * {@link #setVisibleRange}. Call {@link #release()} when the list goes away.
+ */
+final class CatalogPager {
+
+    private static final String LOG_TAG = CatalogPager.class.getSimpleName();
+
+    /** Books per page */
+    static final int PAGE_SIZE = 50;
+
+    /** Columns the list shows */
+    private static final String[] PROJECTION = {
+            ItemEntry._ID,
+            ItemEntry.COLUMN_TITLE,
+            ItemEntry.COLUMN_PRICE_CENTS,
+            ItemEntry.COLUMN_QUANTITY
+    };
+
+    /** Selection keeping a reloaded full page within its range of IDs */
+    private static final String SELECTION_UP_TO = ItemEntry._ID + " <= ?";
+
+    private final ContentResolver resolver;
+    private final InventoryAdapter adapter;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /** Queries pages off the main thread, one at a time */
+    private final ExecutorService pageExecutor = Executors.newSingleThreadExecutor();
+
+    /** Pages loaded so far, in list order; only touched on the main thread */
+    private final List<Page> pages = new ArrayList<>();
+
+    /** Pages to load up front, e.g. as many as were loaded before a configuration change */
+    private int minPages = 1;
+
+    /** First and last adapter position on screen */
+    private int firstVisible = RecyclerView.NO_POSITION;
+    private int lastVisible = RecyclerView.NO_POSITION;
+
+    /** Whether {@link #release()} was called; only touched on the main thread */
+    private boolean released;
+
+    private final ContentObserver observer = new ContentObserver(mainHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            // Called instead of the method below before API 16, without the changed URI
+            booksChanged(null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            booksChanged(uri);
+        }
+    };
+
+    CatalogPager(ContentResolver resolver, InventoryAdapter adapter) {
+        this.resolver = resolver;
+        this.adapter = adapter;
+    }
+
+    /**
+     * Start listening to changes of the books and load pages until at least the given number
+     * of pages is loaded
+     */
+    void start(int pageCount) {
+        minPages = Math.max(pageCount, 1);
+        resolver.registerContentObserver(ItemEntry.CONTENT_URI, true, observer);
+        loadPages();
+    }
+
+    /**
+     * Stop listening to changes and cancel the page loads still pending, so nothing queued
+     * keeps the adapter alive
+     */
+    void release() {
+        released = true;
+        resolver.unregisterContentObserver(observer);
+        pageExecutor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Return the number of pages loaded, to be passed to {@link #start} after a
+     * configuration change
+     */
+    int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Tell the pager which adapter positions are on screen; stale pages near them are read
+     * again, and the next page is loaded once the end of the list comes near
+     */
+    void setVisibleRange(int first, int last) {
+        firstVisible = first;
+        lastVisible = last;
+        loadPages();
+    }
+
+    /**
+     * Mark the pages a change touches as stale: the page holding the book for a single book
+     * URI, and every page for any other URI
+     */
+    private void booksChanged(Uri uri) {
+        if (released) {
+            return;
+        }
+
+        long bookId = bookIdOf(uri);
+        for (Page page : pages) {
+            if (bookId == -1 || page.holds(bookId)) {
+                page.stale = true;
+            }
+        }
+        loadPages();
+    }
+
+    /**
+     * Return the ID of the book a single book URI is for, or -1 for any other URI
+     */
+    private static long bookIdOf(Uri uri) {
+        if (uri == null) {
+            return -1;
+        }
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() != 2 || !InventoryContract.PATH_BOOKS.equals(segments.get(0))
+                || !TextUtils.isDigitsOnly(segments.get(1))) {
+            return -1;
+        }
+        return ContentUris.parseId(uri);
+    }
+
+    /**
+     * Read stale pages near the rows on screen again, and load the next page when the end of
+     * the list is near or fewer than {@link #minPages} pages are loaded
+     */
+    private void loadPages() {
+        if (released) {
+            return;
+        }
+
+        int windowStart = firstVisible - PAGE_SIZE / 2;
+        int windowEnd = lastVisible + PAGE_SIZE / 2;
+        int start = 0;
+        for (Page page : pages) {
+            if (page.stale && !page.loading && start <= windowEnd
+                    && start + page.books.size() >= windowStart) {
+                loadPage(page);
+            }
+            start += page.books.size();
+        }
+
+        Page last = pages.isEmpty() ? null : pages.get(pages.size() - 1);
+        if ((last == null || last.isFull() && !last.loading)
+                && (pages.size() < minPages || start <= windowEnd)) {
+            Page next = new Page(last == null ? 0 : last.upToId);
+            pages.add(next);
+            loadPage(next);
+        }
+    }
+
+    /**
+     * Read the books of the page and diff them on the background thread, and show them on
+     * the main thread. Only one read of a page runs at a time, and only its result changes
+     * the books of the page, so they are still the ones diffed against when it arrives.
+     */
+    private void loadPage(final Page page) {
+        page.stale = false;
+        page.loading = true;
+
+        final List<InventoryAdapter.Book> oldBooks = page.books;
+        final Uri uri = ItemEntry.buildPageUri(PAGE_SIZE, null, page.afterId);
+        final String[] selectionArgs = page.isFull()
+                ? new String[]{String.valueOf(page.upToId)} : null;
+        pageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<InventoryAdapter.Book> books;
+                Cursor cursor = null;
+                try {
+                    cursor = resolver.query(uri, PROJECTION,
+                            selectionArgs == null ? null : SELECTION_UP_TO, selectionArgs, null);
+                    books = InventoryAdapter.readBooks(cursor);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Failed to load books - " + uri, e);
+                    books = null;
+                } finally {
+                    if (cursor != null) {
+                        cursor.close();
+                    }
+                }
+
+                final List<InventoryAdapter.Book> newBooks = books;
+                final DiffUtil.DiffResult diff = books == null ? null
+                        : InventoryAdapter.diffBooks(oldBooks, books);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        pageLoaded(page, newBooks, diff);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Show the books read for the page in place of the ones it held
+     *
+     * @param books read for the page, or null if reading them failed
+     * @param diff  of the books the page held and the books read, or null with them
+     */
+    private void pageLoaded(Page page, List<InventoryAdapter.Book> books,
+                            DiffUtil.DiffResult diff) {
+        if (released) {
+            return;
+        }
+        page.loading = false;
+        if (books == null) {
+            // Try again with the next change or scroll
+            page.stale = true;
+            return;
+        }
+
+        int start = 0;
+        for (Page other : pages) {
+            if (other == page) {
+                break;
+            }
+            start += other.books.size();
+        }
+        adapter.replaceBooks(start, page.books.size(), books, diff);
+        page.books = books;
+
+        // The last page closes once it fills up; books added later go to the next page
+        if (!page.isFull() && books.size() >= PAGE_SIZE) {
+            page.upToId = books.get(books.size() - 1).id;
+        }
+        loadPages();
+    }
+
+    /**
+     * Books with IDs above {@link #afterId} and up to {@link #upToId}. Only the last page
+     * may be open, without an upper bound.
+     */
+    private static final class Page {
+
+        final long afterId;
+
+        /** Highest ID of the page once it filled up, or {@link Long#MAX_VALUE} before */
+        long upToId = Long.MAX_VALUE;
+
+        /** Books currently shown for the page; replaced, never changed in place */
+        List<InventoryAdapter.Book> books = new ArrayList<>();
+
+        /** Whether the page was changed since it was last read */
+        boolean stale;
+
+        /** Whether the page is being read */
+        boolean loading;
+
+        Page(long afterId) {
+            this.afterId = afterId;
+        }
+
+        boolean isFull() {
+            return upToId != Long.MAX_VALUE;
+        }
+
+        boolean holds(long bookId) {
+            return bookId > afterId && bookId <= upToId;
+        }
+    }
+}
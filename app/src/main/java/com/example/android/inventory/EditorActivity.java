@@ -2,7 +2,9 @@ package com.example.android.inventory;
 
 import android.app.AlertDialog;
 import android.app.LoaderManager;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -22,6 +24,8 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.example.android.inventory.data.InventoryContract.ItemEntry;
+import com.example.android.inventory.data.InventoryCursor;
+import com.example.android.inventory.data.InventoryWriter;
 
 /**
  * Handles XML layout item insertion, updating, and deletion
@@ -53,6 +57,11 @@ public class EditorActivity extends AppCompatActivity implements View.OnClickLis
      */
     private EditText quantityEditText;
 
+    /**
+     * EditText field for ISBN
+     */
+    private EditText isbnEditText;
+
     /**
      * EditText field for supplier name
      */
@@ -77,6 +86,17 @@ public class EditorActivity extends AppCompatActivity implements View.OnClickLis
      */
     private Uri currentBookUri;
 
+    /**
+     * Values of the existing book as first loaded, in the form {@link #readBookValues} returns
+     * them; the edit is saved as the difference from these
+     */
+    private ContentValues loadedValues;
+
+    /**
+     * Version of the existing book as first loaded
+     */
+    private long loadedVersion;
+
     /**
      * Whether or not book was updated in editor activity
      */
@@ -108,6 +128,7 @@ public class EditorActivity extends AppCompatActivity implements View.OnClickLis
 
         titleEditText = findViewById(R.id.et_book_title);
         authorEditText = findViewById(R.id.et_book_author);
+        isbnEditText = findViewById(R.id.et_book_isbn);
         priceEditText = findViewById(R.id.et_book_price);
         quantityEditText = findViewById(R.id.et_quantity);
         supplierNameEditText = findViewById(R.id.et_supplier_name);
@@ -133,6 +154,7 @@ public class EditorActivity extends AppCompatActivity implements View.OnClickLis
         // Set up touch listeners for alert dialog
         titleEditText.setOnTouchListener(touchListener);
         authorEditText.setOnTouchListener(touchListener);
+        isbnEditText.setOnTouchListener(touchListener);
         priceEditText.setOnTouchListener(touchListener);
         quantityEditText.setOnTouchListener(touchListener);
         btnIncrease.setOnTouchListener(touchListener);
@@ -158,25 +180,32 @@ public class EditorActivity extends AppCompatActivity implements View.OnClickLis
     }
 
     /**
-     * Perform the deletion of the book in the database.
+     * Perform the deletion of the book in the database on the writer thread.
      */
     private void deleteBook() {
-        int rowDeleted = getContentResolver().delete(
+        // Toast from the application context, this activity is finished by the time the
+        // result arrives
+        final Context appContext = getApplicationContext();
+        InventoryWriter.delete(getContentResolver(),
                 currentBookUri,   // Current book content URI
                 null,              // No selection
-                null               // No selection arguments
-        );
-
-        // Show a toast message depending on whether or not the deletion was successful
-        if (rowDeleted == 0) {
-            // If the new content URI is null, then there was an error with deletion.
-            Toast.makeText(this, getString(R.string.editor_delete_book_failed),
-                    Toast.LENGTH_SHORT).show();
-        } else {
-            // Otherwise, the deletion was successful and we can display a toast.
-            Toast.makeText(this, getString(R.string.editor_delete_book_successful),
-                    Toast.LENGTH_SHORT).show();
-        }
+                null,              // No selection arguments
+                new InventoryWriter.Callback<Integer>() {
+                    @Override
+                    public void onComplete(Integer rowDeleted) {
+                        // Show a toast message depending on whether or not the deletion
+                        // was successful
+                        if (rowDeleted == 0) {
+                            // If no rows were deleted, then there was an error with deletion.
+                            Toast.makeText(appContext, R.string.editor_delete_book_failed,
+                                    Toast.LENGTH_SHORT).show();
+                        } else {
+                            // Otherwise, the deletion was successful and we can display a toast.
+                            Toast.makeText(appContext, R.string.editor_delete_book_successful,
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
 
         // Return to catalog activity
         finish();
@@ -186,10 +215,84 @@ public class EditorActivity extends AppCompatActivity implements View.OnClickLis
      * Get user input to enter new book data into database
      */
     private void saveBook() {
+        ContentValues cv = readBookValues();
+        if (cv == null) {
+            return;
+        }
+
+        // Toast from the application context, this activity is finished by the time the
+        // result arrives
+        final Context appContext = getApplicationContext();
+
+        if (currentBookUri == null) {
+            // We are adding a new item
+            InventoryWriter.insert(getContentResolver(), ItemEntry.CONTENT_URI, cv,
+                    new InventoryWriter.Callback<Uri>() {
+                        @Override
+                        public void onComplete(Uri newUri) {
+                            // Show a toast message depending on whether or not the insertion
+                            // was successful
+                            if (newUri == null) {
+                                // If the new content URI is null, then there was an error
+                                // with insertion.
+                                Toast.makeText(appContext, R.string.editor_insert_book_failed,
+                                        Toast.LENGTH_SHORT).show();
+                            } else {
+                                // Otherwise, the insertion was successful and we can display
+                                // a toast.
+                                Toast.makeText(appContext,
+                                        R.string.editor_insert_book_successful,
+                                        Toast.LENGTH_SHORT).show();
+                            }
+                        }
+                    });
+
+        } else if (loadedValues != null) {
+            // Only the fields the user changed are written, merged with any changes made
+            // since the book was loaded, such as sales
+            InventoryWriter.updateBook(getContentResolver(),
+                    ContentUris.parseId(currentBookUri),
+                    loadedValues,       // the values the edit started from
+                    cv,                 // the values after the edit
+                    loadedVersion,      // the version the edit started from
+                    new InventoryWriter.Callback<Integer>() {
+                        @Override
+                        public void onComplete(Integer result) {
+                            // Show a toast message depending on whether or not the update
+                            // was successful
+                            if (result == ItemEntry.UPDATE_CONFLICT) {
+                                // Someone else changed a field the user changed as well
+                                Toast.makeText(appContext, R.string.editor_update_book_conflict,
+                                        Toast.LENGTH_LONG).show();
+                            } else if (result == 0) {
+                                // If no rows were updated, then there was an error with update.
+                                Toast.makeText(appContext, R.string.editor_update_book_failed,
+                                        Toast.LENGTH_SHORT).show();
+                            } else {
+                                // Otherwise, the update was successful and we can display
+                                // a toast.
+                                Toast.makeText(appContext,
+                                        R.string.editor_update_book_successful,
+                                        Toast.LENGTH_SHORT).show();
+                            }
+                        }
+                    });
+        }
+
+        // Return to catalog activity
+        intent = new Intent(EditorActivity.this, CatalogActivity.class);
+        startActivity(intent);
+    }
+
+    /**
+     * Return the book values in the editor fields, or null if all fields are empty
+     */
+    private ContentValues readBookValues() {
 
         // Read from EditText fields
         String title = titleEditText.getText().toString().trim();
         String author = authorEditText.getText().toString().trim();
+        String isbn = isbnEditText.getText().toString().trim();
         String priceString = priceEditText.getText().toString().trim();
         String quantityString = quantityEditText.getText().toString().trim();
         String supplierName = supplierNameEditText.getText().toString().trim();
@@ -197,18 +300,19 @@ public class EditorActivity extends AppCompatActivity implements View.OnClickLis
         String supplierPhone = supplierPhoneEditText.getText().toString().trim();
 
         // If all fields are empty, don't bother doing anything else
-        if (TextUtils.isEmpty(title) && TextUtils.isEmpty(author) && TextUtils.isEmpty(priceString)
+        if (TextUtils.isEmpty(title) && TextUtils.isEmpty(author) && TextUtils.isEmpty(isbn)
+                && TextUtils.isEmpty(priceString)
                 && TextUtils.isEmpty(quantityString) && TextUtils.isEmpty(supplierName)
                 && TextUtils.isEmpty(supplierEmail) && TextUtils.isEmpty(supplierPhone)) {
-            return;
+            return null;
         }
 
-        // Parse priceString into a double value only if quantity provided.
-        // Use 0 by default.
-        double price = 0.00;
+        // Parse priceString into whole cents only if price provided, without going through
+        // a double. Use 0 by default.
+        long priceCents = 0;
 
         if (!TextUtils.isEmpty(priceString)) {
-            price = Double.parseDouble(priceString);
+            priceCents = ItemEntry.parsePriceCents(priceString);
         }
 
         // Parse quantityString into an integer value only if quantity provided and only digits.
@@ -224,53 +328,13 @@ public class EditorActivity extends AppCompatActivity implements View.OnClickLis
         ContentValues cv = new ContentValues();
         cv.put(ItemEntry.COLUMN_TITLE, title);
         cv.put(ItemEntry.COLUMN_AUTHOR, author);
-        cv.put(ItemEntry.COLUMN_PRICE, price);
+        cv.put(ItemEntry.COLUMN_ISBN, isbn);
+        cv.put(ItemEntry.COLUMN_PRICE_CENTS, priceCents);
         cv.put(ItemEntry.COLUMN_QUANTITY, quantity);
         cv.put(ItemEntry.COLUMN_SUPPLIER_NAME, supplierName);
         cv.put(ItemEntry.COLUMN_SUPPLIER_EMAIL, supplierEmail);
         cv.put(ItemEntry.COLUMN_SUPPLIER_PHONE, supplierPhone);
-
-        if (currentBookUri == null) {
-            // We are adding a new item
-            Uri newUri = getContentResolver().insert(ItemEntry.CONTENT_URI, cv);
-
-            // Show a toast message depending on whether or not the insertion was successful
-            if (newUri == null) {
-                // If the new content URI is null, then there was an error with insertion.
-                Toast.makeText(this, getString(R.string.editor_insert_book_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the insertion was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_insert_book_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
-
-        } else {
-            // Defines a variable to contain the number of updated rows
-            int rowsUpdated = 0;
-
-            rowsUpdated = getContentResolver().update(
-                    currentBookUri,    // the book content URI
-                    cv,                 // the columns to update
-                    null,               // the column to select on
-                    null                // the value to compare to
-            );
-
-            // Show a toast message depending on whether or not the insertion was successful
-            if (rowsUpdated == 0) {
-                // If the new content URI is null, then there was an error with insertion.
-                Toast.makeText(this, getString(R.string.editor_update_book_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the insertion was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_update_book_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
-        }
-
-        // Return to catalog activity
-        intent = new Intent(EditorActivity.this, CatalogActivity.class);
-        startActivity(intent);
+        return cv;
     }
 
     @Override
@@ -280,11 +344,13 @@ public class EditorActivity extends AppCompatActivity implements View.OnClickLis
                 ItemEntry._ID,
                 ItemEntry.COLUMN_TITLE,
                 ItemEntry.COLUMN_AUTHOR,
-                ItemEntry.COLUMN_PRICE,
+                ItemEntry.COLUMN_ISBN,
+                ItemEntry.COLUMN_PRICE_CENTS,
                 ItemEntry.COLUMN_QUANTITY,
                 ItemEntry.COLUMN_SUPPLIER_NAME,
                 ItemEntry.COLUMN_SUPPLIER_EMAIL,
-                ItemEntry.COLUMN_SUPPLIER_PHONE
+                ItemEntry.COLUMN_SUPPLIER_PHONE,
+                ItemEntry.COLUMN_VERSION
         };
 
         // Now create and return a CursorLoader that will take care of
@@ -304,35 +370,50 @@ public class EditorActivity extends AppCompatActivity implements View.OnClickLis
             return;
         }
 
+        // Keep what the user is typing when the book changes elsewhere, e.g. by a sale;
+        // saveBook() merges with those changes instead
+        if (loadedValues != null) {
+            return;
+        }
+
         // Proceed with moving to the first row of the cursor and reading data from it
         // (This should be the only row in the cursor)
-        if (cursor.moveToLast()) {
-            // Find the columns of book attributes we're interested in
-            // Extract out the value from the Cursor for the given column index
-            String currentTitle = cursor.getString(cursor.getColumnIndex(ItemEntry.COLUMN_TITLE));
-            String currentAuthor = cursor.getString(cursor.getColumnIndex(ItemEntry.COLUMN_AUTHOR));
-            double currentPrice = cursor.getDouble(cursor.getColumnIndex(ItemEntry.COLUMN_PRICE));
-            currentQuantity = cursor.getInt(cursor.getColumnIndex(ItemEntry.COLUMN_QUANTITY));
-            String currentSupplierName = cursor.getString(cursor.getColumnIndex(ItemEntry.COLUMN_SUPPLIER_NAME));
-            String currentSupplierEmail = cursor.getString(cursor.getColumnIndex(ItemEntry.COLUMN_SUPPLIER_EMAIL));
-            String currentSupplierPhone = cursor.getString(cursor.getColumnIndex(ItemEntry.COLUMN_SUPPLIER_PHONE));
+        InventoryCursor book = InventoryCursor.wrap(cursor);
+        if (book.moveToLast()) {
+            // Extract out the values of book attributes we're interested in; the wrapper
+            // looked up their column indices once
+            String currentTitle = book.getTitle();
+            String currentAuthor = book.getAuthor();
+            String currentIsbn = book.getIsbn();
+            long currentPriceCents = book.getPriceCents();
+            currentQuantity = book.getQuantity();
+            String currentSupplierName = book.getSupplierName();
+            String currentSupplierEmail = book.getSupplierEmail();
+            String currentSupplierPhone = book.getSupplierPhone();
 
             // Update the views on the screen with the values from the database
             titleEditText.setText(currentTitle);
             authorEditText.setText(currentAuthor);
-            priceEditText.setText(Double.toString(currentPrice));
+            isbnEditText.setText(currentIsbn);
+            priceEditText.setText(InventoryCursor.formatPrice(currentPriceCents));
             quantityEditText.setText(Integer.toString(currentQuantity));
             supplierNameEditText.setText(currentSupplierName);
             supplierEmailEditText.setText(currentSupplierEmail);
             supplierPhoneEditText.setText(currentSupplierPhone);
+
+            // Remember the book as loaded, in the same form the edit will be read in
+            loadedValues = readBookValues();
+            loadedVersion = book.getVersion();
         }
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        // Clear all editor fields
+        // Clear all editor fields; the next load starts a new edit
+        loadedValues = null;
         titleEditText.setText("");
         authorEditText.setText("");
+        isbnEditText.setText("");
         priceEditText.setText("");
         quantityEditText.setText("");
         supplierNameEditText.setText("");
@@ -0,0 +1,277 @@
+package com.example.android.inventory;
+
+import android.database.Cursor;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+
+import com.example.android.inventory.data.InventoryContract.ItemEntry;
+import com.example.android.inventory.data.InventoryCursor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link RecyclerView.Adapter} that lists books a page at a time, see {@link CatalogPager}.
+ * Each page read again is diffed against the rows it replaces off the main thread, so a
+ * change to one book only rebinds that book's row, and the main thread only splices the
+ * page in.
+ */
+public class InventoryAdapter extends RecyclerView.Adapter<InventoryAdapter.BookViewHolder> {
+
+    /** Payload telling a bound row that only its quantity changed */
+    private static final Object PAYLOAD_QUANTITY = new Object();
+
+    /**
+     * Callbacks for clicks on a book row
+     */
+    public interface OnBookClickListener {
+
+        /** Called when a book row is clicked */
+        void onBookClick(long bookId);
+
+        /** Called when the sale button of a book row is clicked */
+        void onSaleClick(long bookId);
+    }
+
+    private final OnBookClickListener bookClickListener;
+
+    /** Books currently shown, pages one after the other; only touched on the main thread */
+    private final List<Book> books = new ArrayList<>();
+
+    /** Single click handler shared by every row and sale button */
+    private final View.OnClickListener clickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            BookViewHolder holder = (BookViewHolder) view.getTag();
+            int position = holder.getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+
+            long bookId = books.get(position).id;
+            if (view.getId() == R.id.btn_sale) {
+                bookClickListener.onSaleClick(bookId);
+            } else {
+                bookClickListener.onBookClick(bookId);
+            }
+        }
+    };
+
+    public InventoryAdapter(OnBookClickListener bookClickListener) {
+        this.bookClickListener = bookClickListener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Return the differences between the books a page held and the books it holds now. Safe
+     * to call on any thread, since it only reads the two lists.
+     */
+    static DiffUtil.DiffResult diffBooks(List<Book> oldBooks, List<Book> newBooks) {
+        return DiffUtil.calculateDiff(new BookDiffCallback(oldBooks, newBooks));
+    }
+
+    /**
+     * Replace the books of one page with the page read again, or append a page when no books
+     * are replaced. Only the books of the page are copied.
+     *
+     * @param start    position of the first book of the page
+     * @param oldCount number of books the page held
+     * @param newBooks books the page holds now
+     * @param diff     from {@link #diffBooks} of the books the page held and newBooks
+     */
+    void replaceBooks(final int start, int oldCount, List<Book> newBooks,
+                      DiffUtil.DiffResult diff) {
+        int kept = Math.min(oldCount, newBooks.size());
+        for (int index = 0; index < kept; index++) {
+            books.set(start + index, newBooks.get(index));
+        }
+        if (oldCount > kept) {
+            books.subList(start + kept, start + oldCount).clear();
+        } else {
+            books.addAll(start + kept, newBooks.subList(kept, newBooks.size()));
+        }
+
+        diff.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(start + position, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(start + position, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(start + fromPosition, start + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                notifyItemRangeChanged(start + position, count, payload);
+            }
+        });
+    }
+
+    /**
+     * Read every row of the cursor into a list of books, resolving column indices once
+     *
+     * @param cursor with the {@link ItemEntry#_ID}, title, price and quantity columns, or null
+     */
+    static List<Book> readBooks(Cursor cursor) {
+        if (cursor == null) {
+            return Collections.emptyList();
+        }
+
+        InventoryCursor books = InventoryCursor.wrap(cursor);
+        List<Book> list = new ArrayList<>(books.getCount());
+        books.moveToPosition(-1);
+        while (books.moveToNext()) {
+            list.add(new Book(books.getId(), books.getTitle(), books.getPriceCents(),
+                    books.getQuantity()));
+        }
+        return list;
+    }
+
+    @Override
+    public BookViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_book, parent, false);
+        BookViewHolder holder = new BookViewHolder(view);
+
+        view.setTag(holder);
+        view.setOnClickListener(clickListener);
+        holder.btnSale.setTag(holder);
+        holder.btnSale.setOnClickListener(clickListener);
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(BookViewHolder holder, int position) {
+        Book book = books.get(position);
+        holder.tvName.setText(book.title);
+        holder.tvPrice.setText(book.price);
+        holder.tvQuantity.setText(book.quantityText);
+    }
+
+    @Override
+    public void onBindViewHolder(BookViewHolder holder, int position, List<Object> payloads) {
+        // Only the quantity changed, e.g. after a sale; leave the other views alone
+        if (payloads.size() == 1 && payloads.get(0) == PAYLOAD_QUANTITY) {
+            holder.tvQuantity.setText(books.get(position).quantityText);
+            return;
+        }
+        onBindViewHolder(holder, position);
+    }
+
+    @Override
+    public int getItemCount() {
+        return books.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return books.get(position).id;
+    }
+
+    /**
+     * Views of a single book row, looked up once when the row is created
+     */
+    static class BookViewHolder extends RecyclerView.ViewHolder {
+
+        final TextView tvName;
+        final TextView tvPrice;
+        final TextView tvQuantity;
+        final Button btnSale;
+
+        BookViewHolder(View itemView) {
+            super(itemView);
+            tvName = itemView.findViewById(R.id.tv_name);
+            tvPrice = itemView.findViewById(R.id.tv_price);
+            tvQuantity = itemView.findViewById(R.id.tv_quantity);
+            btnSale = itemView.findViewById(R.id.btn_sale);
+        }
+    }
+
+    /**
+     * Values of a single book row as displayed in the list
+     */
+    static final class Book {
+
+        final long id;
+        final String title;
+        final long priceCents;
+        final String price;
+        final int quantity;
+        final String quantityText;
+
+        Book(long id, String title, long priceCents, int quantity) {
+            this.id = id;
+            this.title = title;
+            this.priceCents = priceCents;
+            this.price = PriceFormatter.format(priceCents);
+            this.quantity = quantity;
+            this.quantityText = Integer.toString(quantity);
+        }
+    }
+
+    /**
+     * Finds the rows that were added, removed or changed between two lists of books
+     */
+    private static class BookDiffCallback extends DiffUtil.Callback {
+
+        private final List<Book> oldBooks;
+        private final List<Book> newBooks;
+
+        BookDiffCallback(List<Book> oldBooks, List<Book> newBooks) {
+            this.oldBooks = oldBooks;
+            this.newBooks = newBooks;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldBooks.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newBooks.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldBooks.get(oldItemPosition).id == newBooks.get(newItemPosition).id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            Book oldBook = oldBooks.get(oldItemPosition);
+            Book newBook = newBooks.get(newItemPosition);
+            return oldBook.quantity == newBook.quantity
+                    && oldBook.priceCents == newBook.priceCents
+                    && equal(oldBook.title, newBook.title);
+        }
+
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            Book oldBook = oldBooks.get(oldItemPosition);
+            Book newBook = newBooks.get(newItemPosition);
+            if (oldBook.priceCents == newBook.priceCents && equal(oldBook.title, newBook.title)) {
+                return PAYLOAD_QUANTITY;
+            }
+            return null;
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
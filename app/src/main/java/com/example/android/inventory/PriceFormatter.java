@@ -0,0 +1,48 @@
+package com.example.android.inventory;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.Currency;
+import java.util.Locale;
+
+/**
+ * Formats prices in cents for display, e.g. 999 as "$9.99" in the US. Prices are in dollars,
+ * shown the way the user's locale writes dollar amounts.
+ *
+ * Looking up a currency format for the locale is far slower than formatting with it, so each
+ * thread keeps its format until the locale changes. Formats are not thread safe, hence one per
+ * thread: the catalog reads books on the thread that loads its pages, see {@link CatalogPager},
+ * the editor on the main thread.
+ */
+public final class PriceFormatter {
+
+    /** Currency all prices are in */
+    private static final Currency CURRENCY = Currency.getInstance("USD");
+
+    private static final ThreadLocal<PriceFormatter> FORMATTERS =
+            new ThreadLocal<PriceFormatter>();
+
+    private final Locale locale;
+
+    private final NumberFormat format;
+
+    private PriceFormatter(Locale locale) {
+        this.locale = locale;
+        format = NumberFormat.getCurrencyInstance(locale);
+        format.setCurrency(CURRENCY);
+    }
+
+    /**
+     * Format a price in cents as an amount of dollars. The cents are formatted as a decimal,
+     * never as a double, so every price shows exactly.
+     */
+    public static String format(long priceCents) {
+        Locale locale = Locale.getDefault();
+        PriceFormatter formatter = FORMATTERS.get();
+        if (formatter == null || !formatter.locale.equals(locale)) {
+            formatter = new PriceFormatter(locale);
+            FORMATTERS.set(formatter);
+        }
+        return formatter.format.format(BigDecimal.valueOf(priceCents, 2));
+    }
+}
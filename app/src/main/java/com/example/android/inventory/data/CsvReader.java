@@ -0,0 +1,136 @@
+package com.example.android.inventory.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads CSV records (RFC 4180) one at a time from a character stream, so files of any size
+ * can be read without loading them into memory. Fields may be quoted, with "" for a quote
+ * inside a quoted field, and quoted fields may span lines. Lines may end with CRLF, LF or CR.
+ */
+class CsvReader implements Closeable {
+
+    private static final int END = -1;
+
+    private final Reader reader;
+
+    private final char[] buffer = new char[8192];
+
+    private int position;
+
+    private int limit;
+
+    /** Line the reader is currently on, starting at 1 */
+    private int line = 1;
+
+    /** Line the last record returned by {@link #readRecord()} started on */
+    private int recordLine;
+
+    CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Return the fields of the next record, or null at the end of the stream
+     *
+     * @throws IOException if the stream can't be read or ends inside a quoted field
+     */
+    String[] readRecord() throws IOException {
+        int c = read();
+        if (c == END) {
+            return null;
+        }
+        recordLine = line;
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == END) {
+                    throw new IOException("Quoted field not closed, starting at line "
+                            + recordLine);
+                } else if (c == '"') {
+                    c = read();
+                    if (c == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        continue;
+                    }
+                } else {
+                    countLine(c);
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r' || c == END) {
+                if (c != END) {
+                    endLine(c);
+                }
+                fields.add(field.toString());
+                return fields.toArray(new String[fields.size()]);
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * Return the line the last record returned by {@link #readRecord()} started on
+     */
+    int getRecordLine() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Count a line break inside a quoted field; CRLF counts once
+     */
+    private void countLine(int c) throws IOException {
+        if (c == '\n' || (c == '\r' && peek() != '\n')) {
+            line++;
+        }
+    }
+
+    /**
+     * Consume the line break that ends a record
+     */
+    private void endLine(int c) throws IOException {
+        if (c == '\r' && peek() == '\n') {
+            position++;
+        }
+        line++;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c != END) {
+            position++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return END;
+            }
+        }
+        return buffer[position];
+    }
+}
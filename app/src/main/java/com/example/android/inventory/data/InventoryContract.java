@@ -1,9 +1,14 @@
 package com.example.android.inventory.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
+import android.os.Bundle;
 import android.provider.BaseColumns;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
 /**
  * Contract for Inventory app
  */
@@ -22,11 +27,339 @@ public class InventoryContract {
     // Constant for Books table
     public static final String PATH_BOOKS = "books";
 
+    // Constant for full-text search of Books table, appended to the books path
+    public static final String PATH_SEARCH = "search";
+
+    // Constant for lookups of Books table by ISBN, appended to the books path
+    public static final String PATH_ISBN = "isbn";
+
+    // Constant for the catalog export, appended to the books path
+    public static final String PATH_EXPORT = "export";
+
+    // Constant for the catalog statistics
+    public static final String PATH_STATS = "stats";
+
+    // Constant for the sales ledger
+    public static final String PATH_LEDGER = "ledger";
+
+    // Constant for the daily sales snapshots
+    public static final String PATH_DAILY_SALES = "daily_sales";
 
+    // Constant for the suppliers
+    public static final String PATH_SUPPLIERS = "suppliers";
+
+    /**
+     * Provider method that reads the quantity of a book without a cursor, see
+     * {@link #getQuantity}. Extras: {@link #EXTRA_BOOK_ID}. Result: {@link #EXTRA_QUANTITY}.
+     */
+    public static final String METHOD_GET_QUANTITY = "get_quantity";
+
+    /**
+     * Provider method that atomically sells copies of a book, see {@link #sell} and
+     * {@link #sellByIsbn}. Extras: {@link #EXTRA_BOOK_ID} or {@link #EXTRA_ISBN}, and
+     * optionally {@link #EXTRA_AMOUNT} (defaults to 1).
+     * Result: {@link #EXTRA_SOLD}, {@link #EXTRA_QUANTITY} and, if the book exists,
+     * {@link #EXTRA_BOOK_ID}.
+     */
+    public static final String METHOD_SELL = "sell";
+
+    /**
+     * Provider method that sells copies of several books in one transaction, see
+     * {@link #sellBatch}. Extras: {@link #EXTRA_BOOK_IDS} and {@link #EXTRA_AMOUNTS}.
+     * Result: {@link #EXTRA_AMOUNTS} with the copies actually sold of each book.
+     */
+    public static final String METHOD_SELL_BATCH = "sell_batch";
+
+    /**
+     * Provider method that atomically puts copies of a book back in stock, see {@link #restock}.
+     * Extras: {@link #EXTRA_BOOK_ID} and optionally {@link #EXTRA_AMOUNT} (defaults to 1).
+     * Result: {@link #EXTRA_QUANTITY}.
+     */
+    public static final String METHOD_RESTOCK = "restock";
+
+    /**
+     * Provider method that sets the price of a book, see {@link #setPrice}.
+     * Extras: {@link #EXTRA_BOOK_ID} and {@link #EXTRA_PRICE_CENTS}, or {@link #EXTRA_PRICE}.
+     * Result: {@link #EXTRA_UPDATED}.
+     */
+    public static final String METHOD_SET_PRICE = "set_price";
+
+    /**
+     * Provider method that reports how change notifications were coalesced.
+     * Result: {@link #EXTRA_CHANGES_REQUESTED}, {@link #EXTRA_NOTIFICATIONS_FIRED}
+     * and {@link #EXTRA_CHANGES_COALESCED}.
+     */
+    public static final String METHOD_NOTIFICATION_STATS = "notification_stats";
+
+    /**
+     * Provider method that reports how single-book queries used the row cache.
+     * Result: {@link #EXTRA_CACHE_HITS}, {@link #EXTRA_CACHE_MISSES},
+     * {@link #EXTRA_CACHE_SIZE} and {@link #EXTRA_CACHE_BYTES}.
+     */
+    public static final String METHOD_ROW_CACHE_STATS = "row_cache_stats";
+
+    /**
+     * Provider method that reports what the provider did since it started, or since the
+     * last reset. Extras: optionally {@link #EXTRA_RESET}. Result: one Bundle for every URI
+     * pattern and operation that ran, keyed by the operation and the pattern, e.g.
+     * "query books/#" or "update books". Operations are query, insert (bulk inserts count
+     * once, with all their rows), update, delete, call (on {@link ItemEntry#CONTENT_URI})
+     * and transaction. Each Bundle holds {@link #EXTRA_COUNT}, {@link #EXTRA_ERRORS},
+     * {@link #EXTRA_ROWS}, {@link #EXTRA_TOTAL_MICROS} and {@link #EXTRA_LATENCY_HISTOGRAM}.
+     * The same figures are printed by dumpsys activity provider.
+     */
+    public static final String METHOD_METRICS = "metrics";
+
+    /**
+     * Provider method that rolls ledger entries up into daily snapshots, see
+     * {@link #compactLedger}. Extras: optionally {@link #EXTRA_BEFORE} (defaults to the
+     * start of the day {@link LedgerEntry#DEFAULT_RETENTION_DAYS} days ago).
+     * Result: {@link #EXTRA_COMPACTED}.
+     */
+    public static final String METHOD_COMPACT_LEDGER = "compact_ledger";
+
+    /** Bundle key for the ID of the book a provider method acts on. Type: long */
+    public static final String EXTRA_BOOK_ID = "book_id";
+
+    /** Bundle key for the ISBN of the book a provider method acts on. Type: String */
+    public static final String EXTRA_ISBN = "isbn";
+
+    /** Bundle key for the number of copies a provider method acts on. Type: int */
+    public static final String EXTRA_AMOUNT = "amount";
+
+    /** Bundle key for the IDs of the books a provider method acts on. Type: long[] */
+    public static final String EXTRA_BOOK_IDS = "book_ids";
+
+    /**
+     * Bundle key for the number of copies of each book in {@link #EXTRA_BOOK_IDS} a provider
+     * method acts on. Type: int[]
+     */
+    public static final String EXTRA_AMOUNTS = "amounts";
+
+    /**
+     * Bundle key for the price a provider method sets, in dollars; rounded to the nearest
+     * cent. Type: double
+     */
+    public static final String EXTRA_PRICE = "price";
+
+    /** Bundle key for the price a provider method sets, in cents. Type: long */
+    public static final String EXTRA_PRICE_CENTS = "price_cents";
+
+    /** Bundle key for whether the sale went through. Type: boolean */
+    public static final String EXTRA_SOLD = "sold";
+
+    /** Bundle key for whether the book was found and updated. Type: boolean */
+    public static final String EXTRA_UPDATED = "updated";
+
+    /**
+     * Bundle key for the quantity of the book after the provider method ran,
+     * or -1 if there is no such book. Type: int
+     */
+    public static final String EXTRA_QUANTITY = "quantity";
+
+    /** Bundle key for the number of changes the provider made. Type: long */
+    public static final String EXTRA_CHANGES_REQUESTED = "changes_requested";
+
+    /** Bundle key for the number of notifications sent to observers. Type: long */
+    public static final String EXTRA_NOTIFICATIONS_FIRED = "notifications_fired";
+
+    /** Bundle key for the number of changes folded into another notification. Type: long */
+    public static final String EXTRA_CHANGES_COALESCED = "changes_coalesced";
+
+    /** Bundle key for the number of queries answered from the row cache. Type: long */
+    public static final String EXTRA_CACHE_HITS = "cache_hits";
+
+    /** Bundle key for the number of queries that read the database. Type: long */
+    public static final String EXTRA_CACHE_MISSES = "cache_misses";
+
+    /** Bundle key for the number of rows in the row cache. Type: int */
+    public static final String EXTRA_CACHE_SIZE = "cache_size";
+
+    /** Bundle key for the estimated size of the row cache in bytes. Type: int */
+    public static final String EXTRA_CACHE_BYTES = "cache_bytes";
+
+    /** Bundle key for whether to start counting afresh after the report. Type: boolean */
+    public static final String EXTRA_RESET = "reset";
+
+    /** Bundle key for the number of operations that ran. Type: long */
+    public static final String EXTRA_COUNT = "count";
+
+    /** Bundle key for the number of operations that threw. Type: long */
+    public static final String EXTRA_ERRORS = "errors";
+
+    /**
+     * Bundle key for the number of rows operations returned or changed. Queries only count
+     * the rows of results read before the cursor was returned, such as cached books.
+     * Type: long
+     */
+    public static final String EXTRA_ROWS = "rows";
+
+    /** Bundle key for the time operations took altogether, in microseconds. Type: long */
+    public static final String EXTRA_TOTAL_MICROS = "total_micros";
+
+    /**
+     * Bundle key for the latency histogram of operations, with
+     * {@link #METRICS_LATENCY_BUCKETS} buckets. Bucket i counts operations that took less
+     * than 2^i microseconds and didn't fit an earlier bucket; the last bucket counts all
+     * longer ones. Type: long[]
+     */
+    public static final String EXTRA_LATENCY_HISTOGRAM = "latency_histogram";
+
+    /** Number of buckets of {@link #EXTRA_LATENCY_HISTOGRAM}; the last starts at 4.2 s */
+    public static final int METRICS_LATENCY_BUCKETS = 24;
+
+    /** Bundle key for a time in milliseconds since the epoch. Type: long */
+    public static final String EXTRA_BEFORE = "before";
+
+    /** Bundle key for the number of ledger entries rolled up. Type: int */
+    public static final String EXTRA_COMPACTED = "compacted";
 
     // Empty constructor to prevent accidental instantiation of contract class
     private InventoryContract() {}
 
+    /**
+     * Sells the given number of copies of a book in a single conditional update, so concurrent
+     * sales can never lose a copy or drive the quantity below 0.
+     *
+     * @param resolver to reach the provider with
+     * @param bookId ID of the book being sold
+     * @param amount number of copies sold
+     * @return quantity left after the sale, or -1 if the book doesn't exist or has
+     * fewer than amount copies in stock
+     */
+    public static int sell(ContentResolver resolver, long bookId, int amount) {
+        Bundle extras = new Bundle();
+        extras.putLong(EXTRA_BOOK_ID, bookId);
+        extras.putInt(EXTRA_AMOUNT, amount);
+
+        Bundle result = resolver.call(ItemEntry.CONTENT_URI, METHOD_SELL, null, extras);
+        if (result == null || !result.getBoolean(EXTRA_SOLD)) {
+            return -1;
+        }
+        return result.getInt(EXTRA_QUANTITY);
+    }
+
+    /**
+     * Sells copies of the book with the given ISBN, e.g. as scanned at the counter, with one
+     * indexed lookup and the same conditional update as {@link #sell}.
+     *
+     * @param resolver to reach the provider with
+     * @param isbn ISBN or barcode of the book, in any form {@link ItemEntry#normalizeIsbn} accepts
+     * @param amount number of copies sold
+     * @return quantity left after the sale, or -1 if no book has that ISBN or it has
+     * fewer than amount copies in stock
+     */
+    public static int sellByIsbn(ContentResolver resolver, String isbn, int amount) {
+        Bundle extras = new Bundle();
+        extras.putString(EXTRA_ISBN, isbn);
+        extras.putInt(EXTRA_AMOUNT, amount);
+
+        Bundle result = resolver.call(ItemEntry.CONTENT_URI, METHOD_SELL, null, extras);
+        if (result == null || !result.getBoolean(EXTRA_SOLD)) {
+            return -1;
+        }
+        return result.getInt(EXTRA_QUANTITY);
+    }
+
+    /**
+     * Rolls every ledger entry from before the given time up into {@link DailySalesEntry}
+     * snapshots and removes it from the ledger. The provider already does this in the
+     * background, keeping {@link LedgerEntry#DEFAULT_RETENTION_DAYS} days of entries.
+     *
+     * @param resolver to reach the provider with
+     * @param beforeMillis time in milliseconds since the epoch
+     * @return number of ledger entries rolled up
+     */
+    public static int compactLedger(ContentResolver resolver, long beforeMillis) {
+        Bundle extras = new Bundle();
+        extras.putLong(EXTRA_BEFORE, beforeMillis);
+
+        Bundle result = resolver.call(LedgerEntry.CONTENT_URI, METHOD_COMPACT_LEDGER, null,
+                extras);
+        return result == null ? 0 : result.getInt(EXTRA_COMPACTED);
+    }
+
+    /**
+     * Sells copies of several books in one transaction, with one change notification per
+     * book. Each book sells as many of its copies as are in stock, the same as selling them
+     * one at a time would, so a batch of queued sale taps never fails as a whole.
+     *
+     * @param resolver to reach the provider with
+     * @param bookIds IDs of the books being sold
+     * @param amounts number of copies of each book sold
+     * @return number of copies of each book actually sold, 0 for books that don't exist
+     */
+    public static int[] sellBatch(ContentResolver resolver, long[] bookIds, int[] amounts) {
+        Bundle extras = new Bundle();
+        extras.putLongArray(EXTRA_BOOK_IDS, bookIds);
+        extras.putIntArray(EXTRA_AMOUNTS, amounts);
+
+        Bundle result = resolver.call(ItemEntry.CONTENT_URI, METHOD_SELL_BATCH, null, extras);
+        int[] sold = result == null ? null : result.getIntArray(EXTRA_AMOUNTS);
+        return sold == null ? new int[bookIds.length] : sold;
+    }
+
+    /**
+     * Reads the quantity of a book in one call, without a cursor.
+     *
+     * @param resolver to reach the provider with
+     * @param bookId ID of the book
+     * @return quantity in stock, or -1 if the book doesn't exist
+     */
+    public static int getQuantity(ContentResolver resolver, long bookId) {
+        Bundle extras = new Bundle();
+        extras.putLong(EXTRA_BOOK_ID, bookId);
+
+        Bundle result = resolver.call(ItemEntry.CONTENT_URI, METHOD_GET_QUANTITY, null, extras);
+        return result == null ? -1 : result.getInt(EXTRA_QUANTITY, -1);
+    }
+
+    /**
+     * Puts the given number of copies of a book back in stock in a single update.
+     *
+     * @param resolver to reach the provider with
+     * @param bookId ID of the book being restocked
+     * @param amount number of copies added
+     * @return quantity in stock after the restock, or -1 if the book doesn't exist
+     */
+    public static int restock(ContentResolver resolver, long bookId, int amount) {
+        Bundle extras = new Bundle();
+        extras.putLong(EXTRA_BOOK_ID, bookId);
+        extras.putInt(EXTRA_AMOUNT, amount);
+
+        Bundle result = resolver.call(ItemEntry.CONTENT_URI, METHOD_RESTOCK, null, extras);
+        return result == null ? -1 : result.getInt(EXTRA_QUANTITY, -1);
+    }
+
+    /**
+     * Sets the price of a book.
+     *
+     * @param resolver to reach the provider with
+     * @param bookId ID of the book
+     * @param price new price, greater than or equal to 0.00; rounded to the nearest cent
+     * @return whether the book exists and was updated
+     */
+    public static boolean setPrice(ContentResolver resolver, long bookId, double price) {
+        return setPriceCents(resolver, bookId, ItemEntry.priceToCents(price));
+    }
+
+    /**
+     * Sets the price of a book in cents.
+     *
+     * @param resolver to reach the provider with
+     * @param bookId ID of the book
+     * @param priceCents new price in cents, greater than or equal to 0
+     * @return whether the book exists and was updated
+     */
+    public static boolean setPriceCents(ContentResolver resolver, long bookId, long priceCents) {
+        Bundle extras = new Bundle();
+        extras.putLong(EXTRA_BOOK_ID, bookId);
+        extras.putLong(EXTRA_PRICE_CENTS, priceCents);
+
+        Bundle result = resolver.call(ItemEntry.CONTENT_URI, METHOD_SET_PRICE, null, extras);
+        return result != null && result.getBoolean(EXTRA_UPDATED);
+    }
+
     /**
      * Inner class for Books table
      */
@@ -39,6 +372,9 @@ public class InventoryContract {
         /** Name of database table for books */
         public static final String TABLE_NAME = "books";
 
+        /** Name of full-text search table over title and author, kept in sync with books */
+        public static final String FTS_TABLE_NAME = "books_fts";
+
         /**
          * Unique ID number for the book
          *
@@ -61,12 +397,21 @@ public class InventoryContract {
         public static final String COLUMN_AUTHOR = "author";
 
         /**
-         * Price of book
+         * Price of book in dollars, read from {@link #COLUMN_PRICE_CENTS}. A price written
+         * in dollars is rounded to the nearest cent; filter, sort and add up prices by
+         * {@link #COLUMN_PRICE_CENTS}, which is exact.
          *
-         * Type: DOUBLE
+         * Type: REAL
          */
         public static final String COLUMN_PRICE = "price";
 
+        /**
+         * Price of book in cents, e.g. 999 for 9.99
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_PRICE_CENTS = "price_cents";
+
         /**
          * Quantity of book
          *
@@ -75,26 +420,49 @@ public class InventoryContract {
         public static final String COLUMN_QUANTITY = "quantity";
 
         /**
-         * Book supplier name
+         * ID of the book's supplier in {@link SupplierEntry}; read only, the provider finds
+         * or adds the supplier from the name, email and phone a book is written with
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_SUPPLIER_ID = "supplier_id";
+
+        /**
+         * Book supplier name, joined from {@link SupplierEntry}
          *
          * Type: TEXT
          */
         public static final String COLUMN_SUPPLIER_NAME = "supplier_name";
 
         /**
-         * Book supplier email
+         * Book supplier email, joined from {@link SupplierEntry}; may be null
          *
          * Type: TEXT
          */
         public static final String COLUMN_SUPPLIER_EMAIL = "supplier_email";
 
         /**
-         * Book supplier phone
+         * Book supplier phone, joined from {@link SupplierEntry}
          *
          * Type: TEXT
          */
         public static final String COLUMN_SUPPLIER_PHONE = "supplier_phone";
 
+        /**
+         * ISBN or other barcode of book, unique among books; stored as normalized by
+         * {@link #normalizeIsbn}, may be null
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_ISBN = "isbn";
+
+        /**
+         * Version of the book, starting at 1 and raised by every write to the book; read only
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_VERSION = "version";
+
         /**
          * MIME type of {@link #CONTENT_URI} for a list of books
          */
@@ -107,5 +475,417 @@ public class InventoryContract {
         public static final String CONTENT_ITEM_TYPE =
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_BOOKS;
 
+        /**
+         * URI the whole catalog can be read from as a stream, with
+         * {@link ContentResolver#openInputStream} for CSV or
+         * {@link ContentResolver#openTypedAssetFileDescriptor} for {@link #EXPORT_CSV_TYPE} or
+         * {@link #EXPORT_JSON_TYPE}. Rows are written while they are read, so the export
+         * never holds the whole catalog in memory.
+         */
+        public static final Uri EXPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_EXPORT);
+
+        /** MIME type of the CSV export; the first line holds the column names */
+        public static final String EXPORT_CSV_TYPE = "text/csv";
+
+        /** MIME type of the JSON export, an array with one object per book */
+        public static final String EXPORT_JSON_TYPE = "application/json";
+
+        /**
+         * Query parameter of {@link #CONTENT_URI} that limits the result to a page of this
+         * many books. Pages are ordered by the sort order passed to the query, which must be
+         * null (order of {@link #_ID}) or a single column from {@link #PAGE_SORT_COLUMNS}.
+         */
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+        /**
+         * Query parameter holding the sort column value of the last book of the previous page.
+         * Not needed when paging by {@link #_ID}.
+         */
+        public static final String QUERY_PARAMETER_AFTER = "after";
+
+        /** Query parameter holding the ID of the last book of the previous page */
+        public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+        /**
+         * Query parameter that skips this many books instead of continuing after a key.
+         * Rows inserted or deleted between pages shift an offset, so prefer the key.
+         */
+        public static final String QUERY_PARAMETER_OFFSET = "offset";
+
+        /**
+         * Query parameter of a single book URI that makes an update conditional on the book
+         * still being at this {@link #COLUMN_VERSION}, see {@link #buildVersionedUri}
+         */
+        public static final String QUERY_PARAMETER_VERSION = "version";
+
+        /**
+         * Result of an update through {@link #buildVersionedUri} when the book exists but was
+         * changed since the given version; nothing was updated
+         */
+        public static final int UPDATE_CONFLICT = -1;
+
+        /**
+         * Columns books can be paged by; all of them are indexed and never null. The supplier
+         * columns are joined in from their own table, so no index of books can order them.
+         */
+        public static final String[] PAGE_SORT_COLUMNS = {
+                _ID,
+                COLUMN_TITLE,
+                COLUMN_PRICE_CENTS,
+                COLUMN_QUANTITY
+        };
+
+        /**
+         * Build the URI for the first page of books.
+         *
+         * @param pageSize number of books per page
+         */
+        public static Uri buildPageUri(int pageSize) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(pageSize))
+                    .build();
+        }
+
+        /**
+         * Build the URI for the page of books that follows the given last book of the
+         * previous page. Rows inserted or deleted in the meantime never shift the page.
+         *
+         * @param pageSize number of books per page
+         * @param afterValue sort column value of the last book, or null when paging by ID
+         * @param afterId ID of the last book
+         */
+        public static Uri buildPageUri(int pageSize, String afterValue, long afterId) {
+            Uri.Builder builder = CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(pageSize))
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId));
+            if (afterValue != null) {
+                builder.appendQueryParameter(QUERY_PARAMETER_AFTER, afterValue);
+            }
+            return builder.build();
+        }
+
+        /**
+         * Build the URI for the page of books that starts at the given position.
+         *
+         * @param pageSize number of books per page
+         * @param offset number of books to skip
+         */
+        public static Uri buildPageUri(int pageSize, int offset) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(pageSize))
+                    .appendQueryParameter(QUERY_PARAMETER_OFFSET, String.valueOf(offset))
+                    .build();
+        }
+
+        /**
+         * Build the URI of a single book that only updates it while it is still at the given
+         * version. Returns {@link #UPDATE_CONFLICT} from update() if another write got there
+         * first, so an edit based on an old read never overwrites it.
+         *
+         * @param bookId ID of the book
+         * @param version {@link #COLUMN_VERSION} the edit is based on
+         */
+        public static Uri buildVersionedUri(long bookId, long version) {
+            return ContentUris.withAppendedId(CONTENT_URI, bookId).buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_VERSION, String.valueOf(version))
+                    .build();
+        }
+
+        /**
+         * Build the URI that looks up the book with the given ISBN through its unique index.
+         *
+         * @param isbn ISBN or barcode, in any form {@link #normalizeIsbn} accepts
+         */
+        public static Uri buildIsbnUri(String isbn) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_ISBN)
+                    .appendPath(isbn)
+                    .build();
+        }
+
+        /**
+         * Return the ISBN without the hyphens and spaces it is often printed with, and with
+         * a check character x in upper case, or null if nothing is left. Stored ISBNs and
+         * lookups are both normalized, so "0-306-40615-2" finds "0306406152".
+         */
+        public static String normalizeIsbn(String isbn) {
+            if (isbn == null) {
+                return null;
+            }
+            StringBuilder normalized = new StringBuilder(isbn.length());
+            for (int index = 0; index < isbn.length(); index++) {
+                char c = isbn.charAt(index);
+                if (c != '-' && !Character.isWhitespace(c)) {
+                    normalized.append(Character.toUpperCase(c));
+                }
+            }
+            return normalized.length() == 0 ? null : normalized.toString();
+        }
+
+        /**
+         * Return the given price in dollars in cents, rounding half a cent up. The price is
+         * rounded as it is written, so 0.285 is 29 cents even though the nearest double is
+         * a little less than 0.285.
+         *
+         * @throws NumberFormatException if the price is not a number or out of range
+         */
+        public static long priceToCents(double price) {
+            return toCents(BigDecimal.valueOf(price));
+        }
+
+        /**
+         * Return the given price in dollars, as typed in or written in an export, in cents,
+         * rounding half a cent up. "9.99" is 999 cents, with no double in between.
+         *
+         * @throws NumberFormatException if the text is not a number or out of range
+         */
+        public static long parsePriceCents(String price) {
+            return toCents(new BigDecimal(price.trim()));
+        }
+
+        private static long toCents(BigDecimal price) {
+            BigDecimal cents = price.setScale(2, RoundingMode.HALF_UP).movePointRight(2);
+            if (cents.unscaledValue().bitLength() > 63) {
+                throw new NumberFormatException("Price out of range - " + price);
+            }
+            return cents.longValue();
+        }
+
+        /**
+         * Build the URI that searches titles and authors for the given text. Every word
+         * matches as a prefix, so "harr pot" finds "Harry Potter". Unless a sort order is
+         * given, the most relevant books come first: those where the words occur most often,
+         * in the title more than in the author, and rare words more than common ones.
+         *
+         * @param query text typed by the user
+         */
+        public static Uri buildSearchUri(String query) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_SEARCH)
+                    .appendPath(query)
+                    .build();
+        }
+
+    }
+
+    /**
+     * Inner class for the suppliers books are ordered from. Each supplier is stored once
+     * and books refer to it by {@link ItemEntry#COLUMN_SUPPLIER_ID}. Suppliers are added
+     * by writing books; a supplier can only be deleted once no book refers to it.
+     */
+    public static final class SupplierEntry implements BaseColumns {
+
+        /** Full URI for SupplierEntry class to access data in provider */
+        public static final Uri CONTENT_URI =
+                Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        /** Name of database table for suppliers */
+        public static final String TABLE_NAME = "suppliers";
+
+        /**
+         * Unique ID number for the supplier, the same value as {@link #COLUMN_SUPPLIER_ID}
+         *
+         * Type: INTEGER
+         */
+        public static final String _ID = BaseColumns._ID;
+
+        /**
+         * Unique ID number for the supplier as books refer to it
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_SUPPLIER_ID = ItemEntry.COLUMN_SUPPLIER_ID;
+
+        /**
+         * Supplier name
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_NAME = ItemEntry.COLUMN_SUPPLIER_NAME;
+
+        /**
+         * Supplier email; may be null
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_EMAIL = ItemEntry.COLUMN_SUPPLIER_EMAIL;
+
+        /**
+         * Supplier phone
+         *
+         * Type: TEXT
+         */
+        public static final String COLUMN_PHONE = ItemEntry.COLUMN_SUPPLIER_PHONE;
+
+        /**
+         * MIME type of {@link #CONTENT_URI} for a list of suppliers
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * MIME type of {@link #CONTENT_URI} for a single supplier
+         */
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+    }
+
+    /**
+     * Inner class for the catalog statistics. A single row that triggers on the books table
+     * keep up to date, so reading it costs the same whatever the size of the catalog.
+     * Observers of {@link ItemEntry#CONTENT_URI} hear about every change to it.
+     */
+
+    public static final class StatsEntry implements BaseColumns {
+
+        /** Full URI for StatsEntry class to access data in provider */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_STATS);
+
+        /** Name of database table for the statistics */
+        public static final String TABLE_NAME = "books_stats";
+
+        /**
+         * Books with this many copies or fewer in stock count as low on stock. The triggers
+         * are created with this value, so changing it requires a migration.
+         */
+        public static final int LOW_STOCK_THRESHOLD = 5;
+
+        /**
+         * Total value of the stock in dollars, read from {@link #COLUMN_STOCK_VALUE_CENTS}
+         *
+         * Type: REAL
+         */
+        public static final String COLUMN_STOCK_VALUE = "stock_value";
+
+        /**
+         * Total value of the stock in cents, the sum of price times quantity over all books
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_STOCK_VALUE_CENTS = "stock_value_cents";
+
+        /**
+         * Number of books in the catalog
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_SKU_COUNT = "sku_count";
+
+        /**
+         * Number of copies in stock over all books
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_TOTAL_UNITS = "total_units";
+
+        /**
+         * Number of books with {@link #LOW_STOCK_THRESHOLD} copies or fewer in stock
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_LOW_STOCK_COUNT = "low_stock_count";
+
+        /**
+         * MIME type of {@link #CONTENT_URI}
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+    }
+
+    /**
+     * Inner class that defines constant values for the sales ledger, one entry per change in
+     * the quantity of a book, whether a sale, a restock or a quantity set by an update,
+     * appended by the database in the same statement as the change. Entries are read only;
+     * old entries are rolled up into {@link DailySalesEntry} snapshots.
+     */
+    public static final class LedgerEntry implements BaseColumns {
+
+        /** Full URI for LedgerEntry class to access data in provider */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_LEDGER);
+
+        /** Name of database table for the ledger */
+        public static final String TABLE_NAME = "sales_ledger";
+
+        /** Days of entries kept in the ledger before they are rolled up */
+        public static final int DEFAULT_RETENTION_DAYS = 7;
+
+        /**
+         * ID of the book sold or restocked. Entries outlive the book they refer to.
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_BOOK_ID = "book_id";
+
+        /**
+         * Change in quantity, negative for a sale or a lowered quantity and positive for a
+         * restock or a raised one
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_CHANGE = "change";
+
+        /**
+         * Time of the change in milliseconds since the epoch
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_TIMESTAMP = "timestamp";
+
+        /**
+         * MIME type of {@link #CONTENT_URI}
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_LEDGER;
+    }
+
+    /**
+     * Inner class that defines constant values for the daily sales snapshots, one row per
+     * book and day with the ledger entries of that day added up.
+     */
+    public static final class DailySalesEntry implements BaseColumns {
+
+        /** Full URI for DailySalesEntry class to access data in provider */
+        public static final Uri CONTENT_URI =
+                Uri.withAppendedPath(BASE_CONTENT_URI, PATH_DAILY_SALES);
+
+        /** Name of database table for the snapshots */
+        public static final String TABLE_NAME = "daily_sales";
+
+        /** Length of a day in milliseconds */
+        public static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+        /**
+         * ID of the book
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_BOOK_ID = "book_id";
+
+        /**
+         * Day of the snapshot, in whole UTC days since the epoch
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_DAY = "day";
+
+        /**
+         * Number of copies sold that day
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_UNITS_SOLD = "units_sold";
+
+        /**
+         * Number of copies restocked that day
+         *
+         * Type: INTEGER
+         */
+        public static final String COLUMN_UNITS_RESTOCKED = "units_restocked";
+
+        /**
+         * MIME type of {@link #CONTENT_URI}
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY + "/" + PATH_DAILY_SALES;
     }
 }
@@ -0,0 +1,127 @@
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+import com.example.android.inventory.data.InventoryContract.ItemEntry;
+
+/**
+ * {@link CursorWrapper} over rows of the books table with typed getters for the columns of
+ * {@link ItemEntry}. Column indices are looked up once when the cursor is wrapped rather
+ * than by name for every field of every row.
+ *
+ * Only the columns in the query projection can be read; the getter of any other column
+ * throws {@link IllegalStateException}.
+ */
+public class InventoryCursor extends CursorWrapper {
+
+    private final int idIndex;
+    private final int titleIndex;
+    private final int authorIndex;
+    private final int priceIndex;
+    private final int priceCentsIndex;
+    private final int quantityIndex;
+    private final int supplierNameIndex;
+    private final int supplierEmailIndex;
+    private final int supplierPhoneIndex;
+    private final int isbnIndex;
+    private final int versionIndex;
+
+    /**
+     * Wrap the given cursor, resolving the index of every {@link ItemEntry} column it holds
+     */
+    public InventoryCursor(Cursor cursor) {
+        super(cursor);
+        idIndex = cursor.getColumnIndex(ItemEntry._ID);
+        titleIndex = cursor.getColumnIndex(ItemEntry.COLUMN_TITLE);
+        authorIndex = cursor.getColumnIndex(ItemEntry.COLUMN_AUTHOR);
+        priceIndex = cursor.getColumnIndex(ItemEntry.COLUMN_PRICE);
+        priceCentsIndex = cursor.getColumnIndex(ItemEntry.COLUMN_PRICE_CENTS);
+        quantityIndex = cursor.getColumnIndex(ItemEntry.COLUMN_QUANTITY);
+        supplierNameIndex = cursor.getColumnIndex(ItemEntry.COLUMN_SUPPLIER_NAME);
+        supplierEmailIndex = cursor.getColumnIndex(ItemEntry.COLUMN_SUPPLIER_EMAIL);
+        supplierPhoneIndex = cursor.getColumnIndex(ItemEntry.COLUMN_SUPPLIER_PHONE);
+        isbnIndex = cursor.getColumnIndex(ItemEntry.COLUMN_ISBN);
+        versionIndex = cursor.getColumnIndex(ItemEntry.COLUMN_VERSION);
+    }
+
+    /**
+     * Return the given cursor as an InventoryCursor, wrapping it only if it isn't one yet
+     */
+    public static InventoryCursor wrap(Cursor cursor) {
+        return cursor instanceof InventoryCursor ? (InventoryCursor) cursor
+                : new InventoryCursor(cursor);
+    }
+
+    /** ID of the current book */
+    public long getId() {
+        return getLong(checkColumn(idIndex, ItemEntry._ID));
+    }
+
+    /** Title of the current book */
+    public String getTitle() {
+        return getString(checkColumn(titleIndex, ItemEntry.COLUMN_TITLE));
+    }
+
+    /** Author of the current book, may be null */
+    public String getAuthor() {
+        return getString(checkColumn(authorIndex, ItemEntry.COLUMN_AUTHOR));
+    }
+
+    /**
+     * Price of the current book in cents, read from {@link ItemEntry#COLUMN_PRICE_CENTS}, or
+     * from {@link ItemEntry#COLUMN_PRICE} if only that is in the projection
+     */
+    public long getPriceCents() {
+        if (priceCentsIndex >= 0) {
+            return getLong(priceCentsIndex);
+        }
+        return ItemEntry.priceToCents(getDouble(checkColumn(priceIndex, ItemEntry.COLUMN_PRICE)));
+    }
+
+    /** Number of copies of the current book in stock */
+    public int getQuantity() {
+        return getInt(checkColumn(quantityIndex, ItemEntry.COLUMN_QUANTITY));
+    }
+
+    /** Supplier name of the current book */
+    public String getSupplierName() {
+        return getString(checkColumn(supplierNameIndex, ItemEntry.COLUMN_SUPPLIER_NAME));
+    }
+
+    /** Supplier email of the current book, may be null */
+    public String getSupplierEmail() {
+        return getString(checkColumn(supplierEmailIndex, ItemEntry.COLUMN_SUPPLIER_EMAIL));
+    }
+
+    /** Supplier phone of the current book */
+    public String getSupplierPhone() {
+        return getString(checkColumn(supplierPhoneIndex, ItemEntry.COLUMN_SUPPLIER_PHONE));
+    }
+
+    /** ISBN of the current book, may be null */
+    public String getIsbn() {
+        return getString(checkColumn(isbnIndex, ItemEntry.COLUMN_ISBN));
+    }
+
+    /** Version of the current book, see {@link ItemEntry#COLUMN_VERSION} */
+    public long getVersion() {
+        return getLong(checkColumn(versionIndex, ItemEntry.COLUMN_VERSION));
+    }
+
+    /**
+     * Format a price in cents the way it is typed in, e.g. 1050 as "10.50"
+     */
+    public static String formatPrice(long priceCents) {
+        long cents = Math.abs(priceCents % 100);
+        return (priceCents < 0 ? "-" : "") + Math.abs(priceCents / 100)
+                + (cents < 10 ? ".0" : ".") + cents;
+    }
+
+    private static int checkColumn(int index, String column) {
+        if (index < 0) {
+            throw new IllegalStateException("Column not in projection - " + column);
+        }
+        return index;
+    }
+}
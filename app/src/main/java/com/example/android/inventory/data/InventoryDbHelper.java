@@ -1,10 +1,16 @@
 package com.example.android.inventory.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
+import com.example.android.inventory.data.InventoryContract.DailySalesEntry;
 import com.example.android.inventory.data.InventoryContract.ItemEntry;
+import com.example.android.inventory.data.InventoryContract.LedgerEntry;
+import com.example.android.inventory.data.InventoryContract.StatsEntry;
+import com.example.android.inventory.data.InventoryContract.SupplierEntry;
 
 /**
  * Database helper for Inventory app
@@ -14,24 +20,284 @@ import com.example.android.inventory.data.InventoryContract.ItemEntry;
 public class InventoryDbHelper extends SQLiteOpenHelper {
 
     /** Name of the database file */
-    private static final String DB_NAME = "bookstore.db";
+    static final String DB_NAME = "bookstore.db";
 
-    /** Database version. Increment when changing schema. */
-    private static final int DB_VERSION = 1;
+    /**
+     * Ordered schema migrations. The migration at index i upgrades the database from
+     * version i + 1 to version i + 2. Append new steps to the end; never edit or reorder
+     * a step that has already shipped.
+     */
+    static final Migration[] MIGRATIONS = {
+
+            // Version 2: indexes for the lookups and sort orders the catalog actually uses
+            new Migration(1) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    createIndex(db, ItemEntry.COLUMN_TITLE);
+                    createIndex(db, ItemEntry.COLUMN_AUTHOR);
+                    createIndex(db, ItemEntry.COLUMN_SUPPLIER_NAME);
+                    createIndex(db, ItemEntry.COLUMN_QUANTITY);
+                }
+            },
+
+            // Version 3: full-text search over title and author
+            new Migration(2) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    createSearchTable(db);
+                }
+            },
+
+            // Version 4: catalog statistics kept up to date by triggers
+            new Migration(3) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    createStatsTable(db, ItemEntry.COLUMN_PRICE, StatsEntry.COLUMN_STOCK_VALUE,
+                            "DOUBLE");
+                }
+            },
+
+            // Version 5: ISBN column with a unique index, for barcode lookups at the counter
+            new Migration(4) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    db.execSQL("ALTER TABLE " + ItemEntry.TABLE_NAME + " ADD COLUMN "
+                            + ItemEntry.COLUMN_ISBN + " TEXT;");
+                    createIsbnIndex(db);
+                }
+            },
+
+            // Version 6: sales ledger and the daily snapshots old entries are rolled up into
+            new Migration(5) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    createLedgerTables(db);
+                }
+            },
+
+            // Version 7: row versions for conditional updates
+            new Migration(6) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    createVersionColumn(db);
+                }
+            },
+
+            // Version 8: suppliers stored once in their own table, referenced by books
+            new Migration(7) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    createSuppliersTable(db);
+                }
+            },
+
+            // Version 9: prices and the stock value stored in whole cents
+            new Migration(8) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    createPriceCentsColumn(db);
+                }
+            },
+
+            // Version 10: every change of quantity recorded in the ledger by a trigger
+            new Migration(9) {
+                @Override
+                void migrate(SQLiteDatabase db) {
+                    createLedgerTrigger(db);
+                }
+            },
+    };
+
+    /** Current time in milliseconds since the epoch, in SQL; Julian day 2440587.5 is the epoch */
+    private static final String NOW_MILLIS =
+            "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+    /** Database version. Follows the number of migrations; add a migration to change schema. */
+    static final int DB_VERSION = 1 + MIGRATIONS.length;
+
+    /** Default page size in bytes; only applies when the database file is created */
+    static final int DEFAULT_PAGE_SIZE = 4096;
+
+    /**
+     * Default page cache size in KiB of the primary connection, the one every write and
+     * every transaction runs on. The reader connections Android opens in WAL mode keep
+     * SQLite's default cache; the framework has no hook to configure them.
+     */
+    static final int DEFAULT_CACHE_SIZE_KIB = 2048;
+
+    /**
+     * Default synchronous level. NORMAL is safe from corruption in WAL mode and only syncs
+     * at checkpoints, so each commit is not an fsync.
+     */
+    static final String DEFAULT_SYNCHRONOUS = "NORMAL";
+
+    /**
+     * Default size in bytes of the memory-mapped part of the database file, for the primary
+     * connection only like the cache size
+     */
+    static final long DEFAULT_MMAP_SIZE = 8L * 1024 * 1024;
+
+    /** Page size set on open */
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    /** Cache size set on open */
+    private int cacheSizeKib = DEFAULT_CACHE_SIZE_KIB;
+
+    /** Synchronous level set on open */
+    private String synchronous = DEFAULT_SYNCHRONOUS;
+
+    /** Memory-mapped I/O size set on open */
+    private long mmapSize = DEFAULT_MMAP_SIZE;
 
     /**
      * Constructs a new instance of {@link InventoryDbHelper}.
      * @param context of the app
      */
     public InventoryDbHelper(Context context) {
-        super(context, DB_NAME, null, DB_VERSION);
+        this(context, DB_NAME);
+    }
+
+    /**
+     * Constructs a new instance of {@link InventoryDbHelper} backed by the given database file.
+     * @param context of the app
+     * @param name of the database file, or null for an in-memory database
+     */
+    InventoryDbHelper(Context context, String name) {
+        super(context, name, null, DB_VERSION);
+    }
+
+    /**
+     * Sets the page size of a newly created database file. Must be called before the
+     * database is first opened; has no effect on an existing file.
+     * @param pageSize in bytes, a power of two between 512 and 65536
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Sets the page cache size of the primary connection, see {@link #DEFAULT_CACHE_SIZE_KIB}.
+     * Must be called before the database is first opened. Before Android 4.1 it only
+     * applies once the database is open, not while it is created or upgraded.
+     * @param cacheSizeKib cache size in KiB
+     */
+    public void setCacheSizeKib(int cacheSizeKib) {
+        this.cacheSizeKib = cacheSizeKib;
+    }
+
+    /**
+     * Sets the synchronous level. Must be called before the database is first opened.
+     * Before Android 4.1 it only applies once the database is open, not while it is
+     * created or upgraded.
+     * @param synchronous one of OFF, NORMAL, FULL or EXTRA
+     */
+    public void setSynchronous(String synchronous) {
+        this.synchronous = synchronous;
+    }
+
+    /**
+     * Sets how much of the database file the primary connection memory maps, 0 to turn
+     * memory mapping off. Must be called before the database is first opened; ignored
+     * before Android 5.0.
+     * @param mmapSize in bytes
+     */
+    public void setMmapSize(long mmapSize) {
+        this.mmapSize = mmapSize;
+    }
+
+    /**
+     * Called when the database connection is being configured, before it is created or
+     * upgraded. Turns on write-ahead logging so reads do not wait for writes and writes
+     * do not wait for reads, then applies the connection settings. Foreign keys are
+     * enforced, so a book can never refer to a missing supplier.
+     *
+     * Only the primary connection is configured here. Page size and WAL mode belong to the
+     * database file and synchronous only matters to the connection that commits, so they
+     * hold for every connection; cache and mmap sizes stay at SQLite's defaults on the
+     * reader connections.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+
+        // Only ever called from Android 4.1; onOpen() turns foreign keys on before that
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            db.setForeignKeyConstraintsEnabled(true);
+        }
+
+        // Page size can only change before the first table is written and before WAL mode
+        db.execSQL("PRAGMA page_size = " + pageSize + ";");
+        db.enableWriteAheadLogging();
+
+        configureConnection(db);
+        queryPragma(db, "PRAGMA mmap_size = " + mmapSize + ";");
+    }
+
+    /**
+     * Called when the database is opened. {@link #onConfigure} only runs from Android 4.1,
+     * so older versions turn on write-ahead logging and foreign keys and apply the cache
+     * size and synchronous level here; their SQLite has no memory mapping.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+            db.execSQL("PRAGMA foreign_keys = ON;");
+            configureConnection(db);
+        }
+    }
+
+    /**
+     * Applies the cache size and synchronous level to the primary connection
+     */
+    private void configureConnection(SQLiteDatabase db) {
+        // A negative cache size is in KiB rather than pages
+        db.execSQL("PRAGMA cache_size = " + -cacheSizeKib + ";");
+        db.execSQL("PRAGMA synchronous = " + synchronous + ";");
+    }
+
+    /**
+     * Runs a pragma that returns its new value as a row, which execSQL() refuses
+     */
+    private static void queryPragma(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
     }
 
     /**
      * Called when database is first created.
+     * Creates the version 1 schema, then runs every migration so that new installs
+     * end up with exactly the same schema as upgraded ones.
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
+        // onConfigure() sets the page size from Android 4.1; before that it can still
+        // change here, before the first table is written
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            db.execSQL("PRAGMA page_size = " + pageSize + ";");
+        }
+        createBaseSchema(db);
+        migrate(db, 1, DB_VERSION);
+    }
+
+    /**
+     * Called when database schema changes.
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        migrate(db, oldVersion, newVersion);
+    }
+
+    /**
+     * Creates the version 1 schema. Later schema changes belong in {@link #MIGRATIONS}.
+     */
+    static void createBaseSchema(SQLiteDatabase db) {
 
         // String to create table and columns
         String SQL_CREATE_TABLE_BOOKS =
@@ -47,33 +313,355 @@ public class InventoryDbHelper extends SQLiteOpenHelper {
 
         // Create the table
         db.execSQL(SQL_CREATE_TABLE_BOOKS);
-        
     }
 
     /**
-     * Called when database schema changes.
+     * Creates an index named after the books table and the given column.
      */
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    private static void createIndex(SQLiteDatabase db, String column) {
+        db.execSQL("CREATE INDEX " + ItemEntry.TABLE_NAME + "_" + column + "_index ON "
+                + ItemEntry.TABLE_NAME + " (" + column + ");");
+    }
 
-        // Do nothing right now
+    /**
+     * Creates the unique index that ISBN lookups go through. Any number of books may have
+     * no ISBN.
+     */
+    private static void createIsbnIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX " + ItemEntry.TABLE_NAME + "_"
+                + ItemEntry.COLUMN_ISBN + "_index ON " + ItemEntry.TABLE_NAME
+                + " (" + ItemEntry.COLUMN_ISBN + ");");
+    }
+
+    /**
+     * Creates an FTS4 table that indexes title and author of the books table without
+     * storing a second copy of them, plus the triggers that keep it in sync.
+     */
+    private static void createSearchTable(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + ItemEntry.FTS_TABLE_NAME + " USING fts4("
+                + "content=\"" + ItemEntry.TABLE_NAME + "\", " + ItemEntry.COLUMN_TITLE + ", "
+                + ItemEntry.COLUMN_AUTHOR + ");");
+        createSearchTriggers(db);
 
+        // Index the books that already exist
+        db.execSQL("INSERT INTO " + ItemEntry.FTS_TABLE_NAME + " (" + ItemEntry.FTS_TABLE_NAME
+                + ") VALUES ('rebuild');");
     }
 
     /**
-     * This method empties the database every time app starts for demo purposes.
-     * Remove for live application
+     * Creates the triggers that keep the search table in sync with books. Triggers only
+     * fire on title and author changes, so quantity and price updates cost nothing extra.
      */
-    @Override
-    public void onOpen(SQLiteDatabase db) {
-        super.onOpen(db);
+    private static void createSearchTriggers(SQLiteDatabase db) {
+        String columns = ItemEntry.COLUMN_TITLE + ", " + ItemEntry.COLUMN_AUTHOR;
+        String newValues = "new." + ItemEntry._ID + ", new." + ItemEntry.COLUMN_TITLE
+                + ", new." + ItemEntry.COLUMN_AUTHOR;
+        String deleteOld = "DELETE FROM " + ItemEntry.FTS_TABLE_NAME
+                + " WHERE docid = old." + ItemEntry._ID + ";";
+        String insertNew = "INSERT INTO " + ItemEntry.FTS_TABLE_NAME
+                + " (docid, " + columns + ") VALUES (" + newValues + ");";
+
+        // External content tables must see the old values removed before the row changes
+        db.execSQL("CREATE TRIGGER " + ItemEntry.FTS_TABLE_NAME + "_before_update"
+                + " BEFORE UPDATE OF " + columns + " ON " + ItemEntry.TABLE_NAME
+                + " BEGIN " + deleteOld + " END;");
+        db.execSQL("CREATE TRIGGER " + ItemEntry.FTS_TABLE_NAME + "_before_delete"
+                + " BEFORE DELETE ON " + ItemEntry.TABLE_NAME
+                + " BEGIN " + deleteOld + " END;");
+        db.execSQL("CREATE TRIGGER " + ItemEntry.FTS_TABLE_NAME + "_after_update"
+                + " AFTER UPDATE OF " + columns + " ON " + ItemEntry.TABLE_NAME
+                + " BEGIN " + insertNew + " END;");
+        db.execSQL("CREATE TRIGGER " + ItemEntry.FTS_TABLE_NAME + "_after_insert"
+                + " AFTER INSERT ON " + ItemEntry.TABLE_NAME
+                + " BEGIN " + insertNew + " END;");
+    }
+
+    /**
+     * Creates the single-row statistics table, fills it from the books that already exist,
+     * and adds the triggers that keep it up to date, so the statistics never have to be
+     * computed from a full scan again.
+     *
+     * @param priceColumn books column the stock value is summed from
+     * @param stockValueColumn statistics column the stock value is kept in
+     * @param stockValueType SQL type of the stock value column
+     */
+    private static void createStatsTable(SQLiteDatabase db, String priceColumn,
+                                         String stockValueColumn, String stockValueType) {
+        db.execSQL("CREATE TABLE " + StatsEntry.TABLE_NAME + " ("
+                + StatsEntry._ID + " INTEGER PRIMARY KEY CHECK (" + StatsEntry._ID + " = 1), "
+                + stockValueColumn + " " + stockValueType + " NOT NULL, "
+                + StatsEntry.COLUMN_SKU_COUNT + " INTEGER NOT NULL, "
+                + StatsEntry.COLUMN_TOTAL_UNITS + " INTEGER NOT NULL, "
+                + StatsEntry.COLUMN_LOW_STOCK_COUNT + " INTEGER NOT NULL);");
+
+        db.execSQL("INSERT INTO " + StatsEntry.TABLE_NAME + " SELECT 1, "
+                + "IFNULL(SUM(" + priceColumn + " * " + ItemEntry.COLUMN_QUANTITY
+                + "), 0), COUNT(*), IFNULL(SUM(" + ItemEntry.COLUMN_QUANTITY + "), 0), "
+                + "IFNULL(SUM(" + ItemEntry.COLUMN_QUANTITY + " <= "
+                + StatsEntry.LOW_STOCK_THRESHOLD + "), 0) FROM " + ItemEntry.TABLE_NAME + ";");
+        createStatsTriggers(db, priceColumn, stockValueColumn);
+    }
+
+    /**
+     * Creates the triggers that apply every insert, delete and price or quantity update of
+     * a book to the statistics.
+     *
+     * @param priceColumn books column the stock value is summed from
+     * @param stockValueColumn statistics column the stock value is kept in
+     */
+    private static void createStatsTriggers(SQLiteDatabase db, String priceColumn,
+                                            String stockValueColumn) {
+        db.execSQL("CREATE TRIGGER " + StatsEntry.TABLE_NAME + "_after_insert"
+                + " AFTER INSERT ON " + ItemEntry.TABLE_NAME + " BEGIN "
+                + updateStats("new", "+", priceColumn, stockValueColumn) + " END;");
+        db.execSQL("CREATE TRIGGER " + StatsEntry.TABLE_NAME + "_after_delete"
+                + " AFTER DELETE ON " + ItemEntry.TABLE_NAME + " BEGIN "
+                + updateStats("old", "-", priceColumn, stockValueColumn) + " END;");
+        db.execSQL("CREATE TRIGGER " + StatsEntry.TABLE_NAME + "_after_update"
+                + " AFTER UPDATE OF " + priceColumn + ", " + ItemEntry.COLUMN_QUANTITY
+                + " ON " + ItemEntry.TABLE_NAME + " BEGIN "
+                + updateStats("old", "-", priceColumn, stockValueColumn) + " "
+                + updateStats("new", "+", priceColumn, stockValueColumn) + " END;");
+    }
+
+    /**
+     * Returns the statement that adds the given trigger row ("new" or "old") to the
+     * statistics, or removes it with the "-" sign.
+     */
+    private static String updateStats(String row, String sign, String priceColumn,
+                                      String stockValueColumn) {
+        return "UPDATE " + StatsEntry.TABLE_NAME + " SET "
+                + stockValueColumn + " = " + stockValueColumn
+                + " " + sign + " " + row + "." + priceColumn
+                + " * " + row + "." + ItemEntry.COLUMN_QUANTITY + ", "
+                + StatsEntry.COLUMN_SKU_COUNT + " = " + StatsEntry.COLUMN_SKU_COUNT
+                + " " + sign + " 1, "
+                + StatsEntry.COLUMN_TOTAL_UNITS + " = " + StatsEntry.COLUMN_TOTAL_UNITS
+                + " " + sign + " " + row + "." + ItemEntry.COLUMN_QUANTITY + ", "
+                + StatsEntry.COLUMN_LOW_STOCK_COUNT + " = " + StatsEntry.COLUMN_LOW_STOCK_COUNT
+                + " " + sign + " (" + row + "." + ItemEntry.COLUMN_QUANTITY + " <= "
+                + StatsEntry.LOW_STOCK_THRESHOLD + ");";
+    }
+
+    /**
+     * Creates the append-only sales ledger and the daily snapshot table. The ledger is only
+     * indexed by book and time, for per-book history; compaction reads it in full anyway.
+     * Neither table references books, so the history of a deleted book is kept.
+     */
+    private static void createLedgerTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + LedgerEntry.TABLE_NAME + " ("
+                + LedgerEntry._ID + " INTEGER PRIMARY KEY, "
+                + LedgerEntry.COLUMN_BOOK_ID + " INTEGER NOT NULL, "
+                + LedgerEntry.COLUMN_CHANGE + " INTEGER NOT NULL, "
+                + LedgerEntry.COLUMN_TIMESTAMP + " INTEGER NOT NULL);");
+        db.execSQL("CREATE INDEX " + LedgerEntry.TABLE_NAME + "_" + LedgerEntry.COLUMN_BOOK_ID
+                + "_index ON " + LedgerEntry.TABLE_NAME + " (" + LedgerEntry.COLUMN_BOOK_ID
+                + ", " + LedgerEntry.COLUMN_TIMESTAMP + ");");
+
+        db.execSQL("CREATE TABLE " + DailySalesEntry.TABLE_NAME + " ("
+                + DailySalesEntry._ID + " INTEGER PRIMARY KEY, "
+                + DailySalesEntry.COLUMN_BOOK_ID + " INTEGER NOT NULL, "
+                + DailySalesEntry.COLUMN_DAY + " INTEGER NOT NULL, "
+                + DailySalesEntry.COLUMN_UNITS_SOLD + " INTEGER NOT NULL DEFAULT 0, "
+                + DailySalesEntry.COLUMN_UNITS_RESTOCKED + " INTEGER NOT NULL DEFAULT 0, "
+                + "UNIQUE (" + DailySalesEntry.COLUMN_BOOK_ID + ", "
+                + DailySalesEntry.COLUMN_DAY + "));");
+    }
+
+    /**
+     * Creates the trigger that appends every change of a book's quantity to the ledger, so
+     * a sale, a restock, a quantity typed in the editor and an update in a batch are all
+     * recorded, each exactly once, whichever statement made it. A step that rebuilds books
+     * must create it again.
+     */
+    private static void createLedgerTrigger(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER " + LedgerEntry.TABLE_NAME + "_after_update"
+                + " AFTER UPDATE OF " + ItemEntry.COLUMN_QUANTITY + " ON " + ItemEntry.TABLE_NAME
+                + " WHEN new." + ItemEntry.COLUMN_QUANTITY + " <> old." + ItemEntry.COLUMN_QUANTITY
+                + " BEGIN INSERT INTO " + LedgerEntry.TABLE_NAME + " ("
+                + LedgerEntry.COLUMN_BOOK_ID + ", " + LedgerEntry.COLUMN_CHANGE + ", "
+                + LedgerEntry.COLUMN_TIMESTAMP + ") VALUES (new." + ItemEntry._ID + ", new."
+                + ItemEntry.COLUMN_QUANTITY + " - old." + ItemEntry.COLUMN_QUANTITY + ", "
+                + NOW_MILLIS + "); END;");
+    }
+
+    /**
+     * Adds the version column and the trigger that raises it with every update of a book.
+     */
+    private static void createVersionColumn(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + ItemEntry.TABLE_NAME + " ADD COLUMN "
+                + ItemEntry.COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 1;");
+        createVersionTrigger(db);
+    }
+
+    /**
+     * Creates the trigger that raises the version with every update of a book, whichever
+     * statement made the update. An update that sets the version itself is left alone, and
+     * the trigger's own update doesn't fire it again.
+     *
+     * The trigger's update is a second UPDATE of the book, with its own index and trigger
+     * work, so the compiled writes in {@link InventoryStatements} raise the version
+     * themselves and only updates built from content values pay for it.
+     */
+    private static void createVersionTrigger(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER " + ItemEntry.TABLE_NAME + "_" + ItemEntry.COLUMN_VERSION
+                + "_after_update AFTER UPDATE ON " + ItemEntry.TABLE_NAME
+                + " WHEN new." + ItemEntry.COLUMN_VERSION + " = old." + ItemEntry.COLUMN_VERSION
+                + " BEGIN UPDATE " + ItemEntry.TABLE_NAME + " SET " + ItemEntry.COLUMN_VERSION
+                + " = old." + ItemEntry.COLUMN_VERSION + " + 1 WHERE " + ItemEntry._ID
+                + " = new." + ItemEntry._ID + "; END;");
+    }
+
+    /**
+     * Moves the suppliers into their own table, one row for each distinct name, email and
+     * phone, and rebuilds books with a supplier ID in place of the three supplier columns.
+     * SQLite can't drop columns, so the books are copied into a new table that then takes
+     * the name of the old one. The indexes and triggers on books go with the old table and
+     * are created again; the search and statistics tables still hold the same books.
+     */
+    private static void createSuppliersTable(SQLiteDatabase db) {
+        // No email is stored as an empty string, so the unique constraint sees it as equal
+        db.execSQL("CREATE TABLE " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry.COLUMN_SUPPLIER_ID + " INTEGER PRIMARY KEY, "
+                + SupplierEntry.COLUMN_NAME + " TEXT NOT NULL, "
+                + SupplierEntry.COLUMN_EMAIL + " TEXT NOT NULL DEFAULT '', "
+                + SupplierEntry.COLUMN_PHONE + " TEXT NOT NULL, "
+                + "UNIQUE (" + SupplierEntry.COLUMN_NAME + ", " + SupplierEntry.COLUMN_EMAIL
+                + ", " + SupplierEntry.COLUMN_PHONE + "));");
+        db.execSQL("INSERT OR IGNORE INTO " + SupplierEntry.TABLE_NAME + " ("
+                + SupplierEntry.COLUMN_NAME + ", " + SupplierEntry.COLUMN_EMAIL + ", "
+                + SupplierEntry.COLUMN_PHONE + ") SELECT " + ItemEntry.COLUMN_SUPPLIER_NAME
+                + ", IFNULL(" + ItemEntry.COLUMN_SUPPLIER_EMAIL + ", ''), "
+                + ItemEntry.COLUMN_SUPPLIER_PHONE + " FROM " + ItemEntry.TABLE_NAME
+                + " ORDER BY " + ItemEntry._ID + ";");
+
+        String newTable = ItemEntry.TABLE_NAME + "_new";
+        db.execSQL("CREATE TABLE " + newTable + " ("
+                + ItemEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ItemEntry.COLUMN_TITLE + " TEXT NOT NULL, "
+                + ItemEntry.COLUMN_AUTHOR + " TEXT, "
+                + ItemEntry.COLUMN_PRICE + " DOUBLE NOT NULL DEFAULT 0.00, "
+                + ItemEntry.COLUMN_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                + ItemEntry.COLUMN_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                + SupplierEntry.TABLE_NAME + " (" + SupplierEntry.COLUMN_SUPPLIER_ID + "), "
+                + ItemEntry.COLUMN_ISBN + " TEXT, "
+                + ItemEntry.COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 1);");
+        db.execSQL("INSERT INTO " + newTable + " SELECT b." + ItemEntry._ID
+                + ", b." + ItemEntry.COLUMN_TITLE + ", b." + ItemEntry.COLUMN_AUTHOR
+                + ", b." + ItemEntry.COLUMN_PRICE + ", b." + ItemEntry.COLUMN_QUANTITY
+                + ", s." + SupplierEntry.COLUMN_SUPPLIER_ID + ", b." + ItemEntry.COLUMN_ISBN
+                + ", b." + ItemEntry.COLUMN_VERSION + " FROM " + ItemEntry.TABLE_NAME
+                + " b JOIN " + SupplierEntry.TABLE_NAME + " s ON s." + SupplierEntry.COLUMN_NAME
+                + " = b." + ItemEntry.COLUMN_SUPPLIER_NAME + " AND s." + SupplierEntry.COLUMN_EMAIL
+                + " = IFNULL(b." + ItemEntry.COLUMN_SUPPLIER_EMAIL + ", '') AND s."
+                + SupplierEntry.COLUMN_PHONE + " = b." + ItemEntry.COLUMN_SUPPLIER_PHONE + ";");
+
+        replaceBooksTable(db, newTable);
+
+        createIndex(db, ItemEntry.COLUMN_TITLE);
+        createIndex(db, ItemEntry.COLUMN_AUTHOR);
+        createIndex(db, ItemEntry.COLUMN_QUANTITY);
+        createIndex(db, ItemEntry.COLUMN_SUPPLIER_ID);
+        createIsbnIndex(db);
+        createSearchTriggers(db);
+        createStatsTriggers(db, ItemEntry.COLUMN_PRICE, StatsEntry.COLUMN_STOCK_VALUE);
+        createVersionTrigger(db);
+    }
+
+    /**
+     * Rebuilds books with the price in whole cents in place of the price in dollars, so
+     * sums and comparisons of prices are exact, and the statistics with the stock value in
+     * cents. Prices were typed in with two decimals, so rounding to the nearest cent
+     * recovers what was typed. Like {@link #createSuppliersTable}, books are copied into a
+     * new table and the indexes and triggers created again, now with an index on the price.
+     */
+    private static void createPriceCentsColumn(SQLiteDatabase db) {
+        String newTable = ItemEntry.TABLE_NAME + "_new";
+        db.execSQL("CREATE TABLE " + newTable + " ("
+                + ItemEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ItemEntry.COLUMN_TITLE + " TEXT NOT NULL, "
+                + ItemEntry.COLUMN_AUTHOR + " TEXT, "
+                + ItemEntry.COLUMN_PRICE_CENTS + " INTEGER NOT NULL DEFAULT 0, "
+                + ItemEntry.COLUMN_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                + ItemEntry.COLUMN_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                + SupplierEntry.TABLE_NAME + " (" + SupplierEntry.COLUMN_SUPPLIER_ID + "), "
+                + ItemEntry.COLUMN_ISBN + " TEXT, "
+                + ItemEntry.COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 1);");
+        db.execSQL("INSERT INTO " + newTable + " SELECT " + ItemEntry._ID + ", "
+                + ItemEntry.COLUMN_TITLE + ", " + ItemEntry.COLUMN_AUTHOR
+                + ", CAST(ROUND(" + ItemEntry.COLUMN_PRICE + " * 100) AS INTEGER), "
+                + ItemEntry.COLUMN_QUANTITY + ", " + ItemEntry.COLUMN_SUPPLIER_ID + ", "
+                + ItemEntry.COLUMN_ISBN + ", " + ItemEntry.COLUMN_VERSION + " FROM "
+                + ItemEntry.TABLE_NAME + ";");
+        replaceBooksTable(db, newTable);
+
+        createIndex(db, ItemEntry.COLUMN_TITLE);
+        createIndex(db, ItemEntry.COLUMN_AUTHOR);
+        createIndex(db, ItemEntry.COLUMN_PRICE_CENTS);
+        createIndex(db, ItemEntry.COLUMN_QUANTITY);
+        createIndex(db, ItemEntry.COLUMN_SUPPLIER_ID);
+        createIsbnIndex(db);
+        createSearchTriggers(db);
+        createVersionTrigger(db);
+
+        // The statistics are summed again from the cents, rather than converted
+        db.execSQL("DROP TABLE " + StatsEntry.TABLE_NAME + ";");
+        createStatsTable(db, ItemEntry.COLUMN_PRICE_CENTS, StatsEntry.COLUMN_STOCK_VALUE_CENTS,
+                "INTEGER");
+    }
+
+    /**
+     * Drops books and gives the rebuilt copy of it its name. The ID sequence is carried
+     * over, so IDs of deleted books are never handed out again.
+     */
+    private static void replaceBooksTable(SQLiteDatabase db, String newTable) {
+        db.execSQL("DELETE FROM sqlite_sequence WHERE name = '" + newTable + "';");
+        db.execSQL("UPDATE sqlite_sequence SET name = '" + newTable + "' WHERE name = '"
+                + ItemEntry.TABLE_NAME + "';");
+
+        db.execSQL("DROP TABLE " + ItemEntry.TABLE_NAME + ";");
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + ItemEntry.TABLE_NAME + ";");
+    }
+
+    /**
+     * Runs the migrations between the two versions in order. SQLiteOpenHelper already calls
+     * {@link #onCreate} and {@link #onUpgrade} inside one transaction, so the steps are not
+     * committed one by one: if any step fails, every step rolls back together and the
+     * database stays at its old version, to be upgraded again on the next open.
+     *
+     * @param db database to migrate
+     * @param oldVersion version the database is currently at
+     * @param newVersion version to migrate to
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (int version = oldVersion; version < newVersion; version++) {
+            Migration migration = MIGRATIONS[version - 1];
+            if (migration.fromVersion != version) {
+                throw new IllegalStateException("Migration at index " + (version - 1)
+                        + " upgrades from version " + migration.fromVersion
+                        + ", expected " + version);
+            }
+
+            migration.migrate(db);
+        }
+    }
+
+    /**
+     * A single schema change that upgrades the database from {@link #fromVersion}
+     * to the next version.
+     */
+    abstract static class Migration {
 
-        // Delete database
-        String SQL_DROP_TABLE_BOOKS =
-                "DROP TABLE IF EXISTS " + ItemEntry.TABLE_NAME + ";";
+        /** Version this migration upgrades from */
+        final int fromVersion;
 
-        db.execSQL(SQL_DROP_TABLE_BOOKS);
+        Migration(int fromVersion) {
+            this.fromVersion = fromVersion;
+        }
 
-        onCreate(db);
+        /**
+         * Applies the schema change. Called inside the transaction of the whole upgrade.
+         */
+        abstract void migrate(SQLiteDatabase db);
     }
 }
@@ -0,0 +1,267 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentProvider;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.example.android.inventory.data.InventoryContract.ItemEntry;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes the books of a {@link RowSource} to a pipe as CSV or JSON, one row at a time. The
+ * books are read in chunks in ID order, each chunk a new query for the books after the last
+ * one written, so the export of any catalog size only ever holds one chunk and one write
+ * buffer. Every chunk is stepped through once, and a book deleted or added while the export
+ * runs can't shift the books after it, so none is skipped or written twice.
+ *
+ * A {@link ItemEntry#COLUMN_PRICE_CENTS} column is written as {@link ItemEntry#COLUMN_PRICE}
+ * with exactly two decimals, so exports read as they did before prices were stored in cents
+ * and import back to the same cents.
+ */
+class InventoryExporter implements ContentProvider.PipeDataWriter<InventoryExporter.RowSource> {
+
+    private static final String LOG_TAG = InventoryExporter.class.getSimpleName();
+
+    /** Size of the buffer rows are written through, in chars */
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Source of the books of an export
+     */
+    interface RowSource {
+
+        /**
+         * Return the next chunk of books, those after the book with the given ID in ID order,
+         * with an {@link ItemEntry#_ID} column; a chunk without books ends the export
+         *
+         * @param id ID of the last book written, or 0 for the first chunk
+         */
+        Cursor rowsAfter(long id);
+    }
+
+    @Override
+    public void writeDataToPipe(@NonNull ParcelFileDescriptor output, @NonNull Uri uri,
+                                @NonNull String mimeType, @Nullable Bundle opts,
+                                @Nullable RowSource rows) {
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(output.getFileDescriptor()), "UTF-8"), BUFFER_SIZE);
+            if (ItemEntry.EXPORT_JSON_TYPE.equals(mimeType)) {
+                writeJson(writer, rows);
+            } else {
+                writeCsv(writer, rows);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            // Usually the reader closed its end of the pipe early
+            Log.w(LOG_TAG, "Export of " + uri + " stopped", e);
+        } finally {
+            // openPipeHelper() closes the pipe itself once this returns
+            closeQuietly(writer);
+        }
+    }
+
+    /**
+     * Write a header line with the column names, then one line per row
+     */
+    static void writeCsv(Writer writer, RowSource rows) throws IOException {
+        Cursor cursor = rows.rowsAfter(0);
+        try {
+            String[] columns = columnNames(cursor);
+            int priceIndex = cursor.getColumnIndex(ItemEntry.COLUMN_PRICE_CENTS);
+            for (int index = 0; index < columns.length; index++) {
+                if (index > 0) {
+                    writer.write(',');
+                }
+                writeCsvValue(writer, columns[index]);
+            }
+            writer.write("\r\n");
+
+            do {
+                while (cursor.moveToNext()) {
+                    for (int index = 0; index < columns.length; index++) {
+                        if (index > 0) {
+                            writer.write(',');
+                        }
+                        if (cursor.isNull(index)) {
+                            continue;
+                        }
+                        if (index == priceIndex) {
+                            writer.write(InventoryCursor.formatPrice(cursor.getLong(index)));
+                        } else {
+                            writeCsvValue(writer, cursor.getString(index));
+                        }
+                    }
+                    writer.write("\r\n");
+                }
+            } while ((cursor = nextChunk(rows, cursor)) != null);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Write a JSON array with one object per row, keyed by column name
+     */
+    static void writeJson(Writer writer, RowSource rows) throws IOException {
+        Cursor cursor = rows.rowsAfter(0);
+        try {
+            String[] columns = columnNames(cursor);
+            int priceIndex = cursor.getColumnIndex(ItemEntry.COLUMN_PRICE_CENTS);
+            writer.write('[');
+            boolean first = true;
+            do {
+                while (cursor.moveToNext()) {
+                    writer.write(first ? "\n{" : ",\n{");
+                    first = false;
+                    writeJsonRow(writer, cursor, columns, priceIndex);
+                    writer.write('}');
+                }
+            } while ((cursor = nextChunk(rows, cursor)) != null);
+            writer.write("\n]\n");
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Write the members of the JSON object of the current row
+     */
+    private static void writeJsonRow(Writer writer, Cursor cursor, String[] columns,
+                                     int priceIndex) throws IOException {
+        for (int index = 0; index < columns.length; index++) {
+            if (index > 0) {
+                writer.write(',');
+            }
+            writeJsonString(writer, columns[index]);
+            writer.write(':');
+            if (index == priceIndex && !cursor.isNull(index)) {
+                writer.write(InventoryCursor.formatPrice(cursor.getLong(index)));
+                continue;
+            }
+            switch (cursor.getType(index)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    writer.write("null");
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    writer.write(Long.toString(cursor.getLong(index)));
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    writer.write(Double.toString(cursor.getDouble(index)));
+                    break;
+                default:
+                    writeJsonString(writer, cursor.getString(index));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Close the given chunk, read to its end, and return the chunk after it, or null if it
+     * held no books
+     */
+    private static Cursor nextChunk(RowSource rows, Cursor chunk) {
+        long lastId = chunk.moveToLast()
+                ? chunk.getLong(chunk.getColumnIndexOrThrow(ItemEntry._ID)) : -1;
+        chunk.close();
+        return lastId == -1 ? null : rows.rowsAfter(lastId);
+    }
+
+    /**
+     * Return the names the columns of the cursor are written under
+     */
+    private static String[] columnNames(Cursor cursor) {
+        String[] columns = cursor.getColumnNames().clone();
+        int priceIndex = cursor.getColumnIndex(ItemEntry.COLUMN_PRICE_CENTS);
+        if (priceIndex >= 0) {
+            columns[priceIndex] = ItemEntry.COLUMN_PRICE;
+        }
+        return columns;
+    }
+
+    /**
+     * Write a CSV field, quoted if it holds a comma, quote or line break (RFC 4180)
+     */
+    static void writeCsvValue(Writer writer, String value) throws IOException {
+        boolean quote = false;
+        for (int index = 0; index < value.length() && !quote; index++) {
+            char c = value.charAt(index);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+
+        writer.write('"');
+        for (int index = 0; index < value.length(); index++) {
+            char c = value.charAt(index);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    /**
+     * Write a JSON string literal, escaping quotes, backslashes and control characters
+     */
+    static void writeJsonString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int index = 0; index < value.length(); index++) {
+            char c = value.charAt(index);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+                    break;
+            }
+        }
+        writer.write('"');
+    }
+
+    private static void closeQuietly(Writer writer) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            // Nothing left to do with a pipe that won't close
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteConstraintException;
+import android.net.Uri;
+
+import com.example.android.inventory.data.InventoryContract.ItemEntry;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Imports books from CSV, e.g. a supplier spreadsheet or a catalog export.
+ *
+ * The first record names the columns; columns that are not {@link ItemEntry} book columns,
+ * such as {@link ItemEntry#_ID}, are ignored. Records are read one at a time, checked with
+ * the same rules as {@link InventoryProvider#insert}, and inserted in batches, each batch in
+ * a single transaction. Records that fail the checks, or whose ISBN is already taken by a
+ * book in the catalog or earlier in the file, are skipped and reported with their line
+ * number, so one bad row never stops the import.
+ *
+ * Imports read and write the database, so never run one on the main thread;
+ * {@link InventoryWriter#importCsv} runs one in the background.
+ */
+public final class InventoryImporter {
+
+    /** Default number of books inserted per transaction */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** Rejections kept for the result; further ones are only counted */
+    static final int MAX_REPORTED_REJECTIONS = 100;
+
+    /**
+     * A record that was not imported
+     */
+    public static final class Rejection {
+
+        /** Line of the file the record starts on, starting at 1 */
+        public final int line;
+
+        /** Why the record was rejected */
+        public final String reason;
+
+        Rejection(int line, String reason) {
+            this.line = line;
+            this.reason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return "Line " + line + ": " + reason;
+        }
+    }
+
+    /**
+     * Outcome of an import
+     */
+    public static final class Result {
+
+        /** Number of books inserted */
+        public final int imported;
+
+        /** Number of records rejected */
+        public final int rejected;
+
+        /** The first {@link #MAX_REPORTED_REJECTIONS} rejected records, in file order */
+        public final List<Rejection> rejections;
+
+        Result(int imported, int rejected, List<Rejection> rejections) {
+            this.imported = imported;
+            this.rejected = rejected;
+            this.rejections = Collections.unmodifiableList(rejections);
+        }
+    }
+
+    // Empty constructor to prevent instantiation of static utility class
+    private InventoryImporter() {}
+
+    /**
+     * Import the CSV file at the given content or file URI
+     *
+     * @param batchSize number of books inserted per transaction
+     */
+    public static Result importCsv(ContentResolver resolver, Uri source, int batchSize)
+            throws IOException {
+        InputStream in = resolver.openInputStream(source);
+        if (in == null) {
+            throw new FileNotFoundException("Cannot open " + source);
+        }
+        return importCsv(resolver, in, batchSize);
+    }
+
+    /**
+     * Import CSV from the given stream, e.g. a {@link java.io.FileInputStream} over a file
+     * descriptor, and close it. Batches inserted before an I/O error stay inserted.
+     *
+     * @param batchSize number of books inserted per transaction
+     */
+    public static Result importCsv(ContentResolver resolver, InputStream in, int batchSize)
+            throws IOException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Import requires a batch size greater than 0");
+        }
+
+        CsvReader reader = new CsvReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String[] header = reader.readRecord();
+            if (header == null) {
+                return new Result(0, 0, new ArrayList<Rejection>());
+            }
+
+            // Book column of each field, or null for fields that are ignored
+            String[] columns = new String[header.length];
+            for (int index = 0; index < header.length; index++) {
+                String name = header[index].trim();
+                if (InventoryStatements.BOOK_COLUMNS.contains(name)) {
+                    columns[index] = name;
+                }
+            }
+
+            // Every record read is either imported or rejected
+            int records = 0;
+            int imported = 0;
+            List<Rejection> rejections = new ArrayList<>();
+            List<ContentValues> batch = new ArrayList<>(batchSize);
+            List<Integer> lines = new ArrayList<>(batchSize);
+
+            String[] record;
+            while ((record = reader.readRecord()) != null) {
+                // Skip blank lines
+                if (record.length == 1 && record[0].trim().isEmpty()) {
+                    continue;
+                }
+
+                records++;
+                try {
+                    batch.add(readBook(columns, record));
+                    lines.add(reader.getRecordLine());
+                } catch (IllegalArgumentException e) {
+                    reject(rejections, reader.getRecordLine(), e.getMessage());
+                    continue;
+                }
+
+                if (batch.size() == batchSize) {
+                    imported += insert(resolver, batch, lines, rejections);
+                }
+            }
+            imported += insert(resolver, batch, lines, rejections);
+
+            return new Result(imported, records - imported, rejections);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Return the values of the book in the given record, checked like a new book
+     *
+     * @throws IllegalArgumentException naming what is wrong with the record
+     */
+    private static ContentValues readBook(String[] columns, String[] record) {
+        if (record.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " fields, found "
+                    + record.length);
+        }
+
+        ContentValues contentValues = new ContentValues();
+        for (int index = 0; index < columns.length; index++) {
+            String column = columns[index];
+            String value = record[index].trim();
+            if (column == null || value.isEmpty()) {
+                continue;
+            }
+
+            try {
+                switch (column) {
+                    case ItemEntry.COLUMN_PRICE:
+                        // Straight from the text to cents, so 0.29 stays 29 cents
+                        contentValues.put(ItemEntry.COLUMN_PRICE_CENTS,
+                                ItemEntry.parsePriceCents(value));
+                        break;
+                    case ItemEntry.COLUMN_PRICE_CENTS:
+                        contentValues.put(column, Long.valueOf(value));
+                        break;
+                    case ItemEntry.COLUMN_QUANTITY:
+                        contentValues.put(column, Integer.valueOf(value));
+                        break;
+                    default:
+                        contentValues.put(column, value);
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + column + " - " + value);
+            }
+        }
+
+        InventoryProvider.validateBook(contentValues);
+        return contentValues;
+    }
+
+    /**
+     * Insert the batch in one transaction and clear it; return the number of books inserted.
+     * A duplicate ISBN rolls the whole transaction back, so the batch is then inserted again
+     * one book at a time and only the books that still fail are rejected.
+     *
+     * @param lines line of each book of the batch, cleared with it
+     * @param rejections rejected records so far, which the rejected books are added to
+     */
+    private static int insert(ContentResolver resolver, List<ContentValues> batch,
+                              List<Integer> lines, List<Rejection> rejections) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        int inserted;
+        try {
+            inserted = resolver.bulkInsert(ItemEntry.CONTENT_URI,
+                    batch.toArray(new ContentValues[batch.size()]));
+        } catch (SQLiteConstraintException e) {
+            inserted = 0;
+            for (int index = 0; index < batch.size(); index++) {
+                if (resolver.insert(ItemEntry.CONTENT_URI, batch.get(index)) != null) {
+                    inserted++;
+                    continue;
+                }
+
+                // The books were checked already, so only the unique ISBN can stop one
+                String isbn = batch.get(index).getAsString(ItemEntry.COLUMN_ISBN);
+                reject(rejections, lines.get(index), isbn == null
+                        ? "Book could not be inserted" : "Duplicate ISBN - " + isbn);
+            }
+        }
+        batch.clear();
+        lines.clear();
+        return inserted;
+    }
+
+    /**
+     * Add a rejection in file order, keeping only the first {@link #MAX_REPORTED_REJECTIONS};
+     * rejections of a batch arrive after those of records read while it filled
+     */
+    private static void reject(List<Rejection> rejections, int line, String reason) {
+        int index = rejections.size();
+        while (index > 0 && rejections.get(index - 1).line > line) {
+            index--;
+        }
+        if (index < MAX_REPORTED_REJECTIONS) {
+            rejections.add(index, new Rejection(line, reason));
+            if (rejections.size() > MAX_REPORTED_REJECTIONS) {
+                rejections.remove(MAX_REPORTED_REJECTIONS);
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.inventory.data.InventoryContract.DailySalesEntry;
+import com.example.android.inventory.data.InventoryContract.LedgerEntry;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the sales ledger bounded by rolling old entries up into daily per-book snapshots.
+ *
+ * {@link InventoryProvider} reports the entries its writes append, through the trigger on
+ * the quantity of books. Compaction runs on a background thread after every
+ * {@link #DEFAULT_COMPACT_EVERY} entries and at least once a day while sales come in, so
+ * the ledger never holds much more than the retention window.
+ */
+class InventoryLedger {
+
+    private static final String LOG_TAG = InventoryLedger.class.getSimpleName();
+
+    /** Default number of appended entries that start a compaction */
+    static final int DEFAULT_COMPACT_EVERY = 1000;
+
+    /** Adds up the ledger entries before a time per book and day, sales and restocks apart */
+    private static final String SQL_SUM_ENTRIES = "SELECT " + LedgerEntry.COLUMN_BOOK_ID + ", "
+            + LedgerEntry.COLUMN_TIMESTAMP + " / " + DailySalesEntry.MILLIS_PER_DAY + " AS day, "
+            + "SUM(CASE WHEN " + LedgerEntry.COLUMN_CHANGE + " < 0 THEN -"
+            + LedgerEntry.COLUMN_CHANGE + " ELSE 0 END), "
+            + "SUM(CASE WHEN " + LedgerEntry.COLUMN_CHANGE + " > 0 THEN "
+            + LedgerEntry.COLUMN_CHANGE + " ELSE 0 END) "
+            + "FROM " + LedgerEntry.TABLE_NAME + " WHERE " + LedgerEntry.COLUMN_TIMESTAMP + " < ? "
+            + "GROUP BY " + LedgerEntry.COLUMN_BOOK_ID + ", day";
+
+    /** Adds to the snapshot of a book and day, if there is one */
+    private static final String SQL_ADD_TO_SNAPSHOT = "UPDATE " + DailySalesEntry.TABLE_NAME
+            + " SET " + DailySalesEntry.COLUMN_UNITS_SOLD + " = "
+            + DailySalesEntry.COLUMN_UNITS_SOLD + " + ?, "
+            + DailySalesEntry.COLUMN_UNITS_RESTOCKED + " = "
+            + DailySalesEntry.COLUMN_UNITS_RESTOCKED + " + ? WHERE "
+            + DailySalesEntry.COLUMN_BOOK_ID + " = ? AND " + DailySalesEntry.COLUMN_DAY + " = ?";
+
+    /** Creates the snapshot of a book and day */
+    private static final String SQL_INSERT_SNAPSHOT = "INSERT INTO "
+            + DailySalesEntry.TABLE_NAME + " (" + DailySalesEntry.COLUMN_UNITS_SOLD + ", "
+            + DailySalesEntry.COLUMN_UNITS_RESTOCKED + ", " + DailySalesEntry.COLUMN_BOOK_ID
+            + ", " + DailySalesEntry.COLUMN_DAY + ") VALUES (?, ?, ?, ?)";
+
+    private final InventoryDbHelper dbHelper;
+
+    private final int retentionDays;
+
+    private final int compactEvery;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /** Entries appended since the last compaction was started */
+    private int appended;
+
+    /** Time the last compaction was started, 0 if none was */
+    private long lastCompactionMillis;
+
+    private final Runnable compaction = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                compact(cutoff(System.currentTimeMillis(), retentionDays));
+            } catch (RuntimeException e) {
+                // Leave the entries in the ledger for the next compaction
+                Log.e(LOG_TAG, "Ledger compaction failed", e);
+            }
+        }
+    };
+
+    /**
+     * @param retentionDays whole days of entries kept in the ledger besides today's
+     * @param compactEvery number of appended entries that start a compaction
+     */
+    InventoryLedger(InventoryDbHelper dbHelper, int retentionDays, int compactEvery) {
+        this.dbHelper = dbHelper;
+        this.retentionDays = retentionDays;
+        this.compactEvery = compactEvery;
+    }
+
+    /**
+     * Report that the given number of entries were appended; starts a background
+     * compaction when one is due
+     */
+    synchronized void entriesAppended(int count) {
+        appended += count;
+        long now = System.currentTimeMillis();
+        if (appended >= compactEvery
+                || now - lastCompactionMillis >= DailySalesEntry.MILLIS_PER_DAY) {
+            appended = 0;
+            lastCompactionMillis = now;
+            executor.execute(compaction);
+        }
+    }
+
+    /**
+     * Roll every entry from before the given time up into the daily snapshots and remove it
+     * from the ledger, in one transaction. Return the number of entries rolled up.
+     */
+    int compact(long beforeMillis) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        String before = Long.toString(beforeMillis);
+
+        SQLiteStatement addToSnapshot = db.compileStatement(SQL_ADD_TO_SNAPSHOT);
+        SQLiteStatement insertSnapshot = db.compileStatement(SQL_INSERT_SNAPSHOT);
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.rawQuery(SQL_SUM_ENTRIES, new String[]{before});
+            try {
+                while (cursor.moveToNext()) {
+                    bindSums(addToSnapshot, cursor);
+                    if (addToSnapshot.executeUpdateDelete() == 0) {
+                        bindSums(insertSnapshot, cursor);
+                        insertSnapshot.executeInsert();
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+
+            int compacted = db.delete(LedgerEntry.TABLE_NAME,
+                    LedgerEntry.COLUMN_TIMESTAMP + " < ?", new String[]{before});
+            db.setTransactionSuccessful();
+            return compacted;
+        } finally {
+            db.endTransaction();
+            addToSnapshot.close();
+            insertSnapshot.close();
+        }
+    }
+
+    /**
+     * Bind the sums of one book and day, in the argument order both snapshot statements share
+     */
+    private static void bindSums(SQLiteStatement statement, Cursor sums) {
+        statement.bindLong(1, sums.getLong(2));
+        statement.bindLong(2, sums.getLong(3));
+        statement.bindLong(3, sums.getLong(0));
+        statement.bindLong(4, sums.getLong(1));
+    }
+
+    /**
+     * Return the start of the UTC day the given number of days before the given time
+     */
+    static long cutoff(long nowMillis, int retentionDays) {
+        return (nowMillis / DailySalesEntry.MILLIS_PER_DAY - retentionDays)
+                * DailySalesEntry.MILLIS_PER_DAY;
+    }
+
+    /**
+     * Stop starting compactions; one that is running finishes first
+     */
+    void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.android.inventory.data;
+
+import android.os.Bundle;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts what {@link InventoryProvider} does, per URI pattern and operation: how often it ran,
+ * how often it failed, how many rows it returned or changed, and how long it took, as a
+ * histogram of latencies. Transactions the provider opens are timed the same way.
+ *
+ * Recording takes a handful of atomic adds into arrays allocated up front, so it allocates
+ * nothing and never blocks a binder thread. Reading a snapshot while operations run may see
+ * an operation counted but not yet its rows; each counter on its own is exact.
+ */
+class InventoryMetrics {
+
+    /** Operation kinds, in the order they are reported */
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int UPDATE = 2;
+    static final int DELETE = 3;
+    static final int CALL = 4;
+    static final int TRANSACTION = 5;
+
+    /** Names of the operation kinds, as they are reported */
+    private static final String[] OPERATIONS = {
+            "query", "insert", "update", "delete", "call", "transaction"
+    };
+
+    // Layout of the counters of one URI pattern and operation
+    private static final int COUNT = 0;
+    private static final int ERRORS = 1;
+    private static final int ROWS = 2;
+    private static final int TOTAL_NANOS = 3;
+    private static final int HISTOGRAM = 4;
+    private static final int STRIDE = HISTOGRAM + InventoryContract.METRICS_LATENCY_BUCKETS;
+
+    /** URI patterns the counters are kept for, by index */
+    private final String[] patterns;
+
+    /** Counters of every URI pattern and operation, {@link #STRIDE} apart */
+    private final AtomicLongArray counters;
+
+    /**
+     * @param patterns names of the URI patterns that are passed to {@link #record} by index
+     */
+    InventoryMetrics(String[] patterns) {
+        this.patterns = patterns.clone();
+        counters = new AtomicLongArray(patterns.length * OPERATIONS.length * STRIDE);
+    }
+
+    /**
+     * Record an operation that started at the given {@link System#nanoTime()} and ends now.
+     * Operations on a URI that matched no pattern are not recorded.
+     *
+     * @param pattern index of the URI pattern
+     * @param operation one of the operation kinds
+     * @param startNanos when the operation started
+     * @param rows rows the operation returned or changed
+     * @param failed whether the operation threw
+     */
+    void record(int pattern, int operation, long startNanos, long rows, boolean failed) {
+        long nanos = System.nanoTime() - startNanos;
+        if (pattern < 0 || pattern >= patterns.length) {
+            return;
+        }
+        int base = (pattern * OPERATIONS.length + operation) * STRIDE;
+        counters.incrementAndGet(base + COUNT);
+        if (failed) {
+            counters.incrementAndGet(base + ERRORS);
+        }
+        if (rows > 0) {
+            counters.addAndGet(base + ROWS, rows);
+        }
+        counters.addAndGet(base + TOTAL_NANOS, nanos);
+        counters.incrementAndGet(base + HISTOGRAM + bucketOf(nanos));
+    }
+
+    /**
+     * Return the histogram bucket of the given latency: bucket i holds latencies of less
+     * than 2^i microseconds that don't fit an earlier bucket, and the last bucket holds
+     * everything longer
+     */
+    static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = micros <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, InventoryContract.METRICS_LATENCY_BUCKETS - 1);
+    }
+
+    /**
+     * Return the upper bound of the given histogram bucket in microseconds, or
+     * {@link Long#MAX_VALUE} for the last bucket
+     */
+    static long bucketLimitMicros(int bucket) {
+        return bucket == InventoryContract.METRICS_LATENCY_BUCKETS - 1 ? Long.MAX_VALUE
+                : 1L << bucket;
+    }
+
+    /** Forget everything recorded so far */
+    void reset() {
+        for (int index = 0; index < counters.length(); index++) {
+            counters.set(index, 0);
+        }
+    }
+
+    /**
+     * Return a snapshot of the counters, one Bundle per URI pattern and operation that ran,
+     * keyed as described by {@link InventoryContract#METHOD_METRICS}
+     */
+    Bundle snapshot() {
+        Bundle snapshot = new Bundle();
+        for (int pattern = 0; pattern < patterns.length; pattern++) {
+            for (int operation = 0; operation < OPERATIONS.length; operation++) {
+                int base = (pattern * OPERATIONS.length + operation) * STRIDE;
+                long count = counters.get(base + COUNT);
+                if (count == 0) {
+                    continue;
+                }
+                long[] histogram = new long[InventoryContract.METRICS_LATENCY_BUCKETS];
+                for (int bucket = 0; bucket < histogram.length; bucket++) {
+                    histogram[bucket] = counters.get(base + HISTOGRAM + bucket);
+                }
+
+                Bundle metrics = new Bundle();
+                metrics.putLong(InventoryContract.EXTRA_COUNT, count);
+                metrics.putLong(InventoryContract.EXTRA_ERRORS, counters.get(base + ERRORS));
+                metrics.putLong(InventoryContract.EXTRA_ROWS, counters.get(base + ROWS));
+                metrics.putLong(InventoryContract.EXTRA_TOTAL_MICROS,
+                        counters.get(base + TOTAL_NANOS) / 1000);
+                metrics.putLongArray(InventoryContract.EXTRA_LATENCY_HISTOGRAM, histogram);
+                snapshot.putBundle(OPERATIONS[operation] + " " + patterns[pattern], metrics);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Print one line per URI pattern and operation that ran, with the mean latency and the
+     * bucket limits the median, 90th and 99th percentile latencies fall under
+     */
+    void dump(PrintWriter writer) {
+        for (int pattern = 0; pattern < patterns.length; pattern++) {
+            for (int operation = 0; operation < OPERATIONS.length; operation++) {
+                int base = (pattern * OPERATIONS.length + operation) * STRIDE;
+                long count = counters.get(base + COUNT);
+                if (count == 0) {
+                    continue;
+                }
+                writer.println(String.format(Locale.US,
+                        "  %s %s: count=%d errors=%d rows=%d mean=%dus p50<%s p90<%s p99<%s",
+                        OPERATIONS[operation], patterns[pattern], count,
+                        counters.get(base + ERRORS), counters.get(base + ROWS),
+                        counters.get(base + TOTAL_NANOS) / 1000 / count,
+                        percentile(base, count, 0.50), percentile(base, count, 0.90),
+                        percentile(base, count, 0.99)));
+            }
+        }
+    }
+
+    /**
+     * Return the upper limit of the histogram bucket the given fraction of operations falls
+     * under, e.g. "512us"
+     */
+    private String percentile(int base, long count, double fraction) {
+        long seen = 0;
+        for (int bucket = 0; bucket < InventoryContract.METRICS_LATENCY_BUCKETS; bucket++) {
+            seen += counters.get(base + HISTOGRAM + bucket);
+            if (seen >= Math.ceil(count * fraction)) {
+                long limit = bucketLimitMicros(bucket);
+                return limit == Long.MAX_VALUE ? "inf" : limit + "us";
+            }
+        }
+        return "inf";
+    }
+}
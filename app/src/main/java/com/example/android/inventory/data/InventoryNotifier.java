@@ -0,0 +1,222 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.net.Uri;
+
+import com.example.android.inventory.data.InventoryContract.ItemEntry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the changes {@link InventoryProvider} makes and notifies observers at the end of
+ * each short window instead of once per write.
+ *
+ * A window that only changed single books, no more than {@link #DEFAULT_MAX_ROW_NOTIFICATIONS}
+ * of them, is sent on the URI of each book (books/#), so an observer of the whole catalog
+ * can refresh just the rows that changed and observers of other books hear nothing. A
+ * window that inserted or deleted books, or changed more books than that, is sent once on
+ * {@link ItemEntry#CONTENT_URI}, as one notification is cheaper for every observer than
+ * many.
+ */
+class InventoryNotifier {
+
+    /** Default time changes are collected for before observers are notified */
+    static final long DEFAULT_WINDOW_MILLIS = 50;
+
+    /** Default number of changed books a window notifies one by one */
+    static final int DEFAULT_MAX_ROW_NOTIFICATIONS = 10;
+
+    private final ContentResolver resolver;
+
+    private final long windowMillis;
+
+    private final int maxRowNotifications;
+
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor();
+
+    /** IDs of books changed during the current window */
+    private final Set<Long> changedIds = new HashSet<>();
+
+    /** Whether books were inserted, deleted or changed in bulk during the current window */
+    private boolean tableChanged;
+
+    /** Whether a flush is scheduled for the current window */
+    private boolean flushScheduled;
+
+    /** Changes reported by the batch open on each thread, or null while none is open */
+    private final ThreadLocal<long[]> batchChanges = new ThreadLocal<>();
+
+    /** Number of changes reported during the current window */
+    private long pendingChanges;
+
+    /** Number of changes reported by the provider */
+    private long changesRequested;
+
+    /** Number of notifyChange() calls actually made */
+    private long notificationsFired;
+
+    /** Number of changes that were sent as part of another change's notification */
+    private long changesCoalesced;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param windowMillis time changes are collected for before observers are notified
+     * @param maxRowNotifications number of changed books a window notifies one by one;
+     * a window that changed more is sent as a single table change
+     */
+    InventoryNotifier(ContentResolver resolver, long windowMillis, int maxRowNotifications) {
+        this.resolver = resolver;
+        this.windowMillis = windowMillis;
+        this.maxRowNotifications = maxRowNotifications;
+    }
+
+    /**
+     * Report that a single book changed but no book was added or removed
+     */
+    void bookChanged(long bookId) {
+        if (inBatch()) {
+            return;
+        }
+        synchronized (this) {
+            changesRequested++;
+            pendingChanges++;
+            changedIds.add(bookId);
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Report that books were inserted or deleted, or that an unknown set of books changed
+     */
+    void tableChanged() {
+        if (inBatch()) {
+            return;
+        }
+        synchronized (this) {
+            changesRequested++;
+            pendingChanges++;
+            tableChanged = true;
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Count a change toward the batch open on this thread, if there is one
+     */
+    private boolean inBatch() {
+        long[] batch = batchChanges.get();
+        if (batch == null) {
+            return false;
+        }
+        batch[0]++;
+        return true;
+    }
+
+    /** Number of changes reported by the provider so far */
+    synchronized long getChangesRequested() {
+        return changesRequested;
+    }
+
+    /** Number of notifications sent to observers so far, one per URI notified */
+    synchronized long getNotificationsFired() {
+        return notificationsFired;
+    }
+
+    /**
+     * Number of changes that were folded into another notification so far; changes still
+     * waiting for the end of their window are not counted yet
+     */
+    synchronized long getChangesCoalesced() {
+        return changesCoalesced;
+    }
+
+    /**
+     * Collect the changes this thread reports until {@link #endBatch}, e.g. while a batch is
+     * inside its transaction, instead of sending them
+     */
+    void beginBatch() {
+        batchChanges.set(new long[1]);
+    }
+
+    /**
+     * End the batch open on this thread. If any of it was committed, its changes are sent
+     * at once as a single table change, with whatever else is pending; if it was rolled
+     * back, observers have nothing to hear and its changes are dropped.
+     *
+     * @param committed whether any change of the batch was committed
+     */
+    void endBatch(boolean committed) {
+        long changes = batchChanges.get()[0];
+        batchChanges.remove();
+        if (!committed || changes == 0) {
+            return;
+        }
+        synchronized (this) {
+            changesRequested += changes;
+            pendingChanges += changes;
+            tableChanged = true;
+        }
+        flush();
+    }
+
+    /**
+     * Send the pending notifications now instead of waiting for the end of the window
+     */
+    void flush() {
+        List<Uri> uris = new ArrayList<>();
+        synchronized (this) {
+            flushScheduled = false;
+            if (pendingChanges == 0) {
+                return;
+            }
+            if (tableChanged || changedIds.size() > maxRowNotifications) {
+                uris.add(ItemEntry.CONTENT_URI);
+            } else {
+                for (long bookId : changedIds) {
+                    uris.add(ContentUris.withAppendedId(ItemEntry.CONTENT_URI, bookId));
+                }
+            }
+            notificationsFired += uris.size();
+            changesCoalesced += pendingChanges - uris.size();
+            pendingChanges = 0;
+            tableChanged = false;
+            changedIds.clear();
+        }
+
+        // Notify outside the lock; observers may call back into the provider
+        for (Uri uri : uris) {
+            resolver.notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Stop sending notifications; pending ones are sent first
+     */
+    void shutdown() {
+        synchronized (this) {
+            scheduler.shutdown();
+        }
+        flush();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled && !scheduler.isShutdown()) {
+            flushScheduled = true;
+            scheduler.schedule(flush, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
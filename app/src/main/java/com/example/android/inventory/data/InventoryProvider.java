@@ -1,18 +1,46 @@
 package com.example.android.inventory.data;
 
+import android.content.ClipDescription;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.content.res.AssetFileDescriptor;
+import android.database.AbstractWindowedCursor;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.text.TextUtils;
 import android.util.Log;
 import android.util.Patterns;
 
+import com.example.android.inventory.data.InventoryContract.DailySalesEntry;
 import com.example.android.inventory.data.InventoryContract.ItemEntry;
+import com.example.android.inventory.data.InventoryContract.LedgerEntry;
+import com.example.android.inventory.data.InventoryContract.StatsEntry;
+import com.example.android.inventory.data.InventoryContract.SupplierEntry;
+
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
 /**
  * {@link ContentProvider} for Inventory app
  */
@@ -27,12 +55,133 @@ public class InventoryProvider extends ContentProvider {
     /** SQLiteDatabase object to perform operations on database */
     private SQLiteDatabase db;
 
+    /** Coalesces change notifications to observers */
+    private InventoryNotifier notifier;
+
+    /** Compiled statements for the most frequent writes, one set per thread */
+    private final ThreadLocal<InventoryStatements> statements = new ThreadLocal<>();
+
+    /** Compiled statements of every thread, closed on shutdown; guarded by itself */
+    private final List<InventoryStatements> allStatements = new ArrayList<>();
+
+    /** Compacts the sales ledger in the background */
+    private InventoryLedger ledger;
+
+    /** Streams the catalog export into pipes */
+    private final InventoryExporter exporter = new InventoryExporter();
+
+    /** Counts and times every operation, see {@link InventoryContract#METHOD_METRICS} */
+    private final InventoryMetrics metrics = new InventoryMetrics(URI_PATTERNS);
+
+    /** Recently read books, so opening a book again does not read the database */
+    private final InventoryRowCache rowCache = new InventoryRowCache(
+            InventoryRowCache.DEFAULT_MAX_ENTRIES, InventoryRowCache.DEFAULT_MAX_BYTES);
+
     /** Sets integer value for multiple rows in Books table */
     private static final int BOOKS = 100;
 
     /** Sets integer value for a single row in Books table */
     private static final int BOOK_ID = 101;
 
+    /** Sets integer value for a full-text search of Books table */
+    private static final int BOOK_SEARCH = 102;
+
+    /** Sets integer value for the catalog statistics */
+    private static final int STATS = 103;
+
+    /** Sets integer value for the streamed export of Books table */
+    private static final int BOOK_EXPORT = 104;
+
+    /** Sets integer value for a lookup of Books table by ISBN */
+    private static final int BOOK_ISBN = 105;
+
+    /** Sets integer value for the sales ledger */
+    private static final int LEDGER = 106;
+
+    /** Sets integer value for the daily sales snapshots */
+    private static final int DAILY_SALES = 107;
+
+    /** Sets integer value for multiple rows in Suppliers table */
+    private static final int SUPPLIERS = 108;
+
+    /** Sets integer value for a single row in Suppliers table */
+    private static final int SUPPLIER_ID = 109;
+
+    /** URI patterns in the order of their match codes, from {@link #BOOKS}, as the metrics name them */
+    private static final String[] URI_PATTERNS = {
+            InventoryContract.PATH_BOOKS,
+            InventoryContract.PATH_BOOKS + "/#",
+            InventoryContract.PATH_BOOKS + "/" + InventoryContract.PATH_SEARCH + "/*",
+            InventoryContract.PATH_STATS,
+            InventoryContract.PATH_BOOKS + "/" + InventoryContract.PATH_EXPORT,
+            InventoryContract.PATH_BOOKS + "/" + InventoryContract.PATH_ISBN + "/*",
+            InventoryContract.PATH_LEDGER,
+            InventoryContract.PATH_DAILY_SALES,
+            InventoryContract.PATH_SUPPLIERS,
+            InventoryContract.PATH_SUPPLIERS + "/#"
+    };
+
+    /** Start time of a transaction nested in another, which is timed as a whole */
+    private static final long NESTED_TRANSACTION = Long.MIN_VALUE;
+
+    /** Books with their supplier joined in, which every query of books reads */
+    private static final String BOOKS_JOIN_SUPPLIERS = ItemEntry.TABLE_NAME + " JOIN "
+            + SupplierEntry.TABLE_NAME + " USING (" + ItemEntry.COLUMN_SUPPLIER_ID + ")";
+
+    /** Supplier columns as stored, in the order books are written with them */
+    private static final String[] SUPPLIER_COLUMNS = {
+            SupplierEntry.COLUMN_NAME,
+            SupplierEntry.COLUMN_EMAIL,
+            SupplierEntry.COLUMN_PHONE
+    };
+
+    /**
+     * Columns of a book query and what they are read from; a book without a supplier email
+     * reads null, as it did before suppliers had a table of their own, and the price in
+     * dollars is worked out from the price in cents
+     */
+    private static final Map<String, String> BOOK_PROJECTION_MAP = new LinkedHashMap<>();
+
+    /** Column of a search query that holds the match info the results are ranked by */
+    private static final String MATCH_INFO = "match_info";
+
+    /** Columns of a statistics query and what they are read from */
+    private static final Map<String, String> STATS_PROJECTION_MAP = new LinkedHashMap<>();
+
+    /** Columns of a supplier query and what they are read from */
+    private static final Map<String, String> SUPPLIER_PROJECTION_MAP = new LinkedHashMap<>();
+
+    /** Characters a normalized ISBN or barcode may hold: digits and an optional check X */
+    private static final Pattern ISBN_PATTERN = Pattern.compile("[0-9]+X?");
+
+    /**
+     * Columns of the catalog export, in the order they are written; the exporter writes the
+     * price in cents as the price in dollars
+     */
+    private static final String[] EXPORT_COLUMNS = {
+            ItemEntry._ID,
+            ItemEntry.COLUMN_TITLE,
+            ItemEntry.COLUMN_AUTHOR,
+            ItemEntry.COLUMN_PRICE_CENTS,
+            ItemEntry.COLUMN_QUANTITY,
+            ItemEntry.COLUMN_SUPPLIER_NAME,
+            ItemEntry.COLUMN_SUPPLIER_EMAIL,
+            ItemEntry.COLUMN_SUPPLIER_PHONE,
+            ItemEntry.COLUMN_ISBN
+    };
+
+    /**
+     * Books read per query of the catalog export; one chunk easily fits a cursor window, so
+     * every chunk is stepped through once
+     */
+    static final int EXPORT_CHUNK_SIZE = 500;
+
+    /** MIME types the catalog export can be streamed as */
+    private static final String[] EXPORT_TYPES = {
+            ItemEntry.EXPORT_CSV_TYPE,
+            ItemEntry.EXPORT_JSON_TYPE
+    };
+
     private static final UriMatcher uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
     // Static initializer run the first time anything is called from this class
@@ -44,6 +193,61 @@ public class InventoryProvider extends ContentProvider {
 
         uriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
                 InventoryContract.PATH_BOOKS + "/#", BOOK_ID);
+
+        uriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_BOOKS + "/" + InventoryContract.PATH_SEARCH + "/*",
+                BOOK_SEARCH);
+
+        uriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_STATS,
+                STATS);
+
+        uriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_BOOKS + "/" + InventoryContract.PATH_EXPORT, BOOK_EXPORT);
+
+        uriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_BOOKS + "/" + InventoryContract.PATH_ISBN + "/*",
+                BOOK_ISBN);
+
+        uriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_LEDGER,
+                LEDGER);
+
+        uriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_DAILY_SALES, DAILY_SALES);
+
+        uriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY, InventoryContract.PATH_SUPPLIERS,
+                SUPPLIERS);
+
+        uriMatcher.addURI(InventoryContract.CONTENT_AUTHORITY,
+                InventoryContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+
+        for (String column : new String[]{ItemEntry._ID, ItemEntry.COLUMN_TITLE,
+                ItemEntry.COLUMN_AUTHOR, ItemEntry.COLUMN_PRICE_CENTS, ItemEntry.COLUMN_QUANTITY,
+                ItemEntry.COLUMN_SUPPLIER_ID, ItemEntry.COLUMN_SUPPLIER_NAME,
+                ItemEntry.COLUMN_SUPPLIER_PHONE, ItemEntry.COLUMN_ISBN,
+                ItemEntry.COLUMN_VERSION}) {
+            BOOK_PROJECTION_MAP.put(column, column);
+        }
+        BOOK_PROJECTION_MAP.put(ItemEntry.COLUMN_PRICE, ItemEntry.COLUMN_PRICE_CENTS
+                + " / 100.0 AS " + ItemEntry.COLUMN_PRICE);
+        BOOK_PROJECTION_MAP.put(ItemEntry.COLUMN_SUPPLIER_EMAIL, "NULLIF("
+                + ItemEntry.COLUMN_SUPPLIER_EMAIL + ", '') AS " + ItemEntry.COLUMN_SUPPLIER_EMAIL);
+
+        SUPPLIER_PROJECTION_MAP.put(SupplierEntry._ID,
+                SupplierEntry.COLUMN_SUPPLIER_ID + " AS " + SupplierEntry._ID);
+        SUPPLIER_PROJECTION_MAP.put(SupplierEntry.COLUMN_SUPPLIER_ID,
+                SupplierEntry.COLUMN_SUPPLIER_ID);
+        SUPPLIER_PROJECTION_MAP.put(SupplierEntry.COLUMN_NAME, SupplierEntry.COLUMN_NAME);
+        SUPPLIER_PROJECTION_MAP.put(SupplierEntry.COLUMN_EMAIL, "NULLIF("
+                + SupplierEntry.COLUMN_EMAIL + ", '') AS " + SupplierEntry.COLUMN_EMAIL);
+        SUPPLIER_PROJECTION_MAP.put(SupplierEntry.COLUMN_PHONE, SupplierEntry.COLUMN_PHONE);
+
+        for (String column : new String[]{StatsEntry._ID, StatsEntry.COLUMN_STOCK_VALUE_CENTS,
+                StatsEntry.COLUMN_SKU_COUNT, StatsEntry.COLUMN_TOTAL_UNITS,
+                StatsEntry.COLUMN_LOW_STOCK_COUNT}) {
+            STATS_PROJECTION_MAP.put(column, column);
+        }
+        STATS_PROJECTION_MAP.put(StatsEntry.COLUMN_STOCK_VALUE, StatsEntry.COLUMN_STOCK_VALUE_CENTS
+                + " / 100.0 AS " + StatsEntry.COLUMN_STOCK_VALUE);
     }
 
     /**
@@ -52,17 +256,130 @@ public class InventoryProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         dbHelper = new InventoryDbHelper(getContext());
+        notifier = new InventoryNotifier(getContext().getContentResolver(),
+                InventoryNotifier.DEFAULT_WINDOW_MILLIS,
+                InventoryNotifier.DEFAULT_MAX_ROW_NOTIFICATIONS);
+        ledger = new InventoryLedger(dbHelper, LedgerEntry.DEFAULT_RETENTION_DAYS,
+                InventoryLedger.DEFAULT_COMPACT_EVERY);
         return true;
     }
 
+    /**
+     * Close the database; only called by tests, the system never shuts a provider down
+     */
+    @Override
+    public void shutdown() {
+        notifier.shutdown();
+        ledger.shutdown();
+        synchronized (allStatements) {
+            for (InventoryStatements threadStatements : allStatements) {
+                threadStatements.close();
+            }
+            allStatements.clear();
+        }
+        dbHelper.close();
+    }
+
+    /**
+     * Return the compiled write statements of the calling thread, compiling them the first
+     * time a write on the thread needs them. Threads never share statements, so no lock is
+     * taken around them, see {@link InventoryStatements}; compiling waits for the write
+     * connection, so it isn't done under a lock either.
+     */
+    private InventoryStatements statements() {
+        InventoryStatements threadStatements = statements.get();
+        if (threadStatements == null) {
+            threadStatements = new InventoryStatements(dbHelper.getWritableDatabase());
+            statements.set(threadStatements);
+            synchronized (allStatements) {
+                allStatements.add(threadStatements);
+            }
+        }
+        return threadStatements;
+    }
+
+    /**
+     * Return a query builder over books with their supplier joined in. Only the columns of
+     * {@link #BOOK_PROJECTION_MAP} can be asked for.
+     */
+    private static SQLiteQueryBuilder booksQuery() {
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(BOOKS_JOIN_SUPPLIERS);
+        builder.setProjectionMap(BOOK_PROJECTION_MAP);
+        builder.setStrict(true);
+        return builder;
+    }
+
+    /**
+     * Return the index of the pattern of the given match code in {@link #URI_PATTERNS},
+     * or -1 if no pattern matched
+     */
+    private static int patternOf(int match) {
+        return match == UriMatcher.NO_MATCH ? -1 : match - BOOKS;
+    }
+
+    /**
+     * Begin a transaction on the database. Return the time it began, or
+     * {@link #NESTED_TRANSACTION} if it is nested in a transaction that is already open.
+     */
+    private long beginTransaction() {
+        long start = db.inTransaction() ? NESTED_TRANSACTION : System.nanoTime();
+        db.beginTransaction();
+        return start;
+    }
+
+    /**
+     * End a transaction begun by {@link #beginTransaction()}, recording how long it was open
+     * under the given match code unless it was nested
+     */
+    private void endTransaction(int match, long start) {
+        db.endTransaction();
+        if (start != NESTED_TRANSACTION) {
+            metrics.record(patternOf(match), InventoryMetrics.TRANSACTION, start, 0, false);
+        }
+    }
+
     /**
      * Perform query for given URI using given projection, selection, selection arguments,
-     * and sort order
+     * and sort order. The metrics only count the rows of results already read into memory,
+     * see {@link #rowsRead}, since counting the rows of a database cursor reads its first
+     * window, which some readers never ask for.
      */
     @Nullable
     @Override
     public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
                         @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        long start = System.nanoTime();
+        long rows = 0;
+        boolean failed = true;
+        try {
+            Cursor cursor = queryUri(uri, projection, selection, selectionArgs, sortOrder);
+            rows = rowsRead(cursor);
+            failed = false;
+            return cursor;
+        } finally {
+            metrics.record(patternOf(uriMatcher.match(uri)), InventoryMetrics.QUERY, start,
+                    rows, failed);
+        }
+    }
+
+    /**
+     * Return the number of rows of the cursor if they were already read, e.g. from the row
+     * cache or to rank search results, or 0 if the database has not been asked for them yet
+     */
+    private static int rowsRead(Cursor cursor) {
+        if (cursor == null || cursor instanceof AbstractWindowedCursor
+                && !((AbstractWindowedCursor) cursor).hasWindow()) {
+            return 0;
+        }
+        return cursor.getCount();
+    }
+
+    /**
+     * Run the query of {@link #query} for the given URI
+     */
+    private Cursor queryUri(Uri uri, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder) {
 
         // Get readable database
         db = dbHelper.getReadableDatabase();
@@ -75,17 +392,79 @@ public class InventoryProvider extends ContentProvider {
 
         switch (match) {
             case BOOKS:
-                // Query books table; cursor could contain multiple rows
-                cursor = db.query(ItemEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                // Query books table; cursor could contain multiple rows, or a single page
+                // of them when a limit is given
+                if (uri.getQueryParameter(ItemEntry.QUERY_PARAMETER_LIMIT) != null) {
+                    cursor = queryBooksPage(uri, projection, selection, selectionArgs, sortOrder);
+                } else {
+                    cursor = booksQuery().query(db, projection, selection, selectionArgs,
+                            null, null, sortOrder);
+                }
                 break;
             case BOOK_ID:
-                // Query books table; cursor will contain single row
-                selection = ItemEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                cursor = db.query(ItemEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                // Query books table; cursor will contain single row, served from the row
+                // cache if the book was read recently
+                cursor = queryBook(ContentUris.parseId(uri), projection, sortOrder);
                 break;
+            case BOOK_SEARCH:
+                // Search books table through the full-text index; cursor could contain
+                // multiple rows and is refreshed by any change to the books table
+                cursor = searchBooks(uri.getLastPathSegment(), projection, selection,
+                        selectionArgs, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        ItemEntry.CONTENT_URI);
+                return cursor;
+            case BOOK_ISBN:
+                // Query books table through the unique ISBN index; cursor will contain at
+                // most one row, and is refreshed by any change to the books table since the
+                // book's ID isn't known up front
+                cursor = booksQuery().query(db, projection,
+                        ItemEntry.COLUMN_ISBN + "=?",
+                        new String[]{String.valueOf(
+                                ItemEntry.normalizeIsbn(uri.getLastPathSegment()))},
+                        null, null, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        ItemEntry.CONTENT_URI);
+                return cursor;
+            case STATS:
+                // Query the single row of statistics the triggers on books maintain; it
+                // changes with every change to the books table
+                SQLiteQueryBuilder statsQuery = new SQLiteQueryBuilder();
+                statsQuery.setTables(StatsEntry.TABLE_NAME);
+                statsQuery.setProjectionMap(STATS_PROJECTION_MAP);
+                statsQuery.setStrict(true);
+                cursor = statsQuery.query(db, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        ItemEntry.CONTENT_URI);
+                return cursor;
+            case LEDGER:
+            case DAILY_SALES:
+                // Query the sales history; every sale and restock changes a book, so the
+                // cursor is refreshed by changes to the books table
+                cursor = db.query(match == LEDGER ? LedgerEntry.TABLE_NAME
+                                : DailySalesEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        ItemEntry.CONTENT_URI);
+                return cursor;
+            case SUPPLIERS:
+            case SUPPLIER_ID:
+                // Query suppliers table; writing books adds suppliers, so the cursor is
+                // refreshed by changes to the books table
+                if (match == SUPPLIER_ID) {
+                    selection = SupplierEntry.COLUMN_SUPPLIER_ID + "=?";
+                    selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                }
+                SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+                builder.setTables(SupplierEntry.TABLE_NAME);
+                builder.setProjectionMap(SUPPLIER_PROJECTION_MAP);
+                builder.setStrict(true);
+                cursor = builder.query(db, projection, selection, selectionArgs,
+                        null, null, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        ItemEntry.CONTENT_URI);
+                return cursor;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI - " + uri);
 
@@ -97,17 +476,214 @@ public class InventoryProvider extends ContentProvider {
         return cursor;
     }
 
+    /**
+     * Query a single book, from the row cache if possible. On a miss the whole row is read
+     * and cached, so the book can be served again whatever columns are asked for next.
+     *
+     * @param bookId ID of the book
+     */
+    private Cursor queryBook(long bookId, String[] projection, String sortOrder) {
+        Cursor cursor = rowCache.query(bookId, projection);
+        if (cursor != null) {
+            return cursor;
+        }
+
+        String selection = ItemEntry._ID + "=?";
+        String[] selectionArgs = new String[]{String.valueOf(bookId)};
+
+        long generation = rowCache.generation();
+        Cursor row = booksQuery().query(db, null, selection, selectionArgs,
+                null, null, null);
+        try {
+            if (row.moveToFirst()) {
+                cursor = rowCache.put(bookId, row, generation).toCursor(projection);
+            }
+        } finally {
+            row.close();
+        }
+
+        // No such book, or a projection with more than plain columns
+        if (cursor == null) {
+            cursor = booksQuery().query(db, projection, selection, selectionArgs,
+                    null, null, sortOrder);
+        }
+        return cursor;
+    }
+
+    /**
+     * Query one page of books. The page continues after the key of the previous page's last
+     * book when one is given, which reads only the rows of the page from the index, or starts
+     * at an offset otherwise. Rows are always ordered by the sort column, then by ID, so
+     * pages stay stable while books are inserted.
+     *
+     * @param uri with the paging query parameters of {@link ItemEntry}
+     */
+    private Cursor queryBooksPage(Uri uri, String[] projection, String selection,
+                                  String[] selectionArgs, String sortOrder) {
+
+        int limit = parseNonNegative(uri, ItemEntry.QUERY_PARAMETER_LIMIT);
+        String after = uri.getQueryParameter(ItemEntry.QUERY_PARAMETER_AFTER);
+        String afterId = uri.getQueryParameter(ItemEntry.QUERY_PARAMETER_AFTER_ID);
+        String offset = uri.getQueryParameter(ItemEntry.QUERY_PARAMETER_OFFSET);
+
+        // Check that books can be paged by the requested sort column
+        String sortColumn = TextUtils.isEmpty(sortOrder) ? ItemEntry._ID : sortOrder.trim();
+        if (!Arrays.asList(ItemEntry.PAGE_SORT_COLUMNS).contains(sortColumn)) {
+            throw new IllegalArgumentException("Cannot page books by - " + sortOrder);
+        }
+        boolean byId = sortColumn.equals(ItemEntry._ID);
+
+        List<String> args = new ArrayList<>();
+        StringBuilder where = new StringBuilder();
+        if (!TextUtils.isEmpty(selection)) {
+            where.append('(').append(selection).append(')');
+            if (selectionArgs != null) {
+                args.addAll(Arrays.asList(selectionArgs));
+            }
+        }
+
+        // Continue after the last book of the previous page
+        if (afterId != null) {
+            if (where.length() > 0) {
+                where.append(" AND ");
+            }
+            if (byId) {
+                where.append(ItemEntry._ID).append(" > ?");
+            } else if (after == null) {
+                throw new IllegalArgumentException("Paging by " + sortColumn
+                        + " requires the sort value of the last book - " + uri);
+            } else {
+                where.append("(").append(sortColumn).append(" > ? OR (")
+                        .append(sortColumn).append(" = ? AND ")
+                        .append(ItemEntry._ID).append(" > ?))");
+                args.add(after);
+                args.add(after);
+            }
+            args.add(String.valueOf(Long.parseLong(afterId)));
+        }
+
+        String orderBy = byId ? ItemEntry._ID : sortColumn + ", " + ItemEntry._ID;
+        String limitClause = offset == null ? String.valueOf(limit)
+                : parseNonNegative(uri, ItemEntry.QUERY_PARAMETER_OFFSET) + ", " + limit;
+
+        return booksQuery().query(db, projection,
+                where.length() > 0 ? where.toString() : null,
+                args.toArray(new String[args.size()]), null, null, orderBy, limitClause);
+    }
+
+    /**
+     * Return the value of the given query parameter as a number greater than or equal to 0
+     */
+    private static int parseNonNegative(Uri uri, String parameter) {
+        try {
+            int value = Integer.parseInt(uri.getQueryParameter(parameter));
+            if (value >= 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the error below
+        }
+        throw new IllegalArgumentException("Invalid " + parameter + " for URI - " + uri);
+    }
+
+    /**
+     * Query books whose title or author contain words starting with every word of the query.
+     * Unless a sort order is given, the books are ranked by relevance from the match info of
+     * the full-text index, see {@link RankedCursor}, and books of equal relevance are in
+     * title order.
+     *
+     * @param query text typed by the user
+     */
+    private Cursor searchBooks(String query, String[] projection, String selection,
+                               String[] selectionArgs, String sortOrder) {
+
+        // Keep only letters and digits of each word so user input can never be read as
+        // FTS query syntax, and match every word as a prefix
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int index = 0; index <= query.length(); index++) {
+            char c = index < query.length() ? query.charAt(index) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        StringBuilder match = new StringBuilder();
+        for (String term : words) {
+            match.append(term).append("* ");
+        }
+
+        String[] searchArgs = new String[1 + (selectionArgs == null ? 0 : selectionArgs.length)];
+        searchArgs[0] = match.toString().trim();
+        if (selectionArgs != null) {
+            System.arraycopy(selectionArgs, 0, searchArgs, 1, selectionArgs.length);
+        }
+
+        if (!TextUtils.isEmpty(sortOrder)) {
+            // Limit results to the books found by the full-text index, then apply any
+            // selection, in the order asked for
+            String searchSelection = ItemEntry._ID + " IN (SELECT docid FROM "
+                    + ItemEntry.FTS_TABLE_NAME + " WHERE " + ItemEntry.FTS_TABLE_NAME
+                    + " MATCH ?)";
+            if (!TextUtils.isEmpty(selection)) {
+                searchSelection += " AND (" + selection + ")";
+            }
+            return booksQuery().query(db, projection, searchSelection, searchArgs,
+                    null, null, sortOrder);
+        }
+
+        // Join the books found by the full-text index with their match info, which the
+        // ranking reads from the last column
+        Map<String, String> projectionMap = new LinkedHashMap<>(BOOK_PROJECTION_MAP);
+        projectionMap.put(MATCH_INFO, MATCH_INFO);
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(BOOKS_JOIN_SUPPLIERS + " JOIN (SELECT docid, matchinfo("
+                + ItemEntry.FTS_TABLE_NAME + ", 'pcnx') AS " + MATCH_INFO + " FROM "
+                + ItemEntry.FTS_TABLE_NAME + " WHERE " + ItemEntry.FTS_TABLE_NAME
+                + " MATCH ?) ON docid = " + ItemEntry.TABLE_NAME + "." + ItemEntry._ID);
+        builder.setProjectionMap(projectionMap);
+        builder.setStrict(true);
+
+        if (projection != null) {
+            projection = Arrays.copyOf(projection, projection.length + 1);
+            projection[projection.length - 1] = MATCH_INFO;
+        }
+        return new RankedCursor(builder.query(db, projection, selection, searchArgs,
+                null, null, ItemEntry.COLUMN_TITLE));
+    }
+
     /**
      * Insert new data into provider with given ContentValues
      */
     @Nullable
     @Override
     public Uri insert(@NonNull Uri uri, @Nullable ContentValues contentValues) {
+        long start = System.nanoTime();
+        Uri inserted = null;
+        boolean failed = true;
+        try {
+            inserted = insertUri(uri, contentValues);
+            failed = false;
+            return inserted;
+        } finally {
+            metrics.record(patternOf(uriMatcher.match(uri)), InventoryMetrics.INSERT, start,
+                    inserted == null ? 0 : 1, failed);
+        }
+    }
+
+    /**
+     * Run the insert of {@link #insert} for the given URI
+     */
+    private Uri insertUri(Uri uri, ContentValues contentValues) {
         // Determine if valid URI was passed
         final int match = uriMatcher.match(uri);
         switch (match) {
             case BOOKS:
                 return insertBook(uri, contentValues);
+            case SUPPLIERS:
+                return insertSupplier(uri, contentValues);
             default:
                 throw new IllegalArgumentException("Insertion not supported for URI - " + uri);
         }
@@ -122,22 +698,252 @@ public class InventoryProvider extends ContentProvider {
      */
     private Uri insertBook(@NonNull Uri uri, @Nullable ContentValues contentValues) {
 
+        // Check that the new book is valid
+        contentValues = withPriceCents(withNormalizedIsbn(contentValues));
+        validateBook(contentValues);
+
+        // Get writable database
+        db = dbHelper.getWritableDatabase();
+
+        // Insert a new book into bookstore database books table with the given content values,
+        // through the compiled insert statement unless other columns are given. The supplier
+        // is found or added in the same transaction.
+        long rowId;
+        long transactionStart = beginTransaction();
+        try {
+            long supplierId = findOrInsertSupplier(contentValues);
+            if (InventoryStatements.hasBookColumnsOnly(contentValues)) {
+                try {
+                    rowId = statements().insertBook(contentValues, supplierId);
+                } catch (SQLException e) {
+                    Log.e(LOG_TAG, "Error inserting " + contentValues, e);
+                    rowId = -1;
+                }
+            } else {
+                rowId = db.insert(ItemEntry.TABLE_NAME, null,
+                        withSupplierId(contentValues, supplierId));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            endTransaction(BOOKS, transactionStart);
+        }
+
+        // If rowId is -1, then insertion failed. Log error and return null.
+        if (rowId == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+
+        // Notify all listeners that data has changed for book content URI
+        notifier.tableChanged();
+
+        // Once we know ID of new row in the table, return new URI with ID appended to the end
+        return ContentUris.withAppendedId(uri, rowId);
+    }
+
+    /**
+     * Find or add the supplier with the given values, which may only hold supplier columns.
+     * Return the content URI of the supplier.
+     *
+     * @param uri of table
+     * @param contentValues of the supplier
+     */
+    private Uri insertSupplier(@NonNull Uri uri, @Nullable ContentValues contentValues) {
+
+        // Check that the supplier is valid
+        validateSupplier(contentValues);
+        for (String key : contentValues.keySet()) {
+            if (!Arrays.asList(SUPPLIER_COLUMNS).contains(key)) {
+                throw new IllegalArgumentException("Unknown column for supplier - " + key);
+            }
+        }
+
+        // Get writable database
+        db = dbHelper.getWritableDatabase();
+
+        long supplierId;
+        long transactionStart = beginTransaction();
+        try {
+            supplierId = findOrInsertSupplier(contentValues);
+            db.setTransactionSuccessful();
+        } finally {
+            endTransaction(SUPPLIERS, transactionStart);
+        }
+
+        // Notify all listeners that data has changed, suppliers are read with books
+        notifier.tableChanged();
+
+        return ContentUris.withAppendedId(uri, supplierId);
+    }
+
+    /**
+     * Return the ID of the supplier named by the supplier columns of the given values,
+     * adding the supplier if there is none yet. Call inside a transaction.
+     */
+    private long findOrInsertSupplier(ContentValues contentValues) {
+        return statements().findOrInsertSupplier(
+                contentValues.getAsString(ItemEntry.COLUMN_SUPPLIER_NAME),
+                contentValues.getAsString(ItemEntry.COLUMN_SUPPLIER_EMAIL),
+                contentValues.getAsString(ItemEntry.COLUMN_SUPPLIER_PHONE));
+    }
+
+    /**
+     * Return the values of a book with the supplier columns replaced by the given supplier
+     * ID, as the books table stores them. The caller's values are left alone.
+     */
+    private static ContentValues withSupplierId(ContentValues contentValues, long supplierId) {
+        ContentValues bookValues = new ContentValues(contentValues);
+        for (String column : SUPPLIER_COLUMNS) {
+            bookValues.remove(column);
+        }
+        bookValues.put(ItemEntry.COLUMN_SUPPLIER_ID, supplierId);
+        return bookValues;
+    }
+
+    /**
+     * Insert all given books in a single transaction using the compiled insert statement.
+     * Every row is validated before anything is written, and listeners are notified once.
+     * Return number of rows inserted
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+        long start = System.nanoTime();
+        int rowsInserted = 0;
+        boolean failed = true;
+        try {
+            rowsInserted = bulkInsertUri(uri, values);
+            failed = false;
+            return rowsInserted;
+        } finally {
+            metrics.record(patternOf(uriMatcher.match(uri)), InventoryMetrics.INSERT, start,
+                    rowsInserted, failed);
+        }
+    }
+
+    /**
+     * Run the bulk insert of {@link #bulkInsert} for the given URI
+     */
+    private int bulkInsertUri(Uri uri, ContentValues[] values) {
+
+        // Determine if valid URI was passed
+        final int match = uriMatcher.match(uri);
+        if (match != BOOKS) {
+            throw new IllegalArgumentException("Insertion not supported for URI - " + uri);
+        }
+
+        // Check every book up front so a bad row cannot leave a partial load behind
+        values = values.clone();
+        for (int index = 0; index < values.length; index++) {
+            ContentValues contentValues = withPriceCents(withNormalizedIsbn(values[index]));
+            values[index] = contentValues;
+            validateBook(contentValues);
+            for (String key : contentValues.keySet()) {
+                if (!InventoryStatements.BOOK_COLUMNS.contains(key)) {
+                    throw new IllegalArgumentException("Unknown column for bulk insert - " + key);
+                }
+            }
+        }
+
+        // Get writable database
+        db = dbHelper.getWritableDatabase();
+
+        InventoryStatements statements = statements();
+
+        int rowsInserted = 0;
+        long transactionStart = beginTransaction();
+        try {
+            for (ContentValues contentValues : values) {
+                statements.insertBook(contentValues, findOrInsertSupplier(contentValues));
+                rowsInserted++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            endTransaction(BOOKS, transactionStart);
+        }
+
+        // Notify all listeners once that data has changed for book content URI
+        if (rowsInserted > 0) {
+            notifier.tableChanged();
+        }
+
+        return rowsInserted;
+    }
+
+    /**
+     * Apply all operations inside a single transaction, so each write does not commit and
+     * sync on its own. A batch without yield points is all or nothing. At operations marked
+     * with {@link ContentProviderOperation.Builder#withYieldAllowed} the transaction is
+     * committed whenever another thread is waiting for the database, so a batch with yield
+     * points is not atomic: a failure only rolls back the operations since the last yield.
+     *
+     * Listeners get one notification on {@link ItemEntry#CONTENT_URI} after the batch if any
+     * of it was committed, and none if it was rolled back. The metrics time the batch as one
+     * transaction on books.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+
+        // Get writable database
+        db = dbHelper.getWritableDatabase();
+
+        final int numOperations = operations.size();
+        final ContentProviderResult[] results = new ContentProviderResult[numOperations];
+
+        boolean committed = false;
+        notifier.beginBatch();
+        long transactionStart = beginTransaction();
+        try {
+            for (int index = 0; index < numOperations; index++) {
+                ContentProviderOperation operation = operations.get(index);
+                if (index > 0 && operation.isYieldAllowed() && db.yieldIfContendedSafely()) {
+                    // The operations so far were committed to let the waiting thread in
+                    committed = true;
+                }
+                results[index] = operation.apply(this, results, index);
+            }
+            db.setTransactionSuccessful();
+            committed = true;
+            return results;
+        } finally {
+            try {
+                endTransaction(BOOKS, transactionStart);
+            } finally {
+                // Operations invalidated their books as they ran, but a reader may have
+                // cached the committed rows again before the batch committed
+                rowCache.invalidateAll();
+                notifier.endBatch(committed);
+            }
+        }
+    }
+
+    /**
+     * Checks that the given values describe a valid new book.
+     * Throws an exception naming the first invalid field.
+     * Also used by {@link InventoryImporter}, so imported books follow the same rules.
+     *
+     * @param contentValues of the book to be inserted
+     */
+    static void validateBook(ContentValues contentValues) {
+
         // Check that title is not null
         String title = contentValues.getAsString(ItemEntry.COLUMN_TITLE);
-        if (title.isEmpty()) {
+        if (title == null || title.isEmpty()) {
             throw new IllegalArgumentException("Book requires a title");
         }
 
         // Check that author is not null
         String author = contentValues.getAsString(ItemEntry.COLUMN_AUTHOR);
-        if (author.isEmpty()) {
+        if (author == null || author.isEmpty()) {
             throw new IllegalArgumentException("Book requires an author");
         }
 
         // XML inputType forces positive double input, but just to make sure, check that price is not
         // negative; can be null, but database sets default to 0 in database helper.
-        Double price = contentValues.getAsDouble(ItemEntry.COLUMN_PRICE);
-        if (price != null && price < 0.00) {
+        Long priceCents = withPriceCents(contentValues).getAsLong(ItemEntry.COLUMN_PRICE_CENTS);
+        if (priceCents != null && priceCents < 0) {
             throw new NumberFormatException("Book requires a price greater than or equal to 0.00");
         }
 
@@ -148,56 +954,123 @@ public class InventoryProvider extends ContentProvider {
             throw new NumberFormatException("Book requires a quantity greater than or equal to 0");
         }
 
+        validateSupplier(contentValues);
+
+        // Check that ISBN is valid; can be null
+        String isbn = ItemEntry.normalizeIsbn(contentValues.getAsString(ItemEntry.COLUMN_ISBN));
+        if (isbn != null && !ISBN_PATTERN.matcher(isbn).matches()) {
+            throw new IllegalArgumentException("ISBN not valid");
+        }
+    }
+
+    /**
+     * Checks that the given values describe a valid supplier, of a new book or on its own.
+     * Throws an exception naming the first invalid field.
+     *
+     * @param contentValues holding the supplier columns
+     */
+    private static void validateSupplier(ContentValues contentValues) {
+
         // Check that supplier name is not null
         String supplierName = contentValues.getAsString(ItemEntry.COLUMN_SUPPLIER_NAME);
-        if (supplierName.isEmpty()) {
+        if (supplierName == null || supplierName.isEmpty()) {
             throw new IllegalArgumentException("Supplier name required");
         }
 
         // Check that supplier email is valid; can be null
         String supplierEmail = contentValues.getAsString(ItemEntry.COLUMN_SUPPLIER_EMAIL);
-        if (!supplierEmail.isEmpty() &&
+        if (supplierEmail != null && !supplierEmail.isEmpty() &&
                 !Patterns.EMAIL_ADDRESS.matcher(supplierEmail).matches()) {
             throw new IllegalArgumentException("Supplier email not valid");
         }
 
         // Check that supplier phone is not null
         String supplierPhone = contentValues.getAsString(ItemEntry.COLUMN_SUPPLIER_PHONE);
-        if (supplierPhone.isEmpty()) {
+        if (supplierPhone == null || supplierPhone.isEmpty()) {
             throw new IllegalArgumentException("Supplier phone required");
         }
+    }
 
-        // Get writable database
-        db = dbHelper.getWritableDatabase();
-
-        // Insert a new book into bookstore database books table with the given content values
-        long rowId = db.insert(ItemEntry.TABLE_NAME, null, contentValues);
+    /**
+     * Return the values with their ISBN normalized the way lookups normalize a scan, and a
+     * blank ISBN as null, since the unique index allows any number of nulls but only one
+     * empty string. The caller's values are left alone.
+     */
+    private static ContentValues withNormalizedIsbn(ContentValues contentValues) {
+        if (contentValues == null || !contentValues.containsKey(ItemEntry.COLUMN_ISBN)) {
+            return contentValues;
+        }
+        ContentValues normalized = new ContentValues(contentValues);
+        String isbn = ItemEntry.normalizeIsbn(contentValues.getAsString(ItemEntry.COLUMN_ISBN));
+        if (isbn == null) {
+            normalized.putNull(ItemEntry.COLUMN_ISBN);
+        } else {
+            normalized.put(ItemEntry.COLUMN_ISBN, isbn);
+        }
+        return normalized;
+    }
 
-        // If rowId is -1, then insertion failed. Log error and return null.
-        if (rowId == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
-            return null;
+    /**
+     * Return the values with a price in dollars replaced by the same price in whole cents,
+     * the only price books store. A price given as text is converted without going through
+     * a double. The caller's values are left alone.
+     *
+     * @throws IllegalArgumentException if the price is given both in dollars and in cents
+     */
+    private static ContentValues withPriceCents(ContentValues contentValues) {
+        if (contentValues == null || !contentValues.containsKey(ItemEntry.COLUMN_PRICE)) {
+            return contentValues;
         }
-
-        // Notify all listeners that data has changed for book content URI
-        getContext().getContentResolver().notifyChange(uri, null);
-
-        // Once we know ID of new row in the table, return new URI with ID appended to the end
-        return ContentUris.withAppendedId(uri, rowId);
+        if (contentValues.containsKey(ItemEntry.COLUMN_PRICE_CENTS)) {
+            throw new IllegalArgumentException("Book price given both in dollars and in cents");
+        }
+        ContentValues converted = new ContentValues(contentValues);
+        converted.remove(ItemEntry.COLUMN_PRICE);
+        Object price = contentValues.get(ItemEntry.COLUMN_PRICE);
+        if (price == null) {
+            converted.putNull(ItemEntry.COLUMN_PRICE_CENTS);
+        } else if (price instanceof Number) {
+            converted.put(ItemEntry.COLUMN_PRICE_CENTS,
+                    ItemEntry.priceToCents(((Number) price).doubleValue()));
+        } else {
+            converted.put(ItemEntry.COLUMN_PRICE_CENTS,
+                    ItemEntry.parsePriceCents(price.toString()));
+        }
+        return converted;
     }
 
     /**
-     * Updates books at given selection and selection arguments with new ContentValues
+     * Updates books at given selection and selection arguments with new ContentValues.
+     * A single book URI with a version parameter only updates the book while it is at that
+     * version, and returns {@link ItemEntry#UPDATE_CONFLICT} if it has moved on.
      */
     @Override
     public int update(@NonNull Uri uri, @Nullable ContentValues contentValues,
                       @Nullable String selection, @Nullable String[] selectionArgs) {
+        long start = System.nanoTime();
+        int rowsUpdated = 0;
+        boolean failed = true;
+        try {
+            rowsUpdated = updateUri(uri, contentValues, selection, selectionArgs);
+            failed = false;
+            return rowsUpdated;
+        } finally {
+            metrics.record(patternOf(uriMatcher.match(uri)), InventoryMetrics.UPDATE, start,
+                    Math.max(rowsUpdated, 0), failed);
+        }
+    }
+
+    /**
+     * Run the update of {@link #update} for the given URI
+     */
+    private int updateUri(Uri uri, ContentValues contentValues, String selection,
+                          String[] selectionArgs) {
 
         // Determine if valid URI was passed
         final int match = uriMatcher.match(uri);
         switch (match) {
             case BOOKS:
-                return updateBook(uri, contentValues, selection, selectionArgs);
+                return updateBook(uri, contentValues, joinedSelection(selection), selectionArgs);
             case BOOK_ID:
                 // For the BOOK_ID code, extract ID from URI, convert to number, then to string
                 // For every "?" in the selection, we need to have an element in the selection
@@ -205,12 +1078,87 @@ public class InventoryProvider extends ContentProvider {
                 // selection, we have 1 String in the selection arguments' String array.
                 selection = ItemEntry._ID + "=?";
                 selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                return updateBook(uri, contentValues, selection, selectionArgs);
+
+                // Conditional update; the version goes into the selection as well
+                String version = uri.getQueryParameter(ItemEntry.QUERY_PARAMETER_VERSION);
+                if (version == null) {
+                    return updateBook(uri, contentValues, selection, selectionArgs);
+                }
+                return updateBookAtVersion(uri, contentValues, selection, selectionArgs[0],
+                        version);
+            case SUPPLIER_ID:
+                return updateSupplier(ContentUris.parseId(uri), contentValues);
             default:
                 throw new IllegalArgumentException("Update is not supported for URI - " + uri);
         }
     }
 
+    /**
+     * Update a single book only while it is at the given version, and return
+     * {@link ItemEntry#UPDATE_CONFLICT} if it has moved on. The update and the check for a
+     * conflict run in one transaction that only commits if the book was updated, so no other
+     * write can come in between, and a supplier added for an update that lost is rolled back
+     * with it rather than left behind without books.
+     */
+    private int updateBookAtVersion(Uri uri, ContentValues contentValues, String selection,
+                                    String bookId, String version) {
+        db = dbHelper.getWritableDatabase();
+
+        int rowsUpdated;
+        long transactionStart = beginTransaction();
+        try {
+            rowsUpdated = updateBook(uri, contentValues,
+                    selection + " AND " + ItemEntry.COLUMN_VERSION + "=?",
+                    new String[] { bookId, version });
+            if (rowsUpdated == 0 && contentValues.size() > 0
+                    && statements().queryQuantity(ContentUris.parseId(uri)) != -1) {
+                rowsUpdated = ItemEntry.UPDATE_CONFLICT;
+            }
+            if (rowsUpdated > 0) {
+                db.setTransactionSuccessful();
+            }
+        } finally {
+            endTransaction(BOOK_ID, transactionStart);
+        }
+
+        // A reader may have cached the book again before the transaction committed
+        if (rowsUpdated > 0) {
+            rowCache.invalidate(ContentUris.parseId(uri));
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Return the number of books of the given selection whose quantity differs from the
+     * given quantity, which the ledger trigger adds an entry for once it is set
+     */
+    private int countQuantityChanges(String selection, String[] selectionArgs, int quantity) {
+        List<String> args = new ArrayList<>();
+        StringBuilder where = new StringBuilder();
+        if (!TextUtils.isEmpty(selection)) {
+            where.append('(').append(selection).append(") AND ");
+            if (selectionArgs != null) {
+                args.addAll(Arrays.asList(selectionArgs));
+            }
+        }
+        where.append(ItemEntry.COLUMN_QUANTITY).append(" <> ?");
+        args.add(String.valueOf(quantity));
+        return (int) DatabaseUtils.queryNumEntries(db, ItemEntry.TABLE_NAME, where.toString(),
+                args.toArray(new String[args.size()]));
+    }
+
+    /**
+     * Return a selection of books by the given selection, which may also refer to the
+     * supplier columns queries join in, or the selection itself if it selects all books
+     */
+    private static String joinedSelection(String selection) {
+        if (TextUtils.isEmpty(selection)) {
+            return selection;
+        }
+        return ItemEntry._ID + " IN (SELECT " + ItemEntry._ID + " FROM " + BOOKS_JOIN_SUPPLIERS
+                + " WHERE " + selection + ")";
+    }
+
     /**
      * Updates books at given selection and selection arguments with new ContentValues
      * Return number of rows successfully updated
@@ -218,6 +1166,16 @@ public class InventoryProvider extends ContentProvider {
     private int updateBook(Uri uri, ContentValues contentValues, String selection,
                            String[] selectionArgs) {
 
+        // The version is only ever raised by the trigger on the books table
+        if (contentValues.containsKey(ItemEntry.COLUMN_VERSION)) {
+            throw new IllegalArgumentException("Book version cannot be updated");
+        }
+
+        // The supplier ID only ever follows the supplier columns
+        if (contentValues.containsKey(ItemEntry.COLUMN_SUPPLIER_ID)) {
+            throw new IllegalArgumentException("Book supplier ID cannot be updated");
+        }
+
         // Check to see if {@link BookEntry#COLUMN_TITLE} key is present
         // Check that title is not null
         if (contentValues.containsKey(ItemEntry.COLUMN_TITLE)) {
@@ -236,12 +1194,14 @@ public class InventoryProvider extends ContentProvider {
             }
         }
 
-        // Check to see if {@link ItemEntry#COLUMN_PRICE} key is present
+        // Check to see if {@link ItemEntry#COLUMN_PRICE} or {@link ItemEntry#COLUMN_PRICE_CENTS}
+        // key is present; books only store the price in cents
         // XML inputType forces positive double input, but just to make sure, check that price is not
         // negative; can be null, but database sets default to 0 in database helper.
-        if (contentValues.containsKey(ItemEntry.COLUMN_PRICE)) {
-            Double price = contentValues.getAsDouble(ItemEntry.COLUMN_PRICE);
-            if (price != null && price < 0.00) {
+        contentValues = withPriceCents(contentValues);
+        if (contentValues.containsKey(ItemEntry.COLUMN_PRICE_CENTS)) {
+            Long priceCents = contentValues.getAsLong(ItemEntry.COLUMN_PRICE_CENTS);
+            if (priceCents != null && priceCents < 0) {
                 throw new NumberFormatException("Book requires a price greater than or equal to 0.00");
             }
         }
@@ -256,6 +1216,89 @@ public class InventoryProvider extends ContentProvider {
             }
         }
 
+        validateSupplierUpdate(contentValues);
+
+        // Check to see if {@link ItemEntry#COLUMN_ISBN} key is present
+        // Check that ISBN is valid; can be null or blank to clear it
+        if (contentValues.containsKey(ItemEntry.COLUMN_ISBN)) {
+            contentValues = withNormalizedIsbn(contentValues);
+            String isbn = contentValues.getAsString(ItemEntry.COLUMN_ISBN);
+            if (isbn != null && !ISBN_PATTERN.matcher(isbn).matches()) {
+                throw new IllegalArgumentException("ISBN not valid");
+            }
+        }
+
+        // If there are no values to update, then don't try to update the database
+        if (contentValues.size() == 0) {
+            return 0;
+        }
+
+        // There are values to update, so get writable database
+        db = dbHelper.getWritableDatabase();
+
+        // Update books table in bookstore database with the given content values
+        // and get number of rows updated; setting the quantity of a single book, as the
+        // register does all day, goes through the compiled quantity update, and a change
+        // of supplier is written as the ID of the supplier, found or added in the same
+        // transaction. The books whose quantity actually changes are counted in the same
+        // transaction, since only they get a ledger entry from the trigger.
+        int rowsUpdated;
+        int quantityChanges = 0;
+        Integer quantity = contentValues.getAsInteger(ItemEntry.COLUMN_QUANTITY);
+        boolean supplierChanged = hasSupplierColumns(contentValues);
+        if (supplierChanged || quantity != null) {
+            long transactionStart = beginTransaction();
+            try {
+                ContentValues bookValues = supplierChanged
+                        ? withUpdatedSupplierId(uri, contentValues) : contentValues;
+                if (bookValues != null && quantity != null) {
+                    quantityChanges = countQuantityChanges(selection, selectionArgs, quantity);
+                }
+                if (bookValues == null) {
+                    rowsUpdated = 0;
+                } else if (!supplierChanged && uriMatcher.match(uri) == BOOK_ID
+                        && bookValues.size() == 1
+                        && uri.getQueryParameter(ItemEntry.QUERY_PARAMETER_VERSION) == null) {
+                    rowsUpdated = statements().updateQuantity(ContentUris.parseId(uri),
+                            quantity);
+                } else {
+                    rowsUpdated = db.update(ItemEntry.TABLE_NAME, bookValues, selection,
+                            selectionArgs);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                endTransaction(uriMatcher.match(uri), transactionStart);
+            }
+        } else {
+            rowsUpdated = db.update(ItemEntry.TABLE_NAME, contentValues, selection,
+                    selectionArgs);
+        }
+
+        // If 1 or more rows were updated, then notify all listeners that the data at the
+        // given URI has changed; only the book's own URI if a single book was updated
+        if (rowsUpdated > 0) {
+            if (quantityChanges > 0) {
+                ledger.entriesAppended(quantityChanges);
+            }
+            if (uriMatcher.match(uri) == BOOK_ID) {
+                rowCache.invalidate(ContentUris.parseId(uri));
+                notifier.bookChanged(ContentUris.parseId(uri));
+            } else {
+                rowCache.invalidateAll();
+                notifier.tableChanged();
+            }
+        }
+
+        // Return number of rows updated
+        return rowsUpdated;
+    }
+
+    /**
+     * Checks the supplier columns present in the given update of books or of a supplier.
+     * Throws an exception naming the first invalid field.
+     */
+    private static void validateSupplierUpdate(ContentValues contentValues) {
+
         // Check to see if {@link ItemEntry#COLUMN_SUPPLIER_NAME} key is present
         // Check that supplier name is not null
         if (contentValues.containsKey(ItemEntry.COLUMN_SUPPLIER_NAME)) {
@@ -269,7 +1312,7 @@ public class InventoryProvider extends ContentProvider {
         // Check that supplier email is valid; can be null
         if (contentValues.containsKey(ItemEntry.COLUMN_SUPPLIER_EMAIL)) {
             String supplierEmail = contentValues.getAsString(ItemEntry.COLUMN_SUPPLIER_EMAIL);
-            if (!supplierEmail.isEmpty() &&
+            if (supplierEmail != null && !supplierEmail.isEmpty() &&
                     !android.util.Patterns.EMAIL_ADDRESS.matcher(supplierEmail).matches()) {
                 throw new IllegalArgumentException("Supplier email not valid");
             }
@@ -283,35 +1326,130 @@ public class InventoryProvider extends ContentProvider {
                 throw new IllegalArgumentException("Supplier phone required");
             }
         }
+    }
+
+    /**
+     * Return whether the given values change the supplier of books
+     */
+    private static boolean hasSupplierColumns(ContentValues contentValues) {
+        for (String column : SUPPLIER_COLUMNS) {
+            if (contentValues.containsKey(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the values of an update of books with the supplier columns replaced by the ID
+     * of the supplier they describe, found or added. Supplier columns missing from the update
+     * of a single book keep the book's current values; an update of several books must give
+     * all of them. Return null if the single book doesn't exist. Call inside a transaction.
+     */
+    private ContentValues withUpdatedSupplierId(Uri uri, ContentValues contentValues) {
+        String[] supplier = new String[SUPPLIER_COLUMNS.length];
+        boolean complete = true;
+        for (int index = 0; index < SUPPLIER_COLUMNS.length; index++) {
+            supplier[index] = contentValues.getAsString(SUPPLIER_COLUMNS[index]);
+            complete &= contentValues.containsKey(SUPPLIER_COLUMNS[index]);
+        }
+
+        if (!complete) {
+            if (uriMatcher.match(uri) != BOOK_ID) {
+                throw new IllegalArgumentException(
+                        "Supplier of several books requires name, email and phone");
+            }
+            Cursor cursor = db.query(BOOKS_JOIN_SUPPLIERS, SUPPLIER_COLUMNS,
+                    ItemEntry._ID + "=?", new String[]{String.valueOf(ContentUris.parseId(uri))},
+                    null, null, null);
+            try {
+                if (!cursor.moveToFirst()) {
+                    return null;
+                }
+                for (int index = 0; index < SUPPLIER_COLUMNS.length; index++) {
+                    if (!contentValues.containsKey(SUPPLIER_COLUMNS[index])) {
+                        supplier[index] = cursor.getString(index);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        return withSupplierId(contentValues,
+                statements().findOrInsertSupplier(supplier[0], supplier[1], supplier[2]));
+    }
+
+    /**
+     * Update the details of a supplier, which every book it supplies reads. Fails with an
+     * {@link SQLiteConstraintException} if another supplier already has the new details.
+     * Return number of suppliers updated
+     *
+     * @param supplierId ID of the supplier
+     * @param contentValues supplier columns to update
+     */
+    private int updateSupplier(long supplierId, ContentValues contentValues) {
+
+        // Check that the update only holds valid supplier columns
+        validateSupplierUpdate(contentValues);
+        for (String key : contentValues.keySet()) {
+            if (!Arrays.asList(SUPPLIER_COLUMNS).contains(key)) {
+                throw new IllegalArgumentException("Unknown column for supplier - " + key);
+            }
+        }
 
         // If there are no values to update, then don't try to update the database
         if (contentValues.size() == 0) {
             return 0;
         }
 
-        // There are values to update, so get writable database
+        // No email is stored as an empty string
+        if (contentValues.containsKey(SupplierEntry.COLUMN_EMAIL)
+                && contentValues.getAsString(SupplierEntry.COLUMN_EMAIL) == null) {
+            contentValues = new ContentValues(contentValues);
+            contentValues.put(SupplierEntry.COLUMN_EMAIL, "");
+        }
+
+        // Get writable database
         db = dbHelper.getWritableDatabase();
 
-        // Update books table in bookstore database with the given content values
-        // and get number of rows updated
-        int rowsUpdated = db.update(ItemEntry.TABLE_NAME, contentValues, selection, selectionArgs);
+        int rowsUpdated = db.update(SupplierEntry.TABLE_NAME, contentValues,
+                SupplierEntry.COLUMN_SUPPLIER_ID + "=?",
+                new String[]{String.valueOf(supplierId)});
 
-        // If 1 or more rows were updated, then notify all listeners that the data at the
-        // given URI has changed
+        // Every book of the supplier reads the new details, so notify as for the whole table
         if (rowsUpdated > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            rowCache.invalidateAll();
+            notifier.tableChanged();
         }
 
-        // Return number of rows updated
         return rowsUpdated;
     }
 
     /**
-     * Delete data at given selection and selection arguments
+     * Delete data at given selection and selection arguments. A supplier is only deleted
+     * once no book refers to it.
      */
     @Override
     public int delete(@NonNull Uri uri, @Nullable String selection,
                       @Nullable String[] selectionArgs) {
+        long start = System.nanoTime();
+        int rowsDeleted = 0;
+        boolean failed = true;
+        try {
+            rowsDeleted = deleteUri(uri, selection, selectionArgs);
+            failed = false;
+            return rowsDeleted;
+        } finally {
+            metrics.record(patternOf(uriMatcher.match(uri)), InventoryMetrics.DELETE, start,
+                    rowsDeleted, failed);
+        }
+    }
+
+    /**
+     * Run the delete of {@link #delete} for the given URI
+     */
+    private int deleteUri(Uri uri, String selection, String[] selectionArgs) {
 
         int rowsDeleted;
 
@@ -323,18 +1461,27 @@ public class InventoryProvider extends ContentProvider {
         switch (match) {
             case BOOKS:
                 // Delete all rows with given selection and selection args
-                rowsDeleted = db.delete(ItemEntry.TABLE_NAME, selection, selectionArgs);
+                rowsDeleted = db.delete(ItemEntry.TABLE_NAME, joinedSelection(selection),
+                        selectionArgs);
+                if (rowsDeleted > 0) {
+                    rowCache.invalidateAll();
+                }
                 break;
             case BOOK_ID:
-                // For the BOOK_ID code, extract ID from URI, convert to number, then to string
-                // For every "?" in the selection, we need to have an element in the selection
-                // arguments that will fill in the "?". Since we have 1 question mark in the
-                // selection, we have 1 String in the selection arguments' String array.
-                selection = ItemEntry._ID + "=?";
-                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-
-                // Delete single row with given selection and selection args
-                rowsDeleted = db.delete(ItemEntry.TABLE_NAME, selection, selectionArgs);
+                // For the BOOK_ID code, extract ID from URI and delete the single row with the
+                // compiled delete statement, ignoring any selection
+                rowsDeleted = statements().deleteBook(ContentUris.parseId(uri));
+                rowCache.invalidate(ContentUris.parseId(uri));
+                break;
+            case SUPPLIER_ID:
+                // Delete the single supplier, unless a book still refers to it
+                try {
+                    rowsDeleted = db.delete(SupplierEntry.TABLE_NAME,
+                            SupplierEntry.COLUMN_SUPPLIER_ID + "=?",
+                            new String[]{String.valueOf(ContentUris.parseId(uri))});
+                } catch (SQLiteConstraintException e) {
+                    rowsDeleted = 0;
+                }
                 break;
             default:
                 throw new IllegalArgumentException("Deletion is not supported for URI - " + uri);
@@ -343,13 +1490,437 @@ public class InventoryProvider extends ContentProvider {
         // If row is deleted, then notify all listeners that the data at the
         // given URI has changed
         if (rowsDeleted > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifier.tableChanged();
         }
 
         // Return number of rows deleted
         return rowsDeleted;
     }
 
+    /**
+     * Run a provider method that has no natural mapping onto insert, update or delete.
+     * Methods are called on {@link ItemEntry#CONTENT_URI}, so the metrics count them there.
+     */
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        long start = System.nanoTime();
+        long rows = 0;
+        boolean failed = true;
+        try {
+            Bundle result = callMethod(method, extras);
+            rows = rowsOf(method, result);
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(patternOf(BOOKS), InventoryMetrics.CALL, start, rows, failed);
+        }
+    }
+
+    /**
+     * Return the number of books the provider method read or changed, from its result
+     */
+    private static long rowsOf(String method, Bundle result) {
+        switch (method) {
+            case InventoryContract.METHOD_GET_QUANTITY:
+            case InventoryContract.METHOD_RESTOCK:
+                return result.getInt(InventoryContract.EXTRA_QUANTITY, -1) != -1 ? 1 : 0;
+            case InventoryContract.METHOD_SELL:
+                return result.getBoolean(InventoryContract.EXTRA_SOLD) ? 1 : 0;
+            case InventoryContract.METHOD_SELL_BATCH:
+                int booksSold = 0;
+                for (int sold : result.getIntArray(InventoryContract.EXTRA_AMOUNTS)) {
+                    if (sold > 0) {
+                        booksSold++;
+                    }
+                }
+                return booksSold;
+            case InventoryContract.METHOD_SET_PRICE:
+                return result.getBoolean(InventoryContract.EXTRA_UPDATED) ? 1 : 0;
+            case InventoryContract.METHOD_COMPACT_LEDGER:
+                return result.getInt(InventoryContract.EXTRA_COMPACTED);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Run the provider method of {@link #call}
+     */
+    private Bundle callMethod(String method, Bundle extras) {
+        switch (method) {
+            case InventoryContract.METHOD_GET_QUANTITY:
+                return queryQuantity(requireBookId(extras, "Quantity"));
+            case InventoryContract.METHOD_SELL:
+                if (extras != null && extras.containsKey(InventoryContract.EXTRA_ISBN)) {
+                    return sellBookByIsbn(extras.getString(InventoryContract.EXTRA_ISBN),
+                            extras.getInt(InventoryContract.EXTRA_AMOUNT, 1));
+                }
+                return sellBook(requireBookId(extras, "Sale"),
+                        extras.getInt(InventoryContract.EXTRA_AMOUNT, 1));
+            case InventoryContract.METHOD_SELL_BATCH:
+                if (extras == null || extras.getLongArray(InventoryContract.EXTRA_BOOK_IDS) == null
+                        || extras.getIntArray(InventoryContract.EXTRA_AMOUNTS) == null) {
+                    throw new IllegalArgumentException("Sale requires book IDs and amounts");
+                }
+                return sellBooks(extras.getLongArray(InventoryContract.EXTRA_BOOK_IDS),
+                        extras.getIntArray(InventoryContract.EXTRA_AMOUNTS));
+            case InventoryContract.METHOD_RESTOCK:
+                return restockBook(requireBookId(extras, "Restock"),
+                        extras.getInt(InventoryContract.EXTRA_AMOUNT, 1));
+            case InventoryContract.METHOD_SET_PRICE:
+                long bookId = requireBookId(extras, "Price change");
+                if (extras.containsKey(InventoryContract.EXTRA_PRICE_CENTS)) {
+                    return setBookPrice(bookId,
+                            extras.getLong(InventoryContract.EXTRA_PRICE_CENTS));
+                }
+                if (!extras.containsKey(InventoryContract.EXTRA_PRICE)) {
+                    throw new IllegalArgumentException("Price change requires a price");
+                }
+                return setBookPrice(bookId, ItemEntry.priceToCents(
+                        extras.getDouble(InventoryContract.EXTRA_PRICE)));
+            case InventoryContract.METHOD_NOTIFICATION_STATS:
+                Bundle stats = new Bundle();
+                stats.putLong(InventoryContract.EXTRA_CHANGES_REQUESTED,
+                        notifier.getChangesRequested());
+                stats.putLong(InventoryContract.EXTRA_NOTIFICATIONS_FIRED,
+                        notifier.getNotificationsFired());
+                stats.putLong(InventoryContract.EXTRA_CHANGES_COALESCED,
+                        notifier.getChangesCoalesced());
+                return stats;
+            case InventoryContract.METHOD_ROW_CACHE_STATS:
+                Bundle cacheStats = new Bundle();
+                cacheStats.putLong(InventoryContract.EXTRA_CACHE_HITS, rowCache.getHits());
+                cacheStats.putLong(InventoryContract.EXTRA_CACHE_MISSES, rowCache.getMisses());
+                cacheStats.putInt(InventoryContract.EXTRA_CACHE_SIZE, rowCache.size());
+                cacheStats.putInt(InventoryContract.EXTRA_CACHE_BYTES, rowCache.sizeInBytes());
+                return cacheStats;
+            case InventoryContract.METHOD_METRICS:
+                Bundle snapshot = metrics.snapshot();
+                if (extras != null && extras.getBoolean(InventoryContract.EXTRA_RESET)) {
+                    metrics.reset();
+                }
+                return snapshot;
+            case InventoryContract.METHOD_COMPACT_LEDGER:
+                long before = extras != null && extras.containsKey(InventoryContract.EXTRA_BEFORE)
+                        ? extras.getLong(InventoryContract.EXTRA_BEFORE)
+                        : InventoryLedger.cutoff(System.currentTimeMillis(),
+                                LedgerEntry.DEFAULT_RETENTION_DAYS);
+                Bundle compacted = new Bundle();
+                compacted.putInt(InventoryContract.EXTRA_COMPACTED, ledger.compact(before));
+                return compacted;
+            default:
+                throw new IllegalArgumentException("Unknown method - " + method);
+        }
+    }
+
+    /**
+     * Return the book ID extra of a provider method, which the given operation requires
+     */
+    private static long requireBookId(@Nullable Bundle extras, String operation) {
+        if (extras == null || !extras.containsKey(InventoryContract.EXTRA_BOOK_ID)) {
+            throw new IllegalArgumentException(operation + " requires a book ID");
+        }
+        return extras.getLong(InventoryContract.EXTRA_BOOK_ID);
+    }
+
+    /**
+     * Read the quantity of a book with a compiled query, without a cursor.
+     * Return a Bundle with the quantity, or -1 if there is no such book.
+     *
+     * @param bookId ID of the book
+     */
+    private Bundle queryQuantity(long bookId) {
+        Bundle result = new Bundle();
+        result.putInt(InventoryContract.EXTRA_QUANTITY, statements().queryQuantity(bookId));
+        return result;
+    }
+
+    /**
+     * Sell copies of a book with one conditional UPDATE, so the quantity is never read,
+     * changed and written back by the caller, and can never drop below 0. A sale that goes
+     * through is appended to the sales ledger by the trigger on the quantity.
+     * Return a Bundle with whether the sale went through and the quantity left.
+     *
+     * @param bookId ID of the book being sold
+     * @param amount number of copies sold
+     */
+    private Bundle sellBook(long bookId, int amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Sale requires an amount greater than 0");
+        }
+
+        // Get writable database
+        db = dbHelper.getWritableDatabase();
+        InventoryStatements statements = statements();
+
+        boolean sold;
+        int quantity;
+        long transactionStart = beginTransaction();
+        try {
+            sold = statements.sellBook(bookId, amount);
+
+            // Read back the quantity inside the same transaction so no other write can interleave
+            quantity = statements.queryQuantity(bookId);
+            db.setTransactionSuccessful();
+        } finally {
+            endTransaction(BOOK_ID, transactionStart);
+        }
+
+        // Notify all listeners that the data of this book has changed
+        if (sold) {
+            ledger.entriesAppended(1);
+            rowCache.invalidate(bookId);
+            notifier.bookChanged(bookId);
+        }
+
+        Bundle result = new Bundle();
+        result.putBoolean(InventoryContract.EXTRA_SOLD, sold);
+        result.putInt(InventoryContract.EXTRA_QUANTITY, quantity);
+        if (quantity != -1) {
+            result.putLong(InventoryContract.EXTRA_BOOK_ID, bookId);
+        }
+        return result;
+    }
+
+    /**
+     * Sell copies of several books in one transaction, e.g. a window of queued sale taps.
+     * Each book sells as many of the requested copies as are in stock, and the trigger on the
+     * quantity appends every sale to the sales ledger. Return a Bundle with the copies sold of each book.
+     *
+     * @param bookIds IDs of the books being sold
+     * @param amounts number of copies of each book requested
+     */
+    private Bundle sellBooks(long[] bookIds, int[] amounts) {
+        if (bookIds.length != amounts.length) {
+            throw new IllegalArgumentException("Sale requires an amount for each book");
+        }
+        for (int amount : amounts) {
+            if (amount <= 0) {
+                throw new IllegalArgumentException("Sale requires an amount greater than 0");
+            }
+        }
+
+        // Get writable database
+        db = dbHelper.getWritableDatabase();
+        InventoryStatements statements = statements();
+
+        int[] sold = new int[bookIds.length];
+        long transactionStart = beginTransaction();
+        try {
+            for (int index = 0; index < bookIds.length; index++) {
+                // No other write can interleave between reading the stock and selling it
+                int amount = Math.min(amounts[index], statements.queryQuantity(bookIds[index]));
+                if (amount > 0 && statements.sellBook(bookIds[index], amount)) {
+                    sold[index] = amount;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            endTransaction(BOOKS, transactionStart);
+        }
+
+        // Notify all listeners that the data of these books has changed
+        for (int index = 0; index < bookIds.length; index++) {
+            if (sold[index] > 0) {
+                ledger.entriesAppended(1);
+                rowCache.invalidate(bookIds[index]);
+                notifier.bookChanged(bookIds[index]);
+            }
+        }
+
+        Bundle result = new Bundle();
+        result.putIntArray(InventoryContract.EXTRA_AMOUNTS, sold);
+        return result;
+    }
+
+    /**
+     * Sell copies of the book with the given ISBN: one lookup through the unique ISBN index,
+     * then the same conditional UPDATE as {@link #sellBook}.
+     *
+     * @param isbn ISBN or barcode of the book being sold, normalized here
+     * @param amount number of copies sold
+     */
+    private Bundle sellBookByIsbn(String isbn, int amount) {
+        String normalized = ItemEntry.normalizeIsbn(isbn);
+        long bookId = normalized == null ? -1 : statements().queryIdByIsbn(normalized);
+        if (bookId == -1) {
+            if (amount <= 0) {
+                throw new IllegalArgumentException("Sale requires an amount greater than 0");
+            }
+            Bundle result = new Bundle();
+            result.putBoolean(InventoryContract.EXTRA_SOLD, false);
+            result.putInt(InventoryContract.EXTRA_QUANTITY, -1);
+            return result;
+        }
+        return sellBook(bookId, amount);
+    }
+
+    /**
+     * Put copies of a book back on the shelf with one UPDATE, the counterpart of
+     * {@link #sellBook}, and appended to the sales ledger the same way. Return a Bundle with
+     * the quantity now in stock, or -1 if there is no such book.
+     *
+     * @param bookId ID of the book being restocked
+     * @param amount number of copies added
+     */
+    private Bundle restockBook(long bookId, int amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Restock requires an amount greater than 0");
+        }
+
+        // Get writable database
+        db = dbHelper.getWritableDatabase();
+        InventoryStatements statements = statements();
+
+        boolean restocked;
+        int quantity;
+        long transactionStart = beginTransaction();
+        try {
+            restocked = statements.restockBook(bookId, amount);
+
+            // Read back the quantity inside the same transaction so no other write can interleave
+            quantity = statements.queryQuantity(bookId);
+            db.setTransactionSuccessful();
+        } finally {
+            endTransaction(BOOK_ID, transactionStart);
+        }
+
+        // Notify all listeners that the data of this book has changed
+        if (restocked) {
+            ledger.entriesAppended(1);
+            rowCache.invalidate(bookId);
+            notifier.bookChanged(bookId);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(InventoryContract.EXTRA_QUANTITY, quantity);
+        return result;
+    }
+
+    /**
+     * Set the price of a book. Return a Bundle with whether the book exists and was updated.
+     *
+     * @param bookId ID of the book
+     * @param priceCents new price in cents, greater than or equal to 0
+     */
+    private Bundle setBookPrice(long bookId, long priceCents) {
+        // Same check as a price update through update()
+        if (priceCents < 0) {
+            throw new NumberFormatException("Book requires a price greater than or equal to 0.00");
+        }
+
+        boolean updated = statements().updatePrice(bookId, priceCents) == 1;
+
+        // Notify all listeners that the data of this book has changed
+        if (updated) {
+            rowCache.invalidate(bookId);
+            notifier.bookChanged(bookId);
+        }
+
+        Bundle result = new Bundle();
+        result.putBoolean(InventoryContract.EXTRA_UPDATED, updated);
+        return result;
+    }
+
+    /**
+     * Open the catalog export as CSV
+     */
+    @Nullable
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode)
+            throws FileNotFoundException {
+        if (uriMatcher.match(uri) != BOOK_EXPORT) {
+            throw new FileNotFoundException("Cannot open URI - " + uri);
+        }
+        return openExport(uri, mode, ItemEntry.EXPORT_CSV_TYPE);
+    }
+
+    /**
+     * Open the catalog export as the first of CSV and JSON that matches the MIME type filter
+     */
+    @Nullable
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(@NonNull Uri uri,
+                                                  @NonNull String mimeTypeFilter,
+                                                  @Nullable Bundle opts)
+            throws FileNotFoundException {
+        if (uriMatcher.match(uri) != BOOK_EXPORT) {
+            return super.openTypedAssetFile(uri, mimeTypeFilter, opts);
+        }
+        String[] mimeTypes = getStreamTypes(uri, mimeTypeFilter);
+        if (mimeTypes == null) {
+            throw new FileNotFoundException("Cannot export as " + mimeTypeFilter);
+        }
+        return new AssetFileDescriptor(openExport(uri, "r", mimeTypes[0]), 0,
+                AssetFileDescriptor.UNKNOWN_LENGTH);
+    }
+
+    /**
+     * Return the MIME types of the catalog export that match the filter, or null
+     */
+    @Nullable
+    @Override
+    public String[] getStreamTypes(@NonNull Uri uri, @NonNull String mimeTypeFilter) {
+        if (uriMatcher.match(uri) != BOOK_EXPORT) {
+            return super.getStreamTypes(uri, mimeTypeFilter);
+        }
+        List<String> mimeTypes = new ArrayList<>();
+        for (String mimeType : EXPORT_TYPES) {
+            if (ClipDescription.compareMimeTypes(mimeType, mimeTypeFilter)) {
+                mimeTypes.add(mimeType);
+            }
+        }
+        return mimeTypes.isEmpty() ? null : mimeTypes.toArray(new String[mimeTypes.size()]);
+    }
+
+    /**
+     * Open a pipe that the whole catalog is written into, in ID order, on a background
+     * thread. The books are queried {@link #EXPORT_CHUNK_SIZE} at a time through the
+     * primary key, each chunk starting after the last book written, while the reader
+     * consumes them.
+     *
+     * @param mimeType {@link ItemEntry#EXPORT_CSV_TYPE} or {@link ItemEntry#EXPORT_JSON_TYPE}
+     */
+    private ParcelFileDescriptor openExport(Uri uri, String mode, String mimeType)
+            throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Export can only be read - " + uri);
+        }
+
+        // Get readable database
+        db = dbHelper.getReadableDatabase();
+
+        final SQLiteDatabase exportDb = db;
+        InventoryExporter.RowSource rows = new InventoryExporter.RowSource() {
+            @Override
+            public Cursor rowsAfter(long id) {
+                return booksQuery().query(exportDb, EXPORT_COLUMNS, ItemEntry._ID + " > ?",
+                        new String[]{Long.toString(id)}, null, null, ItemEntry._ID,
+                        Integer.toString(EXPORT_CHUNK_SIZE));
+            }
+        };
+        return openPipeHelper(uri, mimeType, null, rows, exporter);
+    }
+
+    /**
+     * Print the metrics of every operation, the notifier and the row cache, for
+     * {@code adb shell dumpsys activity provider} on API 18 and up
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("Operations:");
+        metrics.dump(writer);
+        if (notifier != null) {
+            writer.println("Notifier: changes=" + notifier.getChangesRequested()
+                    + " notifications=" + notifier.getNotificationsFired()
+                    + " coalesced=" + notifier.getChangesCoalesced());
+        }
+        writer.println("Row cache: hits=" + rowCache.getHits() + " misses="
+                + rowCache.getMisses() + " rows=" + rowCache.size() + " bytes="
+                + rowCache.sizeInBytes());
+    }
+
     /**
      * Returns MIME type of data for content URI
      */
@@ -363,6 +1934,22 @@ public class InventoryProvider extends ContentProvider {
                 return ItemEntry.CONTENT_LIST_TYPE;
             case BOOK_ID:
                 return ItemEntry.CONTENT_ITEM_TYPE;
+            case BOOK_SEARCH:
+                return ItemEntry.CONTENT_LIST_TYPE;
+            case STATS:
+                return StatsEntry.CONTENT_ITEM_TYPE;
+            case BOOK_EXPORT:
+                return ItemEntry.EXPORT_CSV_TYPE;
+            case BOOK_ISBN:
+                return ItemEntry.CONTENT_ITEM_TYPE;
+            case LEDGER:
+                return LedgerEntry.CONTENT_LIST_TYPE;
+            case DAILY_SALES:
+                return DailySalesEntry.CONTENT_LIST_TYPE;
+            case SUPPLIERS:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_ID:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI - " + uri + " with match " + match);
         }
@@ -0,0 +1,223 @@
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of whole book rows, so {@link InventoryProvider} can answer
+ * single-book queries without reading the database. Bounded by both the number of rows and
+ * an estimate of their size in bytes.
+ *
+ * The provider must invalidate a book after every write that may change it, once the write
+ * is committed. A row read from the database is only cached if nothing was invalidated
+ * since the read started, so a slow reader can never put back a row that a writer has
+ * replaced in the meantime.
+ */
+class InventoryRowCache {
+
+    /** Default number of rows kept */
+    static final int DEFAULT_MAX_ENTRIES = 64;
+
+    /** Default estimated size of the rows kept, in bytes */
+    static final int DEFAULT_MAX_BYTES = 64 * 1024;
+
+    /** Estimated size of a row and of each of its values apart from string contents */
+    private static final int OVERHEAD_BYTES = 16;
+
+    private final int maxEntries;
+
+    private final int maxBytes;
+
+    /** Rows by book ID, least recently used first */
+    private final LinkedHashMap<Long, Row> rows = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Estimated size of all cached rows */
+    private int bytes;
+
+    /** Incremented by every invalidation */
+    private long generation;
+
+    private long hits;
+
+    private long misses;
+
+    InventoryRowCache(int maxEntries, int maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Return a cursor over the cached book with the given projection, or null if the book
+     * isn't cached or the projection asks for something other than plain columns
+     *
+     * @param projection columns to return, or null for all of them
+     */
+    Cursor query(long bookId, String[] projection) {
+        Row row;
+        synchronized (this) {
+            row = rows.get(bookId);
+            if (row == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return row.toCursor(projection);
+    }
+
+    /**
+     * Return the value to pass to {@link #put}, read before the database is queried
+     */
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Cache the current row of the given cursor, which must hold every column of the books
+     * table, unless a book was invalidated since the given generation
+     *
+     * @param generation returned by {@link #generation()} before the cursor was queried
+     * @return the cached row, which is also returned if it could not be kept
+     */
+    Row put(long bookId, Cursor cursor, long generation) {
+        Row row = new Row(cursor);
+        synchronized (this) {
+            if (generation != this.generation || row.bytes > maxBytes) {
+                return row;
+            }
+            Row previous = rows.put(bookId, row);
+            if (previous != null) {
+                bytes -= previous.bytes;
+            }
+            bytes += row.bytes;
+            trim();
+        }
+        return row;
+    }
+
+    /**
+     * Forget the given book after a write to it
+     */
+    synchronized void invalidate(long bookId) {
+        generation++;
+        Row row = rows.remove(bookId);
+        if (row != null) {
+            bytes -= row.bytes;
+        }
+    }
+
+    /**
+     * Forget every book after a write to an unknown set of books
+     */
+    synchronized void invalidateAll() {
+        generation++;
+        rows.clear();
+        bytes = 0;
+    }
+
+    /** Number of queries answered from the cache so far */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /** Number of queries that had to read the database so far */
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /** Number of rows currently cached */
+    synchronized int size() {
+        return rows.size();
+    }
+
+    /** Estimated size of the rows currently cached, in bytes */
+    synchronized int sizeInBytes() {
+        return bytes;
+    }
+
+    /**
+     * Drop least recently used rows until both bounds are met
+     */
+    private void trim() {
+        Iterator<Map.Entry<Long, Row>> iterator = rows.entrySet().iterator();
+        while ((rows.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().bytes;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Immutable copy of every column of a single book
+     */
+    static final class Row {
+
+        private final String[] columns;
+        private final Object[] values;
+        final int bytes;
+
+        Row(Cursor cursor) {
+            columns = cursor.getColumnNames();
+            values = new Object[columns.length];
+            int size = OVERHEAD_BYTES;
+            for (int index = 0; index < columns.length; index++) {
+                switch (cursor.getType(index)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        values[index] = cursor.getLong(index);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        values[index] = cursor.getDouble(index);
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        String value = cursor.getString(index);
+                        values[index] = value;
+                        size += 2 * value.length();
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        byte[] blob = cursor.getBlob(index);
+                        values[index] = blob;
+                        size += blob.length;
+                        break;
+                    default:
+                        values[index] = null;
+                        break;
+                }
+                size += OVERHEAD_BYTES;
+            }
+            bytes = size;
+        }
+
+        /**
+         * Return a single-row cursor with the given columns, or null if one of them is not
+         * a column of the row
+         */
+        Cursor toCursor(String[] projection) {
+            if (projection == null) {
+                projection = columns;
+            }
+            Object[] projected = new Object[projection.length];
+            for (int index = 0; index < projection.length; index++) {
+                int column = indexOf(projection[index]);
+                if (column < 0) {
+                    return null;
+                }
+                projected[index] = values[column];
+            }
+            MatrixCursor cursor = new MatrixCursor(projection, 1);
+            cursor.addRow(projected);
+            return cursor;
+        }
+
+        private int indexOf(String column) {
+            for (int index = 0; index < columns.length; index++) {
+                if (columns[index].equalsIgnoreCase(column)) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+    }
+}
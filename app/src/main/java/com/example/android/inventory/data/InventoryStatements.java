@@ -0,0 +1,279 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+
+import com.example.android.inventory.data.InventoryContract.ItemEntry;
+import com.example.android.inventory.data.InventoryContract.SupplierEntry;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compiled statements for the writes {@link InventoryProvider} runs most often, compiled once
+ * per thread instead of building and preparing SQL on every call.
+ *
+ * An instance belongs to one thread, see {@link InventoryProvider}, so its statements are
+ * bound and run without locks. Locking a shared statement would deadlock: a thread outside a
+ * transaction would hold the statement while waiting for the database's write connection,
+ * and a thread inside a transaction, such as a batch, would hold the connection while
+ * waiting for the statement. The SQL itself is prepared once per connection, which keeps
+ * a cache of prepared statements shared by every instance.
+ */
+class InventoryStatements {
+
+    /**
+     * Columns a book may be inserted with by {@link #insertBook}; a price in dollars is
+     * converted to {@link ItemEntry#COLUMN_PRICE_CENTS} by the provider first
+     */
+    static final List<String> BOOK_COLUMNS = Arrays.asList(
+            ItemEntry.COLUMN_TITLE,
+            ItemEntry.COLUMN_AUTHOR,
+            ItemEntry.COLUMN_PRICE,
+            ItemEntry.COLUMN_PRICE_CENTS,
+            ItemEntry.COLUMN_QUANTITY,
+            ItemEntry.COLUMN_SUPPLIER_NAME,
+            ItemEntry.COLUMN_SUPPLIER_EMAIL,
+            ItemEntry.COLUMN_SUPPLIER_PHONE,
+            ItemEntry.COLUMN_ISBN);
+
+    /** Columns of the books table, in the order bound by {@link #SQL_INSERT_BOOK} */
+    private static final List<String> INSERT_COLUMNS = Arrays.asList(
+            ItemEntry.COLUMN_TITLE,
+            ItemEntry.COLUMN_AUTHOR,
+            ItemEntry.COLUMN_PRICE_CENTS,
+            ItemEntry.COLUMN_QUANTITY,
+            ItemEntry.COLUMN_SUPPLIER_ID,
+            ItemEntry.COLUMN_ISBN);
+
+    /** Inserts a single book */
+    private static final String SQL_INSERT_BOOK = "INSERT INTO " + ItemEntry.TABLE_NAME + " ("
+            + TextUtils.join(", ", INSERT_COLUMNS) + ") VALUES ("
+            + TextUtils.join(", ", Collections.nCopies(INSERT_COLUMNS.size(), "?")) + ")";
+
+    /** Looks up a supplier through the unique index on name, email and phone */
+    private static final String SQL_QUERY_SUPPLIER_ID = "SELECT "
+            + SupplierEntry.COLUMN_SUPPLIER_ID + " FROM " + SupplierEntry.TABLE_NAME
+            + " WHERE " + SupplierEntry.COLUMN_NAME + " = ? AND " + SupplierEntry.COLUMN_EMAIL
+            + " = ? AND " + SupplierEntry.COLUMN_PHONE + " = ?";
+
+    /** Adds a supplier */
+    private static final String SQL_INSERT_SUPPLIER = "INSERT INTO " + SupplierEntry.TABLE_NAME
+            + " (" + SupplierEntry.COLUMN_NAME + ", " + SupplierEntry.COLUMN_EMAIL + ", "
+            + SupplierEntry.COLUMN_PHONE + ") VALUES (?, ?, ?)";
+
+    /**
+     * Raises the version of the updated book in the same UPDATE, so the version trigger
+     * doesn't run a second UPDATE of the book, see {@link InventoryDbHelper}
+     */
+    private static final String SET_NEXT_VERSION = ", " + ItemEntry.COLUMN_VERSION + " = "
+            + ItemEntry.COLUMN_VERSION + " + 1";
+
+    /** Sets the quantity of a single book */
+    private static final String SQL_UPDATE_QUANTITY = "UPDATE " + ItemEntry.TABLE_NAME
+            + " SET " + ItemEntry.COLUMN_QUANTITY + " = ?" + SET_NEXT_VERSION
+            + " WHERE " + ItemEntry._ID + " = ?";
+
+    /** Deletes a single book */
+    private static final String SQL_DELETE_BOOK = "DELETE FROM " + ItemEntry.TABLE_NAME
+            + " WHERE " + ItemEntry._ID + " = ?";
+
+    /** Takes copies off the shelf only if enough are in stock */
+    private static final String SQL_SELL_BOOK = "UPDATE " + ItemEntry.TABLE_NAME
+            + " SET " + ItemEntry.COLUMN_QUANTITY + " = " + ItemEntry.COLUMN_QUANTITY + " - ?"
+            + SET_NEXT_VERSION
+            + " WHERE " + ItemEntry._ID + " = ? AND " + ItemEntry.COLUMN_QUANTITY + " >= ?";
+
+    /** Puts copies back on the shelf */
+    private static final String SQL_RESTOCK_BOOK = "UPDATE " + ItemEntry.TABLE_NAME
+            + " SET " + ItemEntry.COLUMN_QUANTITY + " = " + ItemEntry.COLUMN_QUANTITY + " + ?"
+            + SET_NEXT_VERSION + " WHERE " + ItemEntry._ID + " = ?";
+
+    /** Sets the price of a single book */
+    private static final String SQL_UPDATE_PRICE = "UPDATE " + ItemEntry.TABLE_NAME
+            + " SET " + ItemEntry.COLUMN_PRICE_CENTS + " = ?" + SET_NEXT_VERSION
+            + " WHERE " + ItemEntry._ID + " = ?";
+
+    /** Looks up a book through the unique ISBN index */
+    private static final String SQL_QUERY_ID_BY_ISBN = "SELECT " + ItemEntry._ID
+            + " FROM " + ItemEntry.TABLE_NAME + " WHERE " + ItemEntry.COLUMN_ISBN + " = ?";
+
+    /** Reads the quantity of a single book */
+    private static final String SQL_QUERY_QUANTITY = "SELECT " + ItemEntry.COLUMN_QUANTITY
+            + " FROM " + ItemEntry.TABLE_NAME + " WHERE " + ItemEntry._ID + " = ?";
+
+    private final SQLiteStatement insertBook;
+    private final SQLiteStatement updateQuantity;
+    private final SQLiteStatement deleteBook;
+    private final SQLiteStatement sellBook;
+    private final SQLiteStatement restockBook;
+    private final SQLiteStatement updatePrice;
+    private final SQLiteStatement queryIdByIsbn;
+    private final SQLiteStatement queryQuantity;
+    private final SQLiteStatement querySupplierId;
+    private final SQLiteStatement insertSupplier;
+
+    InventoryStatements(SQLiteDatabase db) {
+        insertBook = db.compileStatement(SQL_INSERT_BOOK);
+        updateQuantity = db.compileStatement(SQL_UPDATE_QUANTITY);
+        deleteBook = db.compileStatement(SQL_DELETE_BOOK);
+        sellBook = db.compileStatement(SQL_SELL_BOOK);
+        restockBook = db.compileStatement(SQL_RESTOCK_BOOK);
+        updatePrice = db.compileStatement(SQL_UPDATE_PRICE);
+        queryIdByIsbn = db.compileStatement(SQL_QUERY_ID_BY_ISBN);
+        queryQuantity = db.compileStatement(SQL_QUERY_QUANTITY);
+        querySupplierId = db.compileStatement(SQL_QUERY_SUPPLIER_ID);
+        insertSupplier = db.compileStatement(SQL_INSERT_SUPPLIER);
+    }
+
+    /**
+     * Return whether a book with the given values can be inserted by {@link #insertBook}
+     */
+    static boolean hasBookColumnsOnly(ContentValues contentValues) {
+        return BOOK_COLUMNS.containsAll(contentValues.keySet());
+    }
+
+    /**
+     * Insert a book with values for {@link #BOOK_COLUMNS} only, supplied by the given
+     * supplier in place of the supplier values. Missing price and quantity are bound to 0,
+     * the same default the database helper declares.
+     * Return the ID of the new book, or -1 if the insert failed
+     */
+    long insertBook(ContentValues contentValues, long supplierId) {
+        insertBook.clearBindings();
+
+        insertBook.bindString(1, contentValues.getAsString(ItemEntry.COLUMN_TITLE));
+        bindStringOrNull(insertBook, 2, contentValues.getAsString(ItemEntry.COLUMN_AUTHOR));
+
+        Long priceCents = contentValues.getAsLong(ItemEntry.COLUMN_PRICE_CENTS);
+        insertBook.bindLong(3, priceCents == null ? 0 : priceCents);
+
+        Integer quantity = contentValues.getAsInteger(ItemEntry.COLUMN_QUANTITY);
+        insertBook.bindLong(4, quantity == null ? 0 : quantity);
+
+        insertBook.bindLong(5, supplierId);
+        bindStringOrNull(insertBook, 6, contentValues.getAsString(ItemEntry.COLUMN_ISBN));
+
+        return insertBook.executeInsert();
+    }
+
+    /**
+     * Set the quantity of a book; return the number of books updated
+     */
+    int updateQuantity(long bookId, int quantity) {
+        updateQuantity.bindLong(1, quantity);
+        updateQuantity.bindLong(2, bookId);
+        return updateQuantity.executeUpdateDelete();
+    }
+
+    /**
+     * Delete a book; return the number of books deleted
+     */
+    int deleteBook(long bookId) {
+        deleteBook.bindLong(1, bookId);
+        return deleteBook.executeUpdateDelete();
+    }
+
+    /**
+     * Take copies of a book off the shelf if enough are in stock; return whether they were
+     */
+    boolean sellBook(long bookId, int amount) {
+        sellBook.bindLong(1, amount);
+        sellBook.bindLong(2, bookId);
+        sellBook.bindLong(3, amount);
+        return sellBook.executeUpdateDelete() == 1;
+    }
+
+    /**
+     * Put copies of a book back on the shelf; return whether the book exists
+     */
+    boolean restockBook(long bookId, int amount) {
+        restockBook.bindLong(1, amount);
+        restockBook.bindLong(2, bookId);
+        return restockBook.executeUpdateDelete() == 1;
+    }
+
+    /**
+     * Set the price of a book in cents; return the number of books updated
+     */
+    int updatePrice(long bookId, long priceCents) {
+        updatePrice.bindLong(1, priceCents);
+        updatePrice.bindLong(2, bookId);
+        return updatePrice.executeUpdateDelete();
+    }
+
+    /**
+     * Return the ID of the book with the given normalized ISBN, or -1 if there is none
+     */
+    long queryIdByIsbn(String isbn) {
+        queryIdByIsbn.bindString(1, isbn);
+        try {
+            return queryIdByIsbn.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Return the quantity of the given book, or -1 if there is no such book
+     */
+    int queryQuantity(long bookId) {
+        queryQuantity.bindLong(1, bookId);
+        try {
+            return (int) queryQuantity.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Return the ID of the supplier with the given name, email and phone, adding the
+     * supplier if there is none yet. Call inside a transaction, so no other writer can add
+     * the same supplier in between.
+     *
+     * @param email may be null or empty for none
+     */
+    long findOrInsertSupplier(String name, String email, String phone) {
+        String storedEmail = email == null ? "" : email;
+        querySupplierId.bindString(1, name);
+        querySupplierId.bindString(2, storedEmail);
+        querySupplierId.bindString(3, phone);
+        try {
+            return querySupplierId.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            // Not added yet
+        }
+        insertSupplier.bindString(1, name);
+        insertSupplier.bindString(2, storedEmail);
+        insertSupplier.bindString(3, phone);
+        return insertSupplier.executeInsert();
+    }
+
+    /**
+     * Release the compiled statements; the instance can't be used afterwards
+     */
+    void close() {
+        insertBook.close();
+        updateQuantity.close();
+        deleteBook.close();
+        sellBook.close();
+        restockBook.close();
+        updatePrice.close();
+        queryIdByIsbn.close();
+        queryQuantity.close();
+        querySupplierId.close();
+        insertSupplier.close();
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import com.example.android.inventory.data.InventoryContract.ItemEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Saves an edit of a book without overwriting changes made since the edit started, such as
+ * sales rung up while the book was open in the editor. Nothing is locked while the user edits.
+ *
+ * Only the fields the edit changed are written, and only while the book is still at the
+ * version the edit started from. If another write got there first, the book is read again
+ * and the edit is merged field by field: a field only the edit changed is written, a field
+ * only the other write changed is kept, and a field both changed to different values is a
+ * conflict, so nothing is written. The quantity is merged by adding: the copies the edit
+ * added or took away are applied to the quantity other writes left, so a sale rung up
+ * during the edit is never a conflict, unless the edit would take away more copies than
+ * are left.
+ */
+public final class InventoryUpdater {
+
+    /** Merges tried before giving up on a book that keeps changing */
+    static final int MAX_ATTEMPTS = 5;
+
+    // Empty constructor to prevent instantiation of static utility class
+    private InventoryUpdater() {}
+
+    /**
+     * Save the edit of a book. Runs queries and updates, so never call it on the main thread;
+     * {@link InventoryWriter#updateBook} runs it in the background.
+     *
+     * @param resolver to reach the provider with
+     * @param bookId ID of the book
+     * @param loaded values of the book when the edit started
+     * @param edited values of the book after the edit, with the same keys as loaded
+     * @param version {@link ItemEntry#COLUMN_VERSION} of the book when the edit started
+     * @return 1 if the book holds the edit, including when nothing needed to change,
+     * 0 if the book doesn't exist, or {@link ItemEntry#UPDATE_CONFLICT} if another write
+     * changed a field of the edit to something else
+     */
+    public static int updateBook(ContentResolver resolver, long bookId, ContentValues loaded,
+                                 ContentValues edited, long version) {
+        List<String> changed = new ArrayList<>();
+        ContentValues changes = new ContentValues();
+        for (String column : edited.keySet()) {
+            if (!sameValue(column, loaded.get(column), edited.get(column))) {
+                changed.add(column);
+                putValue(changes, column, edited.get(column));
+            }
+        }
+        if (changes.size() == 0) {
+            return 1;
+        }
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            int rowsUpdated = resolver.update(ItemEntry.buildVersionedUri(bookId, version),
+                    changes, null, null);
+            if (rowsUpdated != ItemEntry.UPDATE_CONFLICT) {
+                return rowsUpdated;
+            }
+
+            // Someone else wrote the book first; merge with what they wrote
+            String[] projection = changed.toArray(new String[changed.size() + 1]);
+            projection[changed.size()] = ItemEntry.COLUMN_VERSION;
+            Cursor cursor = resolver.query(ContentUris.withAppendedId(ItemEntry.CONTENT_URI,
+                    bookId), projection, null, null, null);
+            if (cursor == null) {
+                return 0;
+            }
+            try {
+                if (!cursor.moveToFirst()) {
+                    return 0;
+                }
+                for (int index = 0; index < changed.size(); index++) {
+                    String column = changed.get(index);
+                    String current = cursor.getString(index);
+                    if (column.equals(ItemEntry.COLUMN_QUANTITY)) {
+                        long quantity = cursor.getLong(index)
+                                + toLong(edited.get(column)) - toLong(loaded.get(column));
+                        if (quantity < 0) {
+                            return ItemEntry.UPDATE_CONFLICT;
+                        }
+                        changes.put(column, quantity);
+                    } else if (sameValue(column, current, edited.get(column))) {
+                        // Both made the same change
+                        changes.remove(column);
+                    } else if (!sameValue(column, current, loaded.get(column))) {
+                        return ItemEntry.UPDATE_CONFLICT;
+                    }
+                }
+                version = cursor.getLong(changed.size());
+            } finally {
+                cursor.close();
+            }
+
+            if (changes.size() == 0) {
+                return 1;
+            }
+        }
+        return ItemEntry.UPDATE_CONFLICT;
+    }
+
+    /**
+     * Return whether two values of the given column are the same book data, whether they come
+     * from the editor or the database: prices to the cent, ISBNs normalized, and null the
+     * same as an empty string
+     */
+    static boolean sameValue(String column, Object first, Object second) {
+        String a = first == null ? "" : first.toString().trim();
+        String b = second == null ? "" : second.toString().trim();
+        if (a.isEmpty() || b.isEmpty()) {
+            return a.isEmpty() && b.isEmpty();
+        }
+
+        try {
+            switch (column) {
+                case ItemEntry.COLUMN_PRICE:
+                    return ItemEntry.parsePriceCents(a) == ItemEntry.parsePriceCents(b);
+                case ItemEntry.COLUMN_PRICE_CENTS:
+                case ItemEntry.COLUMN_QUANTITY:
+                    return Long.parseLong(a) == Long.parseLong(b);
+                case ItemEntry.COLUMN_ISBN:
+                    return TextUtils.equals(ItemEntry.normalizeIsbn(a),
+                            ItemEntry.normalizeIsbn(b));
+                default:
+                    return a.equals(b);
+            }
+        } catch (NumberFormatException e) {
+            return a.equals(b);
+        }
+    }
+
+    /**
+     * Return a quantity from the editor or the database as a number, 0 if there is none
+     */
+    private static long toLong(Object value) {
+        String text = value == null ? "" : value.toString().trim();
+        return text.isEmpty() ? 0 : Long.parseLong(text);
+    }
+
+    private static void putValue(ContentValues values, String column, Object value) {
+        if (value == null) {
+            values.putNull(column);
+        } else if (value instanceof Double) {
+            values.put(column, (Double) value);
+        } else if (value instanceof Integer) {
+            values.put(column, (Integer) value);
+        } else if (value instanceof Long) {
+            values.put(column, (Long) value);
+        } else {
+            values.put(column, value.toString());
+        }
+    }
+}
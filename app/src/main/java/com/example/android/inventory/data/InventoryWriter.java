@@ -0,0 +1,294 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs writes to {@link InventoryProvider} on a single background thread, in the order they
+ * were submitted, and delivers each result back on the main thread. Keeps SQLite and disk
+ * syncs off the UI thread.
+ *
+ * Sales queued with {@link #queueSale} are collected per book for a short window and then
+ * written as one transaction. Queued sales still keep submission order: any other write
+ * first sends the sales queued before it, and {@link #flushSales} sends them right away.
+ */
+public final class InventoryWriter {
+
+    private static final String LOG_TAG = InventoryWriter.class.getSimpleName();
+
+    /** Single writer thread, so writes reach the database in submission order */
+    private static final Executor WRITE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /** Default time queued sales are collected for before they are written */
+    public static final long DEFAULT_SALE_WINDOW_MILLIS = 25;
+
+    /** Guards the queued sales, and makes draining them and submitting a write one step */
+    private static final Object SALES_LOCK = new Object();
+
+    /** Copies queued per book, in the order the books were first queued */
+    private static final Map<Long, Integer> queuedSales = new LinkedHashMap<>();
+
+    /** Resolver the queued sales are written through */
+    private static ContentResolver salesResolver;
+
+    private static long saleWindowMillis = DEFAULT_SALE_WINDOW_MILLIS;
+
+    private static final Runnable FLUSH_SALES = new Runnable() {
+        @Override
+        public void run() {
+            flushSales(null);
+        }
+    };
+
+    /**
+     * Receives the result of a write on the main thread
+     */
+    public interface Callback<T> {
+
+        /**
+         * Called with the result of the write, or with null, 0 or -1 (as the provider would
+         * report a failed write) if the provider rejected it
+         */
+        void onComplete(T result);
+    }
+
+    // Empty constructor to prevent instantiation of static utility class
+    private InventoryWriter() {}
+
+    /**
+     * Insert a book; the callback receives the new book URI or null
+     */
+    public static void insert(final ContentResolver resolver, final Uri uri,
+                              final ContentValues values, @Nullable Callback<Uri> callback) {
+        submit(new Callable<Uri>() {
+            @Override
+            public Uri call() {
+                return resolver.insert(uri, values);
+            }
+        }, null, callback);
+    }
+
+    /**
+     * Insert books in one transaction; the callback receives the number of books inserted
+     */
+    public static void bulkInsert(final ContentResolver resolver, final Uri uri,
+                                  final ContentValues[] values,
+                                  @Nullable Callback<Integer> callback) {
+        submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return resolver.bulkInsert(uri, values);
+            }
+        }, 0, callback);
+    }
+
+    /**
+     * Update books; the callback receives the number of books updated
+     */
+    public static void update(final ContentResolver resolver, final Uri uri,
+                              final ContentValues values, final String selection,
+                              final String[] selectionArgs, @Nullable Callback<Integer> callback) {
+        submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return resolver.update(uri, values, selection, selectionArgs);
+            }
+        }, 0, callback);
+    }
+
+    /**
+     * Delete books; the callback receives the number of books deleted
+     */
+    public static void delete(final ContentResolver resolver, final Uri uri,
+                              final String selection, final String[] selectionArgs,
+                              @Nullable Callback<Integer> callback) {
+        submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return resolver.delete(uri, selection, selectionArgs);
+            }
+        }, 0, callback);
+    }
+
+    /**
+     * Save an edit of a book without overwriting changes made since it was loaded, see
+     * {@link InventoryUpdater#updateBook}; the callback receives 1 if the book holds the edit,
+     * 0 if it doesn't exist, or {@link InventoryContract.ItemEntry#UPDATE_CONFLICT}
+     */
+    public static void updateBook(final ContentResolver resolver, final long bookId,
+                                  final ContentValues loaded, final ContentValues edited,
+                                  final long version, @Nullable Callback<Integer> callback) {
+        submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return InventoryUpdater.updateBook(resolver, bookId, loaded, edited, version);
+            }
+        }, 0, callback);
+    }
+
+    /**
+     * Sell copies of a book, see {@link InventoryContract#sell}; the callback receives the
+     * quantity left, or -1 if the sale did not go through
+     */
+    public static void sell(final ContentResolver resolver, final long bookId, final int amount,
+                            @Nullable Callback<Integer> callback) {
+        submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return InventoryContract.sell(resolver, bookId, amount);
+            }
+        }, -1, callback);
+    }
+
+    /**
+     * Queue the sale of copies of a book, e.g. a tap on a sale button. Sales queued within
+     * {@link #setSaleWindowMillis the sale window} are added up per book and written in one
+     * transaction with {@link InventoryContract#sellBatch}; each book sells as many copies
+     * as are in stock.
+     */
+    public static void queueSale(ContentResolver resolver, long bookId, int amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Sale requires an amount greater than 0");
+        }
+
+        synchronized (SALES_LOCK) {
+            // One batch goes through one resolver
+            if (salesResolver != resolver && !queuedSales.isEmpty()) {
+                flushSales(null);
+            }
+            salesResolver = resolver;
+
+            if (queuedSales.isEmpty() && saleWindowMillis > 0) {
+                MAIN_HANDLER.postDelayed(FLUSH_SALES, saleWindowMillis);
+            }
+            Integer queued = queuedSales.get(bookId);
+            queuedSales.put(bookId, queued == null ? amount : queued + amount);
+
+            if (saleWindowMillis == 0) {
+                flushSales(null);
+            }
+        }
+    }
+
+    /**
+     * Write the queued sales now instead of at the end of the sale window, e.g. when the app
+     * goes to the background; the callback receives the number of copies sold
+     */
+    public static void flushSales(@Nullable Callback<Integer> callback) {
+        synchronized (SALES_LOCK) {
+            execute(drainSales(), 0, callback);
+        }
+    }
+
+    /**
+     * Set the time queued sales are collected for, 0 to write every sale on its own
+     */
+    public static void setSaleWindowMillis(long windowMillis) {
+        synchronized (SALES_LOCK) {
+            saleWindowMillis = windowMillis;
+        }
+    }
+
+    /**
+     * Import books from the CSV file at the given URI, see {@link InventoryImporter}; the
+     * callback receives the result, or null if the file could not be read
+     */
+    public static void importCsv(final ContentResolver resolver, final Uri source,
+                                 @Nullable Callback<InventoryImporter.Result> callback) {
+        submit(new Callable<InventoryImporter.Result>() {
+            @Override
+            public InventoryImporter.Result call() throws IOException {
+                return InventoryImporter.importCsv(resolver, source,
+                        InventoryImporter.DEFAULT_BATCH_SIZE);
+            }
+        }, null, callback);
+    }
+
+    /**
+     * Take the queued sales off the queue; return the write that sells them in one batch
+     */
+    private static Callable<Integer> drainSales() {
+        MAIN_HANDLER.removeCallbacks(FLUSH_SALES);
+
+        final ContentResolver resolver = salesResolver;
+        final long[] bookIds = new long[queuedSales.size()];
+        final int[] amounts = new int[queuedSales.size()];
+        int index = 0;
+        for (Map.Entry<Long, Integer> sale : queuedSales.entrySet()) {
+            bookIds[index] = sale.getKey();
+            amounts[index] = sale.getValue();
+            index++;
+        }
+        queuedSales.clear();
+
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                if (bookIds.length == 0) {
+                    return 0;
+                }
+                int sold = 0;
+                for (int amount : InventoryContract.sellBatch(resolver, bookIds, amounts)) {
+                    sold += amount;
+                }
+                return sold;
+            }
+        };
+    }
+
+    /**
+     * Run the write on the writer thread after any sales queued before it
+     */
+    private static <T> void submit(Callable<T> write, T failure, @Nullable Callback<T> callback) {
+        synchronized (SALES_LOCK) {
+            if (!queuedSales.isEmpty()) {
+                execute(drainSales(), 0, null);
+            }
+            execute(write, failure, callback);
+        }
+    }
+
+    /**
+     * Run the write on the writer thread and post its result, or the failure value if the
+     * provider threw, to the callback on the main thread
+     */
+    private static <T> void execute(final Callable<T> write, final T failure,
+                                    @Nullable final Callback<T> callback) {
+        WRITE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                T result;
+                try {
+                    result = write.call();
+                } catch (Exception e) {
+                    Log.e(LOG_TAG, "Write failed", e);
+                    result = failure;
+                }
+
+                if (callback != null) {
+                    final T delivered = result;
+                    MAIN_HANDLER.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onComplete(delivered);
+                        }
+                    });
+                }
+            }
+        });
+    }
+}
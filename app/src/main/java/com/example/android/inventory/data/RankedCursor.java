@@ -0,0 +1,183 @@
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * {@link CursorWrapper} over the results of a full-text search that presents the rows in
+ * order of relevance. The last column of the wrapped cursor must hold the
+ * {@code matchinfo(..., 'pcnx')} of each row; it is read once to rank the rows and is not
+ * visible through the wrapper.
+ *
+ * A row scores, for every word of the query, the times the word occurs in it, titles
+ * counting twice as much as authors, times how rare the word is across all books. Rows
+ * that score the same keep the order of the wrapped cursor.
+ */
+class RankedCursor extends CursorWrapper {
+
+    /** Weight of a hit in each column of the search table: title, then author */
+    private static final double[] COLUMN_WEIGHTS = {2.0, 1.0};
+
+    /** Position in the wrapped cursor of each position of this one */
+    private final int[] order;
+
+    /** Number of columns visible through the wrapper */
+    private final int columnCount;
+
+    private int position = -1;
+
+    /**
+     * Rank the rows of the given cursor, which is read once from start to end
+     *
+     * @param cursor search results with the match info of each row in the last column
+     */
+    RankedCursor(Cursor cursor) {
+        super(cursor);
+        columnCount = cursor.getColumnCount() - 1;
+
+        final double[] scores = new double[cursor.getCount()];
+        Integer[] positions = new Integer[scores.length];
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            scores[cursor.getPosition()] = score(cursor.getBlob(columnCount));
+            positions[cursor.getPosition()] = cursor.getPosition();
+        }
+        cursor.moveToPosition(-1);
+
+        // Object sort is stable, so ties keep the order of the query
+        Arrays.sort(positions, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                return Double.compare(scores[second], scores[first]);
+            }
+        });
+        order = new int[positions.length];
+        for (int index = 0; index < positions.length; index++) {
+            order[index] = positions[index];
+        }
+    }
+
+    /**
+     * Return the relevance of a row from its {@code matchinfo(..., 'pcnx')}: the number of
+     * phrases and columns, the number of rows, then for each phrase and column the hits in
+     * this row, the hits in all rows and the rows with hits, as integers in native byte order
+     */
+    static double score(byte[] matchInfo) {
+        IntBuffer values = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+        int phrases = values.get(0);
+        int columns = values.get(1);
+        int rows = values.get(2);
+
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            double hits = 0;
+            int rowsWithHits = 1;
+            for (int column = 0; column < columns; column++) {
+                int cell = 3 + 3 * (phrase * columns + column);
+                double weight = column < COLUMN_WEIGHTS.length ? COLUMN_WEIGHTS[column] : 1.0;
+                hits += weight * values.get(cell);
+                rowsWithHits = Math.max(rowsWithHits, values.get(cell + 2));
+            }
+            score += hits * Math.log(1.0 + (double) rows / rowsWithHits);
+        }
+        return score;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return Arrays.copyOf(super.getColumnNames(), columnCount);
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        int index = super.getColumnIndex(columnName);
+        return index < columnCount ? index : -1;
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName) {
+        int index = getColumnIndex(columnName);
+        if (index < 0) {
+            throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+        }
+        return index;
+    }
+
+    @Override
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        if (position < 0) {
+            this.position = -1;
+            super.moveToPosition(-1);
+            return false;
+        }
+        if (position >= order.length) {
+            this.position = order.length;
+            super.moveToPosition(order.length);
+            return false;
+        }
+        this.position = position;
+        return super.moveToPosition(order[position]);
+    }
+
+    @Override
+    public boolean move(int offset) {
+        return moveToPosition(position + offset);
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(order.length - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(position + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(position - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return order.length > 0 && position == 0;
+    }
+
+    @Override
+    public boolean isLast() {
+        return order.length > 0 && position == order.length - 1;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return order.length == 0 || position == -1;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return order.length == 0 || position == order.length;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.android.inventory.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link CsvReader}.
+ */
+public class CsvReaderTest {
+
+    @Test
+    public void readsPlainAndQuotedFields() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader(
+                "title,price\r\n\"Eats, Shoots \"\"and\"\" Leaves\",9.99\r\nDune,\r\n"));
+
+        assertArrayEquals(new String[]{"title", "price"}, reader.readRecord());
+        assertEquals(1, reader.getRecordLine());
+        assertArrayEquals(new String[]{"Eats, Shoots \"and\" Leaves", "9.99"},
+                reader.readRecord());
+        assertEquals(2, reader.getRecordLine());
+        assertArrayEquals(new String[]{"Dune", ""}, reader.readRecord());
+        assertEquals(3, reader.getRecordLine());
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void quotedLineBreaksStayInTheirField() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader(
+                "\"first\nsecond\",a\n\"third\r\nfourth\",b\rlast,c"));
+
+        assertArrayEquals(new String[]{"first\nsecond", "a"}, reader.readRecord());
+        assertEquals(1, reader.getRecordLine());
+        assertArrayEquals(new String[]{"third\r\nfourth", "b"}, reader.readRecord());
+        assertEquals(3, reader.getRecordLine());
+        assertArrayEquals(new String[]{"last", "c"}, reader.readRecord());
+        assertEquals(5, reader.getRecordLine());
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void recordsSpanningTheReadBufferAreKeptWhole() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for (int index = 0; index < 10000; index++) {
+            csv.append("Book ").append(index).append(",\"Author, ").append(index).append("\"\n");
+        }
+
+        CsvReader reader = new CsvReader(new StringReader(csv.toString()));
+        for (int index = 0; index < 10000; index++) {
+            assertArrayEquals(new String[]{"Book " + index, "Author, " + index},
+                    reader.readRecord());
+            assertEquals(index + 1, reader.getRecordLine());
+        }
+        assertNull(reader.readRecord());
+    }
+
+    @Test(expected = IOException.class)
+    public void unclosedQuoteFails() throws IOException {
+        new CsvReader(new StringReader("\"never closed\n")).readRecord();
+    }
+}